@@ -0,0 +1,80 @@
+package com.example.binance_backend.config;
+
+import com.example.binance_backend.service.ratelimit.BinanceRateLimiter;
+import io.netty.channel.ChannelOption;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * BinanceHttpConfig: um único pool de ligações Reactor Netty para todos os pedidos REST à
+ * Binance (públicos e assinados), em vez de um WebClient novo por pedido.
+ *
+ * A chave {@code X-MBX-APIKEY} é posta pedido a pedido pelo BinanceClient, por isso o mesmo
+ * WebClient serve todos os users. Tamanho do pool, keep-alive, timeouts, gzip e HTTP/2 são
+ * configurados em {@code bot.binance.http.*}.
+ *
+ * A utilização do pool é exposta pelo Reactor Netty no registo global do Micrometer
+ * (ligado ao do Spring Boot): {@code reactor.netty.connection.provider.total.connections},
+ * {@code .active.connections}, {@code .idle.connections} e {@code .pending.connections},
+ * com a tag {@code name=binance}.
+ *
+ * Todos os pedidos passam pelo {@link BinanceRateLimiter} (peso e ordens por conta).
+ */
+@Configuration
+public class BinanceHttpConfig {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider binanceConnectionProvider(
+            @Value("${bot.binance.http.max-connections:50}") int maxConnections,
+            @Value("${bot.binance.http.pending-acquire-timeout-ms:5000}") long pendingAcquireTimeoutMs,
+            @Value("${bot.binance.http.max-idle-time-ms:30000}") long maxIdleTimeMs,
+            @Value("${bot.binance.http.max-life-time-ms:300000}") long maxLifeTimeMs
+    ) {
+        return ConnectionProvider.builder("binance")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .maxLifeTime(Duration.ofMillis(maxLifeTimeMs))
+                // Fecha em background as ligações paradas há demasiado tempo
+                .evictInBackground(Duration.ofMillis(maxIdleTimeMs))
+                .metrics(true)
+                .build();
+    }
+
+    @Bean
+    public WebClient binanceWebClient(
+            ConnectionProvider binanceConnectionProvider,
+            BinanceRateLimiter rateLimiter,
+            @Value("${bot.binance.base-url:https://api.binance.com}") String baseUrl,
+            @Value("${bot.binance.http.connect-timeout-ms:3000}") int connectTimeoutMs,
+            @Value("${bot.binance.http.response-timeout-ms:10000}") long responseTimeoutMs,
+            @Value("${bot.binance.http.compress:true}") boolean compress,
+            @Value("${bot.binance.http.http2:false}") boolean http2
+    ) {
+        HttpClient httpClient = HttpClient.create(binanceConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .option(ChannelOption.SO_KEEPALIVE, true)
+                // Tempo máximo entre o envio do pedido e a resposta (só enquanto há pedido em curso,
+                // não afeta ligações paradas no pool)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                // Accept-Encoding: gzip e descompressão da resposta
+                .compress(compress);
+        if (http2) {
+            httpClient = httpClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11).secure();
+        }
+
+        return WebClient.builder()
+                .baseUrl(baseUrl)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(rateLimiter)
+                .build();
+    }
+}
@@ -5,6 +5,7 @@ import com.example.binance_backend.model.BotSettings;
 import com.example.binance_backend.model.User;
 import com.example.binance_backend.repository.BotSettingsRepository;
 import com.example.binance_backend.repository.UserRepository;
+import com.example.binance_backend.service.ActiveBotRegistry;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
@@ -18,10 +19,13 @@ public class BotSettingsController {
 
     private final BotSettingsRepository settingsRepo;
     private final UserRepository userRepo;
+    private final ActiveBotRegistry botRegistry;
 
-    public BotSettingsController(BotSettingsRepository settingsRepo, UserRepository userRepo) {
+    public BotSettingsController(BotSettingsRepository settingsRepo, UserRepository userRepo,
+                                 ActiveBotRegistry botRegistry) {
         this.settingsRepo = settingsRepo;
         this.userRepo = userRepo;
+        this.botRegistry = botRegistry;
     }
 
     @GetMapping("/user/{userId}")
@@ -56,7 +60,9 @@ public class BotSettingsController {
         s.setRsiThreshold(req.getRsiThreshold());
         s.setMacdEnabled(req.isMacdEnabled());
         s.setMovingAvgEnabled(req.isMovingAvgEnabled());
-        return settingsRepo.save(s);
+        BotSettings saved = settingsRepo.save(s);
+        botRegistry.refreshUser(user.getId());
+        return saved;
     }
 
     @PutMapping("/user/{userId}")
@@ -80,6 +86,8 @@ public class BotSettingsController {
         existing.setRsiThreshold(req.getRsiThreshold());
         existing.setMacdEnabled(req.isMacdEnabled());
         existing.setMovingAvgEnabled(req.isMovingAvgEnabled());
-        return settingsRepo.save(existing);
+        BotSettings saved = settingsRepo.save(existing);
+        botRegistry.refreshUser(userId);
+        return saved;
     }
 }
@@ -5,6 +5,7 @@ import com.example.binance_backend.model.User;
 import com.example.binance_backend.repository.BotSettingsRepository;
 import com.example.binance_backend.repository.BotStateRepository;
 import com.example.binance_backend.repository.UserRepository;
+import com.example.binance_backend.service.ActiveBotRegistry;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -20,11 +21,14 @@ public class BotStateController {
 
     private final BotStateRepository botStateRepo;
     private final UserRepository userRepo;
+    private final ActiveBotRegistry botRegistry;
 
     public BotStateController(BotStateRepository botStateRepo,
-                              UserRepository userRepo) {
+                              UserRepository userRepo,
+                              ActiveBotRegistry botRegistry) {
         this.botStateRepo = botStateRepo;
         this.userRepo = userRepo;
+        this.botRegistry = botRegistry;
     }
 
     @PostMapping("/{userId}/activate")
@@ -59,6 +63,7 @@ public class BotStateController {
             state.setLastUpdated(OffsetDateTime.now());
         }
         botStateRepo.save(state);
+        botRegistry.refreshUser(uid);
         return ResponseEntity.ok(Map.of("message", "Bot ativado"));
     }
 
@@ -92,6 +97,7 @@ public class BotStateController {
         state.setActive(false);
         state.setLastUpdated(OffsetDateTime.now());
         botStateRepo.save(state);
+        botRegistry.refreshUser(uid);
         return ResponseEntity.ok(Map.of("message", "Bot desativado"));
     }
 
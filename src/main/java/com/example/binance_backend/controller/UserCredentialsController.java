@@ -5,7 +5,8 @@ import com.example.binance_backend.model.User;
 import com.example.binance_backend.model.UserCredentials;
 import com.example.binance_backend.repository.UserCredentialsRepository;
 import com.example.binance_backend.repository.UserRepository;
-import com.example.binance_backend.service.BinanceClient;
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.userdata.UserDataStreamManager;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -22,17 +23,20 @@ public class UserCredentialsController {
 
     private final UserRepository userRepo;
     private final UserCredentialsRepository credRepo;
-    private final BinanceClient binanceClient;
+    private final UserDataStreamManager userDataStreams;
+    private final ActiveBotRegistry botRegistry;
 
     @Value("${bot.simulation:true}")
     private boolean simulationMode;
 
     public UserCredentialsController(UserRepository userRepo,
                                      UserCredentialsRepository credRepo,
-                                     BinanceClient binanceClient) {
+                                     UserDataStreamManager userDataStreams,
+                                     ActiveBotRegistry botRegistry) {
         this.userRepo = userRepo;
         this.credRepo = credRepo;
-        this.binanceClient = binanceClient;
+        this.userDataStreams = userDataStreams;
+        this.botRegistry = botRegistry;
     }
 
     @GetMapping("/ping")
@@ -69,6 +73,7 @@ public class UserCredentialsController {
         creds.setEncryptedSecretKey(req.getSecretKey());
         // O createdAt é preenchido automaticamente
         credRepo.save(creds);
+        botRegistry.refreshUser(userId);
 
         return ResponseEntity.status(HttpStatus.CREATED).build();
     }
@@ -122,8 +127,10 @@ public class UserCredentialsController {
             return ResponseEntity.ok(Map.of("free", "0"));
         }
 
+        // Servido da memória pelo user data stream (só a primeira consulta vai à Binance)
         UserCredentials creds = credOpt.get();
-        String freeUsdt = binanceClient.fetchFreeBalance(
+        String freeUsdt = userDataStreams.freeBalance(
+            id,
             creds.getEncryptedApiKey(),
             creds.getEncryptedSecretKey(),
             "USDT"
@@ -0,0 +1,98 @@
+package com.example.binance_backend.dto;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Projeção imutável de um bot ativo para avaliação: settings, credenciais e trade em aberto
+ * no par, carregados numa única query (BotSettingsRepository#findActiveBots e
+ * BotSettingsRepository#findActiveBotsByUserId).
+ */
+public final class ActiveBot {
+
+    public final UUID userId;
+    public final String tradingPair;
+    public final String orderType;
+    public final BigDecimal tradeAmount;
+    public final BigDecimal limitPrice;
+    public final BigDecimal stopPrice;
+    public final BigDecimal trailingDelta;
+    public final BigDecimal stopLossPerc;
+    public final BigDecimal takeProfitPerc;
+    public final boolean rsiEnabled;
+    public final Integer rsiThreshold;
+    public final boolean macdEnabled;
+    public final boolean movingAvgEnabled;
+
+    // null se o user não tiver credenciais Binance
+    public final String encryptedApiKey;
+    public final String encryptedSecretKey;
+
+    // null se não houver trade em aberto no par
+    public final UUID openTradeId;
+    // OPEN; PENDING/CLOSING se a ordem BUY/SELL foi enviada e a execução ainda não está confirmada;
+    // PROTECTING enquanto o OCO de saída está a ser colocado
+    public final String openTradeStatus;
+    public final BigDecimal openTradePrice;
+    public final BigDecimal openTradeAmount;
+    // OCO de TP/SL na Binance que protege a trade aberta (null se não houver)
+    public final Long openTradeExitOrderListId;
+
+    public ActiveBot(UUID userId, String tradingPair, String orderType, BigDecimal tradeAmount,
+                     BigDecimal limitPrice, BigDecimal stopPrice, BigDecimal trailingDelta,
+                     BigDecimal stopLossPerc, BigDecimal takeProfitPerc,
+                     boolean rsiEnabled, Integer rsiThreshold, boolean macdEnabled, boolean movingAvgEnabled,
+                     String encryptedApiKey, String encryptedSecretKey,
+                     UUID openTradeId, String openTradeStatus, BigDecimal openTradePrice, BigDecimal openTradeAmount,
+                     Long openTradeExitOrderListId) {
+        this.userId = userId;
+        this.tradingPair = tradingPair;
+        this.orderType = orderType;
+        this.tradeAmount = tradeAmount;
+        this.limitPrice = limitPrice;
+        this.stopPrice = stopPrice;
+        this.trailingDelta = trailingDelta;
+        this.stopLossPerc = stopLossPerc;
+        this.takeProfitPerc = takeProfitPerc;
+        this.rsiEnabled = rsiEnabled;
+        this.rsiThreshold = rsiThreshold;
+        this.macdEnabled = macdEnabled;
+        this.movingAvgEnabled = movingAvgEnabled;
+        this.encryptedApiKey = encryptedApiKey;
+        this.encryptedSecretKey = encryptedSecretKey;
+        this.openTradeId = openTradeId;
+        this.openTradeStatus = openTradeStatus;
+        this.openTradePrice = openTradePrice;
+        this.openTradeAmount = openTradeAmount;
+        this.openTradeExitOrderListId = openTradeExitOrderListId;
+    }
+
+    public boolean hasCredentials() {
+        return encryptedApiKey != null && encryptedSecretKey != null;
+    }
+
+    public boolean hasOpenTrade() {
+        return openTradeId != null;
+    }
+
+    /**
+     * A ordem BUY ou SELL da trade foi enviada mas a execução ainda não foi confirmada (timeout,
+     * erro de rede): o bot não compra nem vende de novo até o OrderReconciler decidir.
+     */
+    public boolean hasPendingOrder() {
+        return "PENDING".equals(openTradeStatus) || "CLOSING".equals(openTradeStatus);
+    }
+
+    /**
+     * A trade aberta tem TP/SL colocados na Binance (OCO), ou o OCO está a ser enviado: não
+     * precisa de ser vigiada e o bot não a vende.
+     */
+    public boolean hasExchangeExit() {
+        return openTradeExitOrderListId != null || "PROTECTING".equals(openTradeStatus);
+    }
+
+    /** Período do RSI (o limite configurado, ou 14 por omissão). */
+    public int rsiPeriod() {
+        return rsiThreshold != null ? rsiThreshold : 14;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.binance_backend.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+/**
+ * Instância do backend a executar bots; o heartbeat indica se ainda está viva
+ * e serve para calcular a parte justa de shards de cada nó.
+ */
+@Entity
+@Table(name = "bot_node")
+public class BotNode {
+
+    @Id
+    @Column(name = "node_id")
+    private String nodeId;
+
+    @Column(name = "last_heartbeat", nullable = false)
+    private OffsetDateTime lastHeartbeat;
+
+    public BotNode() {
+    }
+
+    public BotNode(String nodeId, OffsetDateTime lastHeartbeat) {
+        this.nodeId = nodeId;
+        this.lastHeartbeat = lastHeartbeat;
+    }
+
+    // ======= GETTERS & SETTERS =======
+
+    public String getNodeId() {
+        return nodeId;
+    }
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public OffsetDateTime getLastHeartbeat() {
+        return lastHeartbeat;
+    }
+    public void setLastHeartbeat(OffsetDateTime lastHeartbeat) {
+        this.lastHeartbeat = lastHeartbeat;
+    }
+}
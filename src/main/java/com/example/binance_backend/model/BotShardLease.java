@@ -0,0 +1,54 @@
+package com.example.binance_backend.model;
+
+import jakarta.persistence.*;
+import java.time.OffsetDateTime;
+
+/**
+ * Lease de um shard de bots: o nó {@code owner} processa os users desse shard
+ * até {@code leaseUntil}, renovando-o a cada heartbeat.
+ */
+@Entity
+@Table(name = "bot_shard_lease")
+public class BotShardLease {
+
+    @Id
+    @Column(name = "shard_id")
+    private Integer shardId;
+
+    // null = shard livre
+    @Column(name = "owner")
+    private String owner;
+
+    @Column(name = "lease_until")
+    private OffsetDateTime leaseUntil;
+
+    public BotShardLease() {
+    }
+
+    public BotShardLease(Integer shardId) {
+        this.shardId = shardId;
+    }
+
+    // ======= GETTERS & SETTERS =======
+
+    public Integer getShardId() {
+        return shardId;
+    }
+    public void setShardId(Integer shardId) {
+        this.shardId = shardId;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+    public void setOwner(String owner) {
+        this.owner = owner;
+    }
+
+    public OffsetDateTime getLeaseUntil() {
+        return leaseUntil;
+    }
+    public void setLeaseUntil(OffsetDateTime leaseUntil) {
+        this.leaseUntil = leaseUntil;
+    }
+}
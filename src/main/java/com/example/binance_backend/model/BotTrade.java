@@ -65,6 +65,25 @@ public class BotTrade {
     @Column(name = "close_reason")
     private String closeReason;
 
+    // OCO de saída (TP/SL) colocado na Binance para esta trade; null se a saída é vigiada pelo bot
+    @Column(name = "exit_order_list_id")
+    private Long exitOrderListId;
+
+    // newClientOrderId da ordem BUY que abriu a trade (determinístico por user/par/candle/lado)
+    @Column(name = "client_order_id", unique = true)
+    private String clientOrderId;
+
+    // orderId e último estado na Binance da ordem BUY (NEW, PARTIALLY_FILLED, FILLED, ...)
+    @Column(name = "order_id")
+    private String orderId;
+
+    @Column(name = "order_status")
+    private String orderStatus;
+
+    // newClientOrderId da ordem SELL que fecha a trade (status CLOSING enquanto não é confirmada)
+    @Column(name = "exit_client_order_id")
+    private String exitClientOrderId;
+
     // ======= GETTERS & SETTERS =======
 
     public UUID getId() {
@@ -156,4 +175,39 @@ public class BotTrade {
 public void setCloseReason(String closeReason) {
     this.closeReason = closeReason;
 }
+
+    public Long getExitOrderListId() {
+        return exitOrderListId;
+    }
+    public void setExitOrderListId(Long exitOrderListId) {
+        this.exitOrderListId = exitOrderListId;
+    }
+
+    public String getClientOrderId() {
+        return clientOrderId;
+    }
+    public void setClientOrderId(String clientOrderId) {
+        this.clientOrderId = clientOrderId;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+    public void setOrderId(String orderId) {
+        this.orderId = orderId;
+    }
+
+    public String getOrderStatus() {
+        return orderStatus;
+    }
+    public void setOrderStatus(String orderStatus) {
+        this.orderStatus = orderStatus;
+    }
+
+    public String getExitClientOrderId() {
+        return exitClientOrderId;
+    }
+    public void setExitClientOrderId(String exitClientOrderId) {
+        this.exitClientOrderId = exitClientOrderId;
+    }
 }
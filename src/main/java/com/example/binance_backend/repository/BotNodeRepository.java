@@ -0,0 +1,21 @@
+package com.example.binance_backend.repository;
+
+import com.example.binance_backend.model.BotNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+
+@Repository
+public interface BotNodeRepository extends JpaRepository<BotNode, String> {
+
+    // Nós com heartbeat recente
+    long countByLastHeartbeatAfter(OffsetDateTime since);
+
+    @Modifying
+    @Query("DELETE FROM BotNode n WHERE n.lastHeartbeat < :before")
+    int deleteStale(@Param("before") OffsetDateTime before);
+}
@@ -1,14 +1,52 @@
 package com.example.binance_backend.repository;
 
+import com.example.binance_backend.dto.ActiveBot;
 import com.example.binance_backend.model.BotSettings;
+import com.example.binance_backend.model.BotTrade;
 import com.example.binance_backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
 public interface BotSettingsRepository extends JpaRepository<BotSettings, UUID> {
     Optional<BotSettings> findByUser(User user);
+
+    // Bots ativos com settings, credenciais e trade em aberto no par (uma linha por bot).
+    // Se houver várias trades em aberto (ex: OPEN e uma BUY ainda PENDING), só entra a mais recente
+    String ACTIVE_BOTS_QUERY =
+            "SELECT new com.example.binance_backend.dto.ActiveBot(" +
+            "  u.id, s.tradingPair, s.orderType, s.tradeAmount, s.limitPrice, s.stopPrice, s.trailingDelta, " +
+            "  s.stopLossPerc, s.takeProfitPerc, s.rsiEnabled, s.rsiThreshold, s.macdEnabled, s.movingAvgEnabled, " +
+            "  c.encryptedApiKey, c.encryptedSecretKey, t.id, t.status, t.price, t.amount, t.exitOrderListId) " +
+            "FROM BotSettings s JOIN s.user u " +
+            "JOIN BotState st ON st.user = u " +
+            "LEFT JOIN UserCredentials c ON c.user = u " +
+            "LEFT JOIN BotTrade t ON t.user = u AND t.symbol = s.tradingPair AND t.status IN ('OPEN', 'PENDING', 'CLOSING', 'PROTECTING') " +
+            "  AND NOT EXISTS (SELECT 1 FROM BotTrade t2 WHERE t2.user = u AND t2.symbol = s.tradingPair " +
+            "    AND t2.status IN ('OPEN', 'PENDING', 'CLOSING', 'PROTECTING') " +
+            "    AND (t2.createdAt > t.createdAt OR (t2.createdAt = t.createdAt AND t2.id > t.id))) " +
+            "WHERE st.isActive = true";
+
+    // Todos os bots ativos (arranque e reconciliação do ActiveBotRegistry)
+    @Query(ACTIVE_BOTS_QUERY)
+    List<ActiveBot> findActiveBots();
+
+    // Bot de um user, se estiver ativo (depois de alterar estado, settings, credenciais ou trades)
+    @Query(ACTIVE_BOTS_QUERY + " AND u.id = :userId")
+    List<ActiveBot> findActiveBotsByUserId(@Param("userId") UUID userId);
+
+    // Trades em aberto que a query dos bots ativos esconde por haver outra mais recente no mesmo
+    // par: estado inconsistente (o bot só vigia uma trade por par), reportado pelo ActiveBotRegistry
+    @Query("SELECT t FROM BotTrade t JOIN FETCH t.user u " +
+           "WHERE t.status IN ('OPEN', 'PENDING', 'CLOSING', 'PROTECTING') " +
+           "  AND EXISTS (SELECT 1 FROM BotTrade t2 WHERE t2.user = u AND t2.symbol = t.symbol " +
+           "    AND t2.status IN ('OPEN', 'PENDING', 'CLOSING', 'PROTECTING') " +
+           "    AND (t2.createdAt > t.createdAt OR (t2.createdAt = t.createdAt AND t2.id > t.id)))")
+    List<BotTrade> findTradesHiddenByNewerTrade();
 }
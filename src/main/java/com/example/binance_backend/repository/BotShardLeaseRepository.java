@@ -0,0 +1,35 @@
+package com.example.binance_backend.repository;
+
+import com.example.binance_backend.model.BotShardLease;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Repository
+public interface BotShardLeaseRepository extends JpaRepository<BotShardLease, Integer> {
+
+    List<BotShardLease> findByOwnerOrderByShardIdAsc(String owner);
+
+    // Shards livres ou com lease expirado, bloqueados para este nó; os que outro nó
+    // estiver a reclamar ao mesmo tempo são saltados em vez de esperar
+    @Query(value = "SELECT * FROM bot_shard_lease " +
+                   "WHERE owner IS NULL OR lease_until < :now " +
+                   "ORDER BY shard_id " +
+                   "LIMIT :limit " +
+                   "FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<BotShardLease> lockClaimable(@Param("now") OffsetDateTime now, @Param("limit") int limit);
+
+    @Modifying
+    @Query("UPDATE BotShardLease l SET l.leaseUntil = :until WHERE l.owner = :owner")
+    int renew(@Param("owner") String owner, @Param("until") OffsetDateTime until);
+
+    @Modifying
+    @Query("UPDATE BotShardLease l SET l.owner = null, l.leaseUntil = null WHERE l.owner = :owner")
+    int releaseAll(@Param("owner") String owner);
+}
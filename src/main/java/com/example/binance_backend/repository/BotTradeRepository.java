@@ -3,10 +3,12 @@ package com.example.binance_backend.repository;
 import com.example.binance_backend.model.BotTrade;
 import com.example.binance_backend.model.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -23,6 +25,101 @@ public interface BotTradeRepository extends JpaRepository<BotTrade, UUID> {
             @Param("symbol") String symbol
     );
 
+    // Trade protegida por um OCO de saída na Binance
+    Optional<BotTrade> findByExitOrderListIdAndStatus(Long exitOrderListId, String status);
+
+    // Trades com OCO de saída (reconciliação com a Binance)
+    @Query("SELECT t FROM BotTrade t JOIN FETCH t.user " +
+           "WHERE t.status = 'OPEN' AND t.exitOrderListId IS NOT NULL")
+    List<BotTrade> findOpenTradesWithExchangeExit();
+
+    // Trade aberta (ou pendente) por uma ordem BUY, pelo newClientOrderId
+    Optional<BotTrade> findByClientOrderId(String clientOrderId);
+
+    // Transição condicional de estado: entre chamadas concorrentes (resposta ao envio,
+    // executionReport, reconciliação) só uma muda a linha e recebe 1
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = :to " +
+           "WHERE t.clientOrderId = :clientOrderId AND t.status = :from")
+    int updateStatusByClientOrderId(
+            @Param("clientOrderId") String clientOrderId,
+            @Param("from") String from,
+            @Param("to") String to
+    );
+
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = :to WHERE t.id = :id AND t.status = :from")
+    int updateStatus(@Param("id") UUID id, @Param("from") String from, @Param("to") String to);
+
+    // Ordem SELL prestes a ser enviada: a trade fica CLOSING até a execução ser confirmada.
+    // Uma trade com OCO de saída já é vendida pela Binance
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = 'CLOSING', t.exitClientOrderId = :exitClientOrderId, " +
+           "  t.closeReason = :reason, t.updatedAt = :now " +
+           "WHERE t.id = :id AND t.status = 'OPEN' AND t.exitOrderListId IS NULL")
+    int markClosing(
+            @Param("id") UUID id,
+            @Param("exitClientOrderId") String exitClientOrderId,
+            @Param("reason") String reason,
+            @Param("now") OffsetDateTime now
+    );
+
+    // Ordem SELL terminada sem execução: a trade volta a estar aberta
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = 'OPEN', t.closeReason = null, t.updatedAt = :now " +
+           "WHERE t.exitClientOrderId = :exitClientOrderId AND t.status = 'CLOSING'")
+    int reopenClosing(@Param("exitClientOrderId") String exitClientOrderId, @Param("now") OffsetDateTime now);
+
+    // OCO de saída prestes a ser enviado: a trade fica PROTECTING (nem o bot nem o
+    // PositionMonitor a vendem) até o OCO ser associado ou dado como não colocado
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = 'PROTECTING', t.updatedAt = :now " +
+           "WHERE t.id = :id AND t.status = 'OPEN' AND t.exitOrderListId IS NULL")
+    int markProtecting(@Param("id") UUID id, @Param("now") OffsetDateTime now);
+
+    // Fim do envio do OCO: a trade volta a OPEN, com o OCO associado (ou null se não foi colocado)
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.status = 'OPEN', t.exitOrderListId = :orderListId, t.updatedAt = :now " +
+           "WHERE t.id = :id AND t.status = 'PROTECTING'")
+    int finishProtecting(
+            @Param("id") UUID id,
+            @Param("orderListId") Long orderListId,
+            @Param("now") OffsetDateTime now
+    );
+
+    // Trades com o envio do OCO sem resposta (timeout, reinício) há mais de {@code before}
+    @Query("SELECT t FROM BotTrade t JOIN FETCH t.user WHERE t.status = 'PROTECTING' AND t.updatedAt < :before")
+    List<BotTrade> findProtectingTradesBefore(@Param("before") OffsetDateTime before);
+
+    // Associa (ou desassocia) o OCO de saída sem reescrever o status de uma trade já fechada
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.exitOrderListId = :orderListId, t.updatedAt = :now " +
+           "WHERE t.id = :id AND t.status = 'OPEN'")
+    int updateOpenTradeExitOrders(
+            @Param("id") UUID id,
+            @Param("orderListId") Long orderListId,
+            @Param("now") OffsetDateTime now
+    );
+
+    // Estado na Binance de uma ordem ainda pendente (não toca no status da trade)
+    @Modifying(clearAutomatically = true)
+    @Query("UPDATE BotTrade t SET t.orderId = :orderId, t.orderStatus = :orderStatus, t.updatedAt = :now " +
+           "WHERE t.clientOrderId = :clientOrderId AND t.status = 'PENDING' " +
+           "  AND (t.orderStatus IS NULL OR t.orderStatus <> :orderStatus)")
+    int updatePendingOrderStatus(
+            @Param("clientOrderId") String clientOrderId,
+            @Param("orderId") String orderId,
+            @Param("orderStatus") String orderStatus,
+            @Param("now") OffsetDateTime now
+    );
+
+    // Trade a fechar por uma ordem SELL (só pode haver uma CLOSING por user e par)
+    Optional<BotTrade> findByExitClientOrderIdAndStatus(String exitClientOrderId, String status);
+
+    // Ordens enviadas sem execução confirmada (OrderReconciler): BUY (PENDING) e SELL (CLOSING)
+    @Query("SELECT t FROM BotTrade t JOIN FETCH t.user WHERE t.status IN ('PENDING', 'CLOSING')")
+    List<BotTrade> findPendingTrades();
+
     // Busca todos os trades (abertos e fechados) de um usuário, ordenados por data decrescente
     List<BotTrade> findByUserIdOrderByCreatedAtDesc(UUID userId);
 
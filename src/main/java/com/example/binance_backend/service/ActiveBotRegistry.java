@@ -0,0 +1,131 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.repository.BotSettingsRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * ActiveBotRegistry: bots ativos em memória, agrupados por par, para que o fecho de um candle
+ * ou um tick de preço não custem nenhuma query.
+ *
+ * - Carregado da BD no arranque ({@link ApplicationReadyEvent}).
+ * - Atualizado por user ({@link #refreshUser}) sempre que o estado do bot, as settings, as
+ *   credenciais ou as trades desse user mudam nesta instância.
+ * - Reconciliado com a BD a cada {@code bot.registry.reconcile-ms}, o que apanha alterações
+ *   feitas diretamente na BD ou por outra instância do backend. A reconciliação avisa também
+ *   das trades em aberto que ficam de fora por haver outra mais recente no mesmo par (o bot
+ *   só vigia uma trade por par).
+ *
+ * As leituras usam um snapshot imutável; as escritas (raras) criam um snapshot novo.
+ */
+@Component
+public class ActiveBotRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActiveBotRegistry.class);
+
+    private final BotSettingsRepository botSettingsRepo;
+
+    // Fonte da verdade (protegida pelo lock do objeto) e snapshot publicado para leitura
+    private final Map<UUID, ActiveBot> byUser = new HashMap<>();
+    private volatile Map<String, List<ActiveBot>> snapshot = Map.of();
+
+    public ActiveBotRegistry(BotSettingsRepository botSettingsRepo, MeterRegistry meterRegistry) {
+        this.botSettingsRepo = botSettingsRepo;
+        Gauge.builder("bot.registry.size", this, ActiveBotRegistry::size)
+                .description("Bots ativos no registo em memoria")
+                .register(meterRegistry);
+    }
+
+    /** Bots ativos num par (lista imutável, vazia se não houver nenhum). */
+    public List<ActiveBot> bySymbol(String symbol) {
+        return snapshot.getOrDefault(symbol, List.of());
+    }
+
+    /** Pares com pelo menos um bot ativo. */
+    public Set<String> activeSymbols() {
+        return snapshot.keySet();
+    }
+
+    public int size() {
+        int total = 0;
+        for (List<ActiveBot> bots : snapshot.values()) {
+            total += bots.size();
+        }
+        return total;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        reconcile();
+        logger.info("Registo de bots carregado: {} bots ativos em {} pares.", size(), snapshot.size());
+    }
+
+    // Trade em aberto sem TP/SL vigiado: fica visível nos logs até ser resolvida à mão
+    private void warnHiddenTrades() {
+        for (BotTrade trade : botSettingsRepo.findTradesHiddenByNewerTrade()) {
+            logger.warn("Trade {} ({} {}) do user {} escondida por uma trade mais recente no mesmo par; "
+                            + "TP/SL desta trade nao e vigiado.",
+                    trade.getId(), trade.getSymbol(), trade.getStatus(), trade.getUser().getId());
+        }
+    }
+
+    /** Volta a carregar todos os bots ativos da BD. */
+    @Scheduled(fixedDelayString = "${bot.registry.reconcile-ms:60000}",
+               initialDelayString = "${bot.registry.reconcile-ms:60000}")
+    public synchronized void reconcile() {
+        try {
+            Map<UUID, ActiveBot> loaded = new HashMap<>();
+            for (ActiveBot bot : botSettingsRepo.findActiveBots()) {
+                loaded.putIfAbsent(bot.userId, bot);
+            }
+            if (!loaded.keySet().equals(byUser.keySet())) {
+                logger.info("Registo de bots reconciliado com a BD: {} -> {} bots ativos.", byUser.size(), loaded.size());
+            }
+            byUser.clear();
+            byUser.putAll(loaded);
+            publish();
+            warnHiddenTrades();
+        } catch (Exception e) {
+            logger.error("Erro ao reconciliar registo de bots: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Recarrega o bot de um user depois de uma escrita que o afete. Se o bot ficou inativo
+     * (ou sem settings) sai do registo.
+     */
+    public synchronized void refreshUser(UUID userId) {
+        try {
+            List<ActiveBot> rows = botSettingsRepo.findActiveBotsByUserId(userId);
+            if (rows.isEmpty()) {
+                byUser.remove(userId);
+            } else {
+                byUser.put(userId, rows.get(0));
+            }
+            publish();
+        } catch (Exception e) {
+            // Fica como estava; a próxima reconciliação corrige
+            logger.error("Erro ao atualizar registo do bot do user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    private void publish() {
+        Map<String, List<ActiveBot>> grouped = new HashMap<>();
+        for (ActiveBot bot : byUser.values()) {
+            grouped.computeIfAbsent(bot.tradingPair, k -> new ArrayList<>()).add(bot);
+        }
+        Map<String, List<ActiveBot>> next = new HashMap<>();
+        grouped.forEach((symbol, bots) -> next.put(symbol, List.copyOf(bots)));
+        snapshot = Collections.unmodifiableMap(next);
+    }
+}
@@ -1,75 +1,207 @@
 package com.example.binance_backend.service;
 
+import com.example.binance_backend.service.exchange.SymbolFilters;
+import com.example.binance_backend.service.marketdata.KlineDecoder;
+import com.example.binance_backend.service.marketdata.KlineSink;
+import com.example.binance_backend.service.userdata.AccountBalance;
 import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
 
-import javax.crypto.Mac;
-import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
-import java.time.Instant;
+import java.math.RoundingMode;
 import java.util.*;
 
 /**
  * BinanceClient: encapsula chamadas à API pública e privada da Binance,
  * recebendo as chaves do user dinamicamente (criptografadas no banco de dados).
  *
- * - getKlines(...)       → busca candles (klines) públicos.
+ * - fetchKlines(...)    → busca candles (klines) públicos, descodificados em streaming.
+ * - fetchPrices(...)     → último preço de vários pares num só pedido.
+ * - fetchSymbolFilters(...) → filtros de ordem (tickSize, stepSize, mínimos) de vários pares.
+ * - syncServerTime()     → amostra de /api/v3/time para o relógio da Binance (ServerClock).
  * - fetchFreeBalance(...)→ recupera saldo "free" de um asset (ex: USDT) usando credenciais do user.
+ * - fetchBalancesAsync(...) → todos os saldos da conta (usado para semear o user data stream).
  * - placeOrder(...)      → envia ordens privadas (MARKET, LIMIT, STOP_LOSS_LIMIT, TRAILING_STOP_MARKET, LIMIT_MAKER)
- *                         usando HMAC-SHA256 para assinatura.
+ *                         usando HMAC-SHA256 para assinatura; placeOrderAsync(...) é a versão não bloqueante.
+ * - placeOcoSellAsync(...) → OCO de venda (take profit LIMIT_MAKER + stop loss STOP_LOSS_LIMIT).
+ * - fetchOrderListAsync(...) / fetchOrderAsync(...) → estado de um OCO / de uma ordem.
+ * - fetchOpenOrdersAsync(...) / fetchOrdersAsync(...) → ordens abertas da conta / ordens recentes
+ *                         de um par (acompanhamento das ordens pendentes).
+ * - createListenKey(...) / keepAliveListenKey(...) / closeListenKey(...) → listenKey do user data stream.
+ *
+ * Os pedidos assinados levam {@code recvWindow} e um timestamp corrigido pelo offset do
+ * relógio da Binance; se mesmo assim forem rejeitados com -1021, o relógio é ressincronizado
+ * e o pedido é reenviado uma vez (com nova assinatura).
  */
 @Service
 public class BinanceClient {
 
-    // WebClient para chamadas públicas (exchangeInfo, klines, etc.)
-    private final WebClient publicClient;
+    // WebClient partilhado (pool de ligações do BinanceHttpConfig) para chamadas públicas e
+    // privadas; nas privadas o X-MBX-APIKEY vai em cada pedido
+    private final WebClient webClient;
+
+    // Assinatura HMAC-SHA256 dos pedidos privados (Mac em cache por secret e por thread)
+    private final HmacSigner signer = new HmacSigner();
+
+    // Relógio da Binance (offset em relação ao relógio local) e validade dos pedidos assinados
+    private final ServerClock clock = new ServerClock();
+    private final long recvWindowMs;
 
-    // Base URL da API da Binance (tanto para público quanto para privado)
-    private static final String BASE_URL = "https://api.binance.com";
+    static final long DEFAULT_RECV_WINDOW_MS = 5000;
 
-    public BinanceClient() {
-        this.publicClient = WebClient.builder()
-                .baseUrl(BASE_URL)
-                .build();
+    @Autowired
+    public BinanceClient(WebClient binanceWebClient,
+                         @Value("${bot.binance.recv-window-ms:5000}") long recvWindowMs) {
+        this.webClient = binanceWebClient;
+        this.recvWindowMs = recvWindowMs;
+    }
+
+    /** Cliente com as definições HTTP por omissão (testes e ferramentas). */
+    public BinanceClient(String baseUrl) {
+        this(WebClient.builder().baseUrl(baseUrl).build(), DEFAULT_RECV_WINDOW_MS);
+    }
+
+    public ServerClock clock() {
+        return clock;
     }
 
     // =====================================
     // 1) BUSCA DE CANDLES (KLINES) PÚBLICOS
     // =====================================
     /**
-     * Retorna uma lista de Candle (openTime, open, high, low, close) para um dado symbol,
-     * no intervalo especificado (ex: "5m", "15m", "1h") e limite de candles.
+     * Busca os últimos candles de um symbol no intervalo especificado (ex: "5m", "15m", "1h")
+     * e escreve-os, um a um, no sink indicado (normalmente um CandleSeries).
+     *
+     * A resposta é lida como bytes e descodificada em streaming pelo KlineDecoder, sem
+     * construir a árvore JSON nem BigDecimals/Strings por campo. São mantidos openTime,
+     * OHLC, volume, closeTime e número de trades.
      *
      * @param symbol   par de trading (ex: "BTCUSDT")
      * @param interval intervalo (ex: "5m")
      * @param limit    número de candles a retornar (ex: 50)
-     * @return lista de Candle contendo timestamps e preços
+     * @param sink     destino dos candles descodificados
+     * @return número de candles recebidos
      */
-    public List<Candle> getKlines(String symbol, String interval, int limit) {
+    public int fetchKlines(String symbol, String interval, int limit, KlineSink sink) {
         String path = "/api/v3/klines"
                 + "?symbol=" + symbol
                 + "&interval=" + interval
                 + "&limit=" + limit;
 
-        JsonNode[] raw = publicClient.get()
+        byte[] body = webClient.get()
                 .uri(path)
                 .retrieve()
-                .bodyToMono(JsonNode[].class)
+                .bodyToMono(byte[].class)
+                .block();
+
+        if (body == null) {
+            return 0;
+        }
+        try {
+            return KlineDecoder.decode(body, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Resposta de klines invalida para " + symbol, e);
+        }
+    }
+
+    // ==========================================
+    // 1b) ÚLTIMO PREÇO DE VÁRIOS PARES (TICKER)
+    // ==========================================
+    /**
+     * Último preço de vários pares num único pedido a {@code /api/v3/ticker/price?symbols=[...]}
+     * (peso 4 para qualquer número de pares, contra 2 por par se forem pedidos um a um).
+     *
+     * @param symbols pares de trading (ex: "BTCUSDT", "ETHUSDT")
+     * @return preço por par; pares desconhecidos pela Binance ficam de fora
+     */
+    public Map<String, BigDecimal> fetchPrices(Collection<String> symbols) {
+        if (symbols.isEmpty()) {
+            return Map.of();
+        }
+        StringJoiner json = new StringJoiner("\",\"", "[\"", "\"]");
+        for (String symbol : symbols) {
+            json.add(symbol);
+        }
+
+        JsonNode resp = webClient.get()
+                .uri(b -> b.path("/api/v3/ticker/price").queryParam("symbols", "{symbols}").build(json.toString()))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
                 .block();
 
-        List<Candle> candles = new ArrayList<>();
-        if (raw != null) {
-            for (JsonNode arr : raw) {
-                long openTime = arr.get(0).asLong();
-                BigDecimal open  = new BigDecimal(arr.get(1).asText());
-                BigDecimal high  = new BigDecimal(arr.get(2).asText());
-                BigDecimal low   = new BigDecimal(arr.get(3).asText());
-                BigDecimal close = new BigDecimal(arr.get(4).asText());
-                candles.add(new Candle(openTime, open, high, low, close));
+        Map<String, BigDecimal> prices = new HashMap<>();
+        if (resp != null) {
+            for (JsonNode ticker : resp) {
+                prices.put(ticker.path("symbol").asText(), new BigDecimal(ticker.path("price").asText()));
             }
         }
-        return candles;
+        return prices;
+    }
+
+    // ==========================================
+    // 1c) FILTROS DOS PARES (EXCHANGE INFO)
+    // ==========================================
+    /**
+     * Filtros de ordem de vários pares num único pedido a
+     * {@code /api/v3/exchangeInfo?symbols=[...]} (peso 20).
+     *
+     * @param symbols pares de trading (ex: "BTCUSDT", "ETHUSDT")
+     * @return filtros por par
+     */
+    public Map<String, SymbolFilters> fetchSymbolFilters(Collection<String> symbols) {
+        if (symbols.isEmpty()) {
+            return Map.of();
+        }
+        StringJoiner json = new StringJoiner("\",\"", "[\"", "\"]");
+        for (String symbol : symbols) {
+            json.add(symbol);
+        }
+
+        JsonNode resp = webClient.get()
+                .uri(b -> b.path("/api/v3/exchangeInfo").queryParam("symbols", "{symbols}").build(json.toString()))
+                .retrieve()
+                .bodyToMono(JsonNode.class)
+                .block();
+
+        Map<String, SymbolFilters> filters = new HashMap<>();
+        if (resp != null) {
+            for (JsonNode symbolNode : resp.path("symbols")) {
+                SymbolFilters f = SymbolFilters.fromJson(symbolNode);
+                filters.put(f.symbol, f);
+            }
+        }
+        return filters;
+    }
+
+    // ==========================================
+    // 1d) HORA DO SERVIDOR
+    // ==========================================
+    /**
+     * Pede {@code /api/v3/time} (peso 1) e regista a amostra no {@link ServerClock}.
+     * Bloqueante; ver {@link #syncServerTimeAsync()}.
+     */
+    public void syncServerTime() {
+        syncServerTimeAsync().block();
+    }
+
+    /** Versão não bloqueante de {@link #syncServerTime()}. */
+    public Mono<Void> syncServerTimeAsync() {
+        return Mono.defer(() -> {
+            long sentAt = System.currentTimeMillis();
+            return webClient.get()
+                    .uri("/api/v3/time")
+                    .retrieve()
+                    .bodyToMono(JsonNode.class)
+                    .doOnNext(resp -> clock.addSample(sentAt, resp.path("serverTime").asLong(), System.currentTimeMillis()))
+                    .then();
+        });
     }
 
     // ============================================================
@@ -89,29 +221,10 @@ public class BinanceClient {
         String apiKey    = decrypt(encryptedApiKey);
         String secretKey = decrypt(encryptedSecretKey);
 
-        // 2) Prepara timestamp e parâmetros para /api/v3/account
-        long timestamp = Instant.now().toEpochMilli();
-        Map<String, String> params = new TreeMap<>();
-        params.put("timestamp", String.valueOf(timestamp));
-
-        String queryString = buildQueryString(params);
-        String signature = hmacSHA256(queryString, secretKey);
-        queryString += "&signature=" + signature;
-
-        // 3) Cria WebClient privado com header X-MBX-APIKEY
-        WebClient privateClient = WebClient.builder()
-                .baseUrl(BASE_URL)
-                .defaultHeader("X-MBX-APIKEY", apiKey)
-                .build();
+        // 2) GET /api/v3/account (com X-MBX-APIKEY)
+        JsonNode resp = account(apiKey, secretKey).block();
 
-        // 4) Faz GET para /api/v3/account para obter balanços
-        JsonNode resp = privateClient.get()
-                .uri("/api/v3/account?" + queryString)
-                .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
-
-        // 5) Itera sobre "balances" para encontrar o asset desejado
+        // 3) Itera sobre "balances" para encontrar o asset desejado
         if (resp != null && resp.has("balances")) {
             for (JsonNode b : resp.get("balances")) {
                 if (asset.equalsIgnoreCase(b.get("asset").asText())) {
@@ -122,6 +235,43 @@ public class BinanceClient {
         return "0";
     }
 
+    /**
+     * Todos os saldos da conta (não bloqueante), por asset.
+     *
+     * @param encryptedApiKey    chave da API cifrada no banco
+     * @param encryptedSecretKey secret da API cifrada no banco
+     */
+    public Mono<Map<String, AccountBalance>> fetchBalancesAsync(String encryptedApiKey, String encryptedSecretKey) {
+        return Mono.defer(() -> account(decrypt(encryptedApiKey), decrypt(encryptedSecretKey)))
+                .map(resp -> {
+                    long updateTime = resp.path("updateTime").asLong();
+                    Map<String, AccountBalance> balances = new HashMap<>();
+                    for (JsonNode b : resp.path("balances")) {
+                        String asset = b.path("asset").asText();
+                        balances.put(asset, new AccountBalance(asset,
+                                new BigDecimal(b.path("free").asText("0")),
+                                new BigDecimal(b.path("locked").asText("0")),
+                                updateTime));
+                    }
+                    return balances;
+                });
+    }
+
+    // GET /api/v3/account (peso 20), assinado no momento do envio
+    private Mono<JsonNode> account(String apiKey, String secretKey) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(secretKey);
+            return webClient.get()
+                    .uri("/api/v3/account?" + queryString)
+                    .header("X-MBX-APIKEY", apiKey)
+                    .retrieve()
+                    .bodyToMono(JsonNode.class);
+        }));
+    }
+
     // =====================================
     // 3) ENVIO DE ORDENS PRIVADAS (BUY/SELL) 
     // =====================================
@@ -157,72 +307,346 @@ public class BinanceClient {
             BigDecimal price,
             BigDecimal stopPrice
     ) {
-        // 1) Descriptografa credenciais
-        String apiKey    = decrypt(encryptedApiKey);
-        String secretKey = decrypt(encryptedSecretKey);
+        return placeOrderAsync(encryptedApiKey, encryptedSecretKey, symbol, side, type, quantity, price, stopPrice, null)
+                .block();
+    }
 
-        // 2) Prepara timestamp e parâmetros obrigatórios para /api/v3/order
-        long timestamp = Instant.now().toEpochMilli();
-        Map<String, String> params = new TreeMap<>();
-        params.put("symbol", symbol);
-        params.put("side", side);
-        params.put("type", type);
-        params.put("quantity", quantity.stripTrailingZeros().toPlainString());
-        if (price != null) {
-            params.put("price", price.stripTrailingZeros().toPlainString());
-        }
-        if (stopPrice != null) {
-            params.put("stopPrice", stopPrice.stripTrailingZeros().toPlainString());
-        }
-        params.put("timestamp", String.valueOf(timestamp));
+    /**
+     * Versão não bloqueante de {@link #placeOrder}: nada é enviado até haver subscrição, e a
+     * query (incluindo o timestamp) só é assinada nesse momento, por isso uma ordem que
+     * espere numa fila não chega à Binance com um timestamp antigo.
+     *
+     * @param clientOrderId newClientOrderId da ordem (ver {@link ClientOrderIds}); null para
+     *                      a Binance gerar um
+     */
+    public Mono<BinanceOrderResponse> placeOrderAsync(
+            String encryptedApiKey,
+            String encryptedSecretKey,
+            String symbol,
+            String side,
+            String type,
+            BigDecimal quantity,
+            BigDecimal price,
+            BigDecimal stopPrice,
+            String clientOrderId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            // 1) Descriptografa credenciais
+            String apiKey    = decrypt(encryptedApiKey);
+            String secretKey = decrypt(encryptedSecretKey);
 
-        String queryString = buildQueryString(params);
-        String signature = hmacSHA256(queryString, secretKey);
-        queryString += "&signature=" + signature;
+            // 2) Query assinada com os parâmetros obrigatórios para /api/v3/order
+            HmacSigner.Query query = signer.query()
+                    .param("symbol", symbol)
+                    .param("side", side)
+                    .param("type", type)
+                    .param("quantity", quantity.stripTrailingZeros().toPlainString());
+            if (price != null) {
+                query.param("price", price.stripTrailingZeros().toPlainString());
+            }
+            if (stopPrice != null) {
+                query.param("stopPrice", stopPrice.stripTrailingZeros().toPlainString());
+            }
+            if (clientOrderId != null) {
+                query.param("newClientOrderId", clientOrderId);
+            }
+            String queryString = query
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(secretKey);
 
-        // 3) Cria WebClient privado com X-MBX-APIKEY
-        WebClient privateClient = WebClient.builder()
-                .baseUrl(BASE_URL)
-                .defaultHeader("X-MBX-APIKEY", apiKey)
-                .build();
+            // 3) POST para /api/v3/order (com X-MBX-APIKEY)
+            return webClient.post()
+                    .uri("/api/v3/order?" + queryString)
+                    .header("X-MBX-APIKEY", apiKey)
+                    .retrieve()
+                    .bodyToMono(BinanceOrderResponse.class);
+        }));
+    }
 
-        // 4) Dispara POST para /api/v3/order
-        BinanceOrderResponse resp = privateClient.post()
-                .uri("/api/v3/order?" + queryString)
+    // =====================================
+    // 3b) OCO DE SAÍDA (TAKE PROFIT / STOP LOSS)
+    // =====================================
+    /**
+     * Coloca um OCO de venda em {@code /api/v3/orderList/oco}: uma ordem LIMIT_MAKER acima do
+     * preço (take profit) e uma STOP_LOSS_LIMIT abaixo (stop loss). Quando uma perna executa,
+     * a Binance cancela a outra. Não bloqueante; assinado no momento da subscrição.
+     *
+     * @param listClientOrderId id do OCO escolhido por nós, para o encontrar se a resposta se perder
+     * @param quantity        quantidade a vender (a da trade aberta)
+     * @param takeProfitPrice preço limite do take profit
+     * @param stopPrice       preço de gatilho do stop loss
+     * @param stopLimitPrice  preço limite da ordem de stop (ligeiramente abaixo do gatilho)
+     */
+    public Mono<BinanceOrderListResponse> placeOcoSellAsync(
+            String encryptedApiKey,
+            String encryptedSecretKey,
+            String symbol,
+            String listClientOrderId,
+            BigDecimal quantity,
+            BigDecimal takeProfitPrice,
+            BigDecimal stopPrice,
+            BigDecimal stopLimitPrice
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String apiKey    = decrypt(encryptedApiKey);
+            String secretKey = decrypt(encryptedSecretKey);
+
+            String queryString = signer.query()
+                    .param("symbol", symbol)
+                    .param("side", "SELL")
+                    .param("listClientOrderId", listClientOrderId)
+                    .param("quantity", quantity.stripTrailingZeros().toPlainString())
+                    .param("aboveType", "LIMIT_MAKER")
+                    .param("abovePrice", takeProfitPrice.stripTrailingZeros().toPlainString())
+                    .param("belowType", "STOP_LOSS_LIMIT")
+                    .param("belowStopPrice", stopPrice.stripTrailingZeros().toPlainString())
+                    .param("belowPrice", stopLimitPrice.stripTrailingZeros().toPlainString())
+                    .param("belowTimeInForce", "GTC")
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(secretKey);
+
+            return webClient.post()
+                    .uri("/api/v3/orderList/oco?" + queryString)
+                    .header("X-MBX-APIKEY", apiKey)
+                    .retrieve()
+                    .bodyToMono(BinanceOrderListResponse.class);
+        }));
+    }
+
+    // =====================================
+    // 3c) CONSULTA DE ORDENS
+    // =====================================
+    /** Estado de um OCO ({@code GET /api/v3/orderList}, peso 4). */
+    public Mono<BinanceOrderListResponse> fetchOrderListAsync(
+            String encryptedApiKey, String encryptedSecretKey, long orderListId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("orderListId", orderListId)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/orderList?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToMono(BinanceOrderListResponse.class);
+        }));
+    }
+
+    /**
+     * Estado de um OCO pelo listClientOrderId ({@code GET /api/v3/orderList}, peso 4). Se o OCO
+     * não existir a Binance responde com erro (ver {@link #isUnknownOrder}).
+     */
+    public Mono<BinanceOrderListResponse> fetchOrderListByClientIdAsync(
+            String encryptedApiKey, String encryptedSecretKey, String listClientOrderId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("origClientOrderId", listClientOrderId)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/orderList?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToMono(BinanceOrderListResponse.class);
+        }));
+    }
+
+    /** Estado de uma ordem ({@code GET /api/v3/order}, peso 4). */
+    public Mono<BinanceOrderResponse> fetchOrderAsync(
+            String encryptedApiKey, String encryptedSecretKey, String symbol, String orderId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("symbol", symbol)
+                    .param("orderId", orderId)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/order?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToMono(BinanceOrderResponse.class);
+        }));
+    }
+
+    /**
+     * Estado de uma ordem pelo newClientOrderId ({@code GET /api/v3/order}, peso 4). Se a
+     * ordem não existir a Binance responde com o código -2013 (ver {@link #isUnknownOrder}).
+     */
+    public Mono<BinanceOrderResponse> fetchOrderByClientOrderIdAsync(
+            String encryptedApiKey, String encryptedSecretKey, String symbol, String clientOrderId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("symbol", symbol)
+                    .param("origClientOrderId", clientOrderId)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/order?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToMono(BinanceOrderResponse.class);
+        }));
+    }
+
+    /**
+     * Execuções de uma ordem ({@code GET /api/v3/myTrades}, peso 20), com a comissão cobrada
+     * em cada uma; usado quando a resposta da ordem não trouxe os {@code fills}.
+     */
+    public Mono<List<Fill>> fetchOrderFillsAsync(
+            String encryptedApiKey, String encryptedSecretKey, String symbol, String orderId
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("symbol", symbol)
+                    .param("orderId", orderId)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/myTrades?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToFlux(Fill.class)
+                    .collectList();
+        }));
+    }
+
+    /**
+     * Ordens abertas da conta ({@code GET /api/v3/openOrders}): de um par (peso 6) ou, com
+     * {@code symbol} null, de todos os pares num só pedido (peso 80).
+     */
+    public Mono<List<BinanceOrderResponse>> fetchOpenOrdersAsync(
+            String encryptedApiKey, String encryptedSecretKey, String symbol
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            HmacSigner.Query query = signer.query();
+            if (symbol != null) {
+                query.param("symbol", symbol);
+            }
+            String queryString = query
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/openOrders?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToFlux(BinanceOrderResponse.class)
+                    .collectList();
+        }));
+    }
+
+    /**
+     * Ordens de um par desde {@code startTime} ({@code GET /api/v3/allOrders}, peso 20): num só
+     * pedido dá o estado de todas as ordens recentes do user no par, incluindo o clientOrderId.
+     */
+    public Mono<List<BinanceOrderResponse>> fetchOrdersAsync(
+            String encryptedApiKey, String encryptedSecretKey, String symbol, long startTime
+    ) {
+        return resyncOnTimestampError(Mono.defer(() -> {
+            String queryString = signer.query()
+                    .param("symbol", symbol)
+                    .param("startTime", startTime)
+                    .param("limit", 1000)
+                    .param("recvWindow", recvWindowMs)
+                    .param("timestamp", clock.timestamp(recvWindowMs))
+                    .signWith(decrypt(encryptedSecretKey));
+            return webClient.get()
+                    .uri("/api/v3/allOrders?" + queryString)
+                    .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                    .retrieve()
+                    .bodyToFlux(BinanceOrderResponse.class)
+                    .collectList();
+        }));
+    }
+
+    // =====================================
+    // 4) USER DATA STREAM (LISTEN KEY)
+    // =====================================
+    /**
+     * Cria (ou devolve a ativa) listenKey do user data stream. Só precisa da API key;
+     * a listenKey expira 60 min depois do último keep-alive.
+     */
+    public Mono<String> createListenKey(String encryptedApiKey) {
+        return Mono.defer(() -> webClient.post()
+                .uri("/api/v3/userDataStream")
+                .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
                 .retrieve()
-                .bodyToMono(BinanceOrderResponse.class)
-                .block();
+                .bodyToMono(JsonNode.class)
+                .map(resp -> resp.path("listenKey").asText()));
+    }
 
-        return resp;
+    /** Prolonga a validade da listenKey por mais 60 min. */
+    public Mono<Void> keepAliveListenKey(String encryptedApiKey, String listenKey) {
+        return Mono.defer(() -> webClient.put()
+                .uri(b -> b.path("/api/v3/userDataStream").queryParam("listenKey", listenKey).build())
+                .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                .retrieve()
+                .toBodilessEntity()
+                .then());
+    }
+
+    /** Fecha a listenKey (o stream correspondente é terminado pela Binance). */
+    public Mono<Void> closeListenKey(String encryptedApiKey, String listenKey) {
+        return Mono.defer(() -> webClient.delete()
+                .uri(b -> b.path("/api/v3/userDataStream").queryParam("listenKey", listenKey).build())
+                .header("X-MBX-APIKEY", decrypt(encryptedApiKey))
+                .retrieve()
+                .toBodilessEntity()
+                .then());
     }
 
     // =========================
     // MÉTODOS AUXILIARES PRIVADOS
     // =========================
-    private String buildQueryString(Map<String, String> params) {
-        StringBuilder sb = new StringBuilder();
-        for (Map.Entry<String, String> e : params.entrySet()) {
-            if (sb.length() > 0) sb.append("&");
-            sb.append(e.getKey()).append("=").append(e.getValue());
+    /**
+     * Se a Binance rejeitar o timestamp (-1021), ressincroniza o relógio e reenvia o pedido
+     * uma vez. O pedido tem de ser assinado dentro do Mono (defer) para levar o novo timestamp;
+     * uma ordem rejeitada com -1021 não chegou a ser criada, por isso o reenvio é seguro.
+     */
+    private <T> Mono<T> resyncOnTimestampError(Mono<T> signedRequest) {
+        return signedRequest.onErrorResume(BinanceClient::isTimestampError, e -> {
+            clock.reset();
+            return syncServerTimeAsync().then(signedRequest);
+        });
+    }
+
+    static boolean isTimestampError(Throwable e) {
+        return e instanceof WebClientResponseException
+                && ((WebClientResponseException) e).getResponseBodyAsString().contains("\"code\":-1021");
+    }
+
+    /** A Binance respondeu que a ordem (-2013) ou a lista de ordens (-2011) consultada não existe. */
+    public static boolean isUnknownOrder(Throwable e) {
+        if (!(e instanceof WebClientResponseException)) {
+            return false;
         }
-        return sb.toString();
+        String body = ((WebClientResponseException) e).getResponseBodyAsString();
+        return body.contains("\"code\":-2013") || body.contains("\"code\":-2011");
     }
 
-    private String hmacSHA256(String data, String key) {
-        try {
-            Mac sha256_HMAC = Mac.getInstance("HmacSHA256");
-            SecretKeySpec secret_key = new SecretKeySpec(key.getBytes(), "HmacSHA256");
-            sha256_HMAC.init(secret_key);
-            byte[] hash = sha256_HMAC.doFinal(data.getBytes());
-            // converte em hex
-            StringBuilder sb = new StringBuilder();
-            for (byte b : hash) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (Exception e) {
-            throw new RuntimeException("Erro ao gerar HMACSHA256", e);
+    /**
+     * A Binance recusou o pedido (erro 4xx com código da Binance): a ordem não foi criada.
+     * Timeouts, erros de rede, 5xx e -1007 (estado de execução desconhecido) não contam, porque
+     * a ordem pode ter sido aceite.
+     */
+    public static boolean isRejected(Throwable e) {
+        if (!(e instanceof WebClientResponseException)
+                || !((WebClientResponseException) e).getStatusCode().is4xxClientError()) {
+            return false;
         }
+        String body = ((WebClientResponseException) e).getResponseBodyAsString();
+        return body.contains("\"code\":") && !body.contains("\"code\":-1007");
     }
 
     /**
@@ -236,21 +660,6 @@ public class BinanceClient {
     // -------------------------------
     // CLASSES INTERNAS DE RESPOSTA
     // -------------------------------
-    /**
-     * Representa um candle (kline) retornado pela API pública.
-     */
-    public static class Candle {
-        public long openTime;
-        public BigDecimal open, high, low, close;
-        public Candle(long openTime, BigDecimal open, BigDecimal high, BigDecimal low, BigDecimal close) {
-            this.openTime = openTime;
-            this.open = open;
-            this.high = high;
-            this.low = low;
-            this.close = close;
-        }
-    }
-
     /**
      * Mapeia a resposta da Binance ao criar uma ordem.
      * Contém apenas campos principais; amplie conforme necessidade.
@@ -258,12 +667,53 @@ public class BinanceClient {
     public static class BinanceOrderResponse {
         public String symbol;
         public String orderId;
+        public String clientOrderId;
         public String status;
         public String side;
         public String type;
         public BigDecimal executedQty;
         public BigDecimal cummulativeQuoteQty;
         public BigDecimal price;
-        
+        // Execuções (resposta FULL ao envio; ausente nas consultas e no ACK)
+        public List<Fill> fills;
+
+        /**
+         * Preço médio executado ({@code cummulativeQuoteQty / executedQty}); {@code price} é o
+         * preço limite da ordem e vem a 0 nas MARKET. null se nada executou e não há preço.
+         */
+        public BigDecimal averagePrice() {
+            if (executedQty != null && executedQty.signum() > 0 && cummulativeQuoteQty != null) {
+                return cummulativeQuoteQty.divide(executedQty, 8, RoundingMode.HALF_UP);
+            }
+            return price != null && price.signum() > 0 ? price : null;
+        }
+    }
+
+    /**
+     * Uma execução de uma ordem ({@code fills[]} da resposta ao envio ou {@code /api/v3/myTrades}).
+     * A comissão é cobrada em {@code commissionAsset}: o asset base, o quote ou BNB.
+     */
+    public static class Fill {
+        public BigDecimal price;
+        public BigDecimal qty;
+        public BigDecimal commission;
+        public String commissionAsset;
+    }
+
+    /**
+     * Mapeia a resposta de um OCO (criação ou consulta): id da lista, estado e ordens.
+     * listOrderStatus: EXECUTING (pernas abertas), ALL_DONE (uma executou/cancelado) ou REJECT.
+     */
+    public static class BinanceOrderListResponse {
+        public long orderListId;
+        public String listClientOrderId;
+        public String listOrderStatus;
+        public List<OrderRef> orders;
+
+        public static class OrderRef {
+            public String symbol;
+            public String orderId;
+            public String clientOrderId;
+        }
     }
 }
@@ -0,0 +1,106 @@
+package com.example.binance_backend.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * BotCycleExecutor: executa as tarefas do bot (avaliação de cada par, verificações de
+ * TP/SL, ordens de cada user) em paralelo, num pool limitado a {@code bot.cycle.max-concurrency} threads.
+ *
+ * - Cada tarefa corre isolada: exceções são registadas e não afetam as restantes.
+ * - Cada tarefa tem um tempo máximo ({@code bot.cycle.user-timeout-ms}) contado a partir do
+ *   momento em que começa a correr (não do tempo em fila); ao fim desse tempo é cancelada
+ *   e a thread interrompida.
+ * - {@link #submit} volta logo: é usado pelos listeners de eventos de mercado, que não podem
+ *   bloquear a thread do stream.
+ */
+@Component
+public class BotCycleExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BotCycleExecutor.class);
+
+    private final ThreadPoolExecutor pool;
+    private final ScheduledExecutorService watchdog;
+    private final long userTimeoutMs;
+
+    public BotCycleExecutor(
+            @Value("${bot.cycle.max-concurrency:8}") int maxConcurrency,
+            @Value("${bot.cycle.user-timeout-ms:20000}") long userTimeoutMs
+    ) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("bot.cycle.max-concurrency invalido: " + maxConcurrency);
+        }
+        this.userTimeoutMs = userTimeoutMs;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(
+                maxConcurrency, maxConcurrency,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                r -> {
+                    Thread t = new Thread(r, "bot-cycle-" + threadCount.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "bot-cycle-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Agenda {@code task} sem esperar pelo resultado. Erros e timeouts são registados com
+     * {@code label}.
+     */
+    public void submit(Object label, Runnable task) {
+        pool.execute(guarded(task, label));
+    }
+
+    // Tarefa que se cancela a si própria se correr mais do que userTimeoutMs e regista
+    // ela própria o erro/timeout (ninguém espera pelo resultado)
+    private FutureTask<Void> guarded(Runnable work, Object label) {
+        AtomicReference<FutureTask<Void>> self = new AtomicReference<>();
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            ScheduledFuture<?> timer = watchdog.schedule(
+                    () -> self.get().cancel(true), userTimeoutMs, TimeUnit.MILLISECONDS);
+            try {
+                work.run();
+            } finally {
+                timer.cancel(false);
+            }
+            return null;
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    logger.error("Tarefa do ciclo ({}) excedeu o tempo maximo de {} ms e foi cancelada.", label, userTimeoutMs);
+                    return;
+                }
+                try {
+                    get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    logger.error("Erro inesperado no ciclo ({}): {}", label, cause.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        self.set(future);
+        return future;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+        watchdog.shutdownNow();
+    }
+}
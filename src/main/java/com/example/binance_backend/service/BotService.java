@@ -1,349 +1,432 @@
 package com.example.binance_backend.service;
 
-import com.example.binance_backend.model.*;
-import com.example.binance_backend.repository.*;
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.service.exchange.ExchangeInfoCache;
+import com.example.binance_backend.service.exchange.SymbolFilters;
+import com.example.binance_backend.service.indicator.MacdEngine;
+import com.example.binance_backend.service.indicator.MarketSnapshot;
+import com.example.binance_backend.service.marketdata.CandleClosedEvent;
+import com.example.binance_backend.service.marketdata.CandleSeries;
+import com.example.binance_backend.service.marketdata.KlineInterval;
+import com.example.binance_backend.service.marketdata.MarketDataCache;
+import com.example.binance_backend.service.marketdata.PriceTickEvent;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
-import java.time.OffsetDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Service
 public class BotService {
 
     private static final Logger logger = LoggerFactory.getLogger(BotService.class);
 
-    private final BotSettingsRepository botSettingsRepo;
-    private final BotStateRepository botStateRepo;
-    private final BotStateHistoryRepository botStateHistoryRepo;
-    private final BotTradeRepository botTradeRepo;
-    private final UserRepository userRepo;
-    private final UserCredentialsRepository userCredentialsRepo;
-    private final BinanceClient binanceClient;
+    // Candles usados pelos indicadores
+    private static final int CANDLE_LIMIT = 50;
 
+    private final BinanceClient binanceClient;
+    private final MarketDataCache marketDataCache;
+    private final MacdEngine macdEngine;
+    private final BotCycleExecutor cycleExecutor;
+    private final BotTradeService botTradeService;
+    private final ShardCoordinator shards;
+    private final ActiveBotRegistry registry;
+    private final OrderPipeline orderPipeline;
+    private final ExchangeInfoCache exchangeInfo;
+    private final OrderReconciler orderReconciler;
+
+    // Latência entre o evento de mercado e a decisão do bot
+    private final Timer candleLatency;
+    private final Timer tickLatency;
+    // Ordens não enviadas por violarem os filtros do par / por já terem sido enviadas
+    private final Counter localRejections;
+    private final Counter duplicateOrders;
+    // Pares com verificação de TP/SL em curso e trades com fecho em curso
+    private final Set<String> ticksInFlight = ConcurrentHashMap.newKeySet();
+    private final Set<UUID> closingTrades = ConcurrentHashMap.newKeySet();
 
     @Value("${bot.simulation:true}")
     private boolean simulationMode;
 
-    public BotService(
-            BotSettingsRepository botSettingsRepo,
-            BotStateRepository botStateRepo,
-            BotStateHistoryRepository botStateHistoryRepo,
-            BotTradeRepository botTradeRepo,
-            UserRepository userRepo,
-            UserCredentialsRepository userCredentialsRepo,
-            BinanceClient binanceClient
+    @Value("${bot.marketdata.interval:5m}")
+    private String interval;
 
+    public BotService(
+            BinanceClient binanceClient,
+            MarketDataCache marketDataCache,
+            MacdEngine macdEngine,
+            BotCycleExecutor cycleExecutor,
+            BotTradeService botTradeService,
+            ShardCoordinator shards,
+            ActiveBotRegistry registry,
+            OrderPipeline orderPipeline,
+            ExchangeInfoCache exchangeInfo,
+            OrderReconciler orderReconciler,
+            MeterRegistry meterRegistry
     ) {
-        this.botSettingsRepo = botSettingsRepo;
-        this.botStateRepo = botStateRepo;
-        this.botStateHistoryRepo = botStateHistoryRepo;
-        this.botTradeRepo = botTradeRepo;
-        this.userRepo = userRepo;
-        this.userCredentialsRepo = userCredentialsRepo;
         this.binanceClient = binanceClient;
+        this.marketDataCache = marketDataCache;
+        this.macdEngine = macdEngine;
+        this.cycleExecutor = cycleExecutor;
+        this.botTradeService = botTradeService;
+        this.shards = shards;
+        this.registry = registry;
+        this.orderPipeline = orderPipeline;
+        this.exchangeInfo = exchangeInfo;
+        this.orderReconciler = orderReconciler;
+        this.candleLatency = Timer.builder("bot.trigger.latency")
+                .tag("trigger", "candle_close")
+                .description("Tempo entre o fecho do candle e a decisao dos bots do par")
+                .register(meterRegistry);
+        this.tickLatency = Timer.builder("bot.trigger.latency")
+                .tag("trigger", "price_tick")
+                .description("Tempo entre o tick de preco e a verificacao de TP/SL")
+                .register(meterRegistry);
+        this.localRejections = Counter.builder("bot.orders.rejected.local")
+                .description("Ordens nao enviadas por violarem os filtros do par (exchangeInfo)")
+                .register(meterRegistry);
+        this.duplicateOrders = Counter.builder("bot.orders.duplicates")
+                .description("Ordens BUY nao enviadas por a mesma decisao (clientOrderId) ja ter sido enviada")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Fecho de um candle: avalia exatamente os bots ativos desse par. Corre no executor do
+     * ciclo (o evento chega na thread do stream, que não pode bloquear).
+     */
+    @EventListener
+    public void onCandleClosed(CandleClosedEvent event) {
+        if (!interval.equals(event.interval)) {
+            return;
+        }
+        cycleExecutor.submit("par " + event.symbol, () -> evaluateOnCandleClose(event));
     }
 
-    @Scheduled(fixedDelay = 30000)
-    @Transactional
-    public void runAllActiveBots() {
-        logger.info("-----------------------------------------------------");
-        logger.info("Inicio do ciclo do bot (30s) - Modo: {}", simulationMode ? "SIMULACAO" : "PRODUCAO");
+    /**
+     * Tick de preço entre fechos: só verifica TP/SL das trades abertas do par. Se a verificação
+     * anterior do mesmo par ainda estiver a correr, o tick é descartado.
+     */
+    @EventListener
+    public void onPriceTick(PriceTickEvent tick) {
+        if (!ticksInFlight.add(tick.symbol)) {
+            return;
+        }
+        cycleExecutor.submit("tick " + tick.symbol, () -> {
+            try {
+                checkExitsOnTick(tick);
+            } finally {
+                ticksInFlight.remove(tick.symbol);
+            }
+        });
+    }
 
-        List<BotState> activeStates = botStateRepo.findAllByIsActiveTrue();
-        if (activeStates.isEmpty()) {
-            logger.info("Nenhum bot ativo no momento.");
+    private void evaluateOnCandleClose(CandleClosedEvent event) {
+        String symbol = event.symbol;
+        // Settings, credenciais e trade em aberto dos bots do par, já em memória
+        List<ActiveBot> bots = ownedBots(registry.bySymbol(symbol));
+        if (bots.isEmpty()) {
+            return;
         }
 
-        for (BotState state : activeStates) {
-            User user = state.getUser();
-            Optional<BotSettings> maybeSettings = botSettingsRepo.findByUser(user);
-            if (maybeSettings.isEmpty()) {
-                logger.warn("User {} tem bot ativo mas sem configuracoes definidas.", user.getId());
+        List<BotAction> actions = evaluateSymbol(symbol, bots);
+        candleLatency.record(System.currentTimeMillis() - event.eventTime, TimeUnit.MILLISECONDS);
+
+        logger.info("[Modo: {}] Fecho de candle {} {}: {} bots avaliados, {} ordens. (cache candles {}/{} hits/misses)",
+                simulationMode ? "SIMULACAO" : "PRODUCAO", symbol, event.interval, bots.size(), actions.size(),
+                marketDataCache.getHits(), marketDataCache.getMisses());
+        dispatch(actions, event.openTime);
+    }
+
+    private void checkExitsOnTick(PriceTickEvent tick) {
+        List<ActiveBot> bots = ownedBots(registry.bySymbol(tick.symbol));
+        if (bots.isEmpty()) {
+            return;
+        }
+
+        BigDecimal price = BigDecimal.valueOf(tick.price);
+        List<BotAction> actions = new ArrayList<>();
+        for (ActiveBot bot : bots) {
+            // Trades com OCO na Binance saem do lado da exchange; pendentes esperam pelo reconciler
+            if (!bot.hasOpenTrade() || bot.hasPendingOrder() || bot.hasExchangeExit()) {
                 continue;
             }
-            BotSettings settings = maybeSettings.get();
-
             try {
-                executeBotCycle(user, state, settings);
-            } catch (ResponseStatusException e) {
-                logger.error("Erro ao processar bot do user {}: {} (HTTP {})",
-                        user.getId(), e.getReason(), e.getStatusCode().value());
-            } catch (Exception e) {
-                logger.error("Erro inesperado ao processar bot do user {}: {}",
-                        user.getId(), e.getMessage());
+                BotAction action = evaluateExit(bot, price);
+                if (action != null) {
+                    actions.add(action);
+                }
+            } catch (RuntimeException e) {
+                // Como em evaluateSymbol: um bot com dados inválidos não trava os restantes do par
+                logger.error("Erro ao verificar TP/SL do user {}: {}", bot.userId, e.getMessage());
             }
         }
+        tickLatency.record(System.currentTimeMillis() - tick.eventTime, TimeUnit.MILLISECONDS);
 
-        logger.info("Fim do ciclo do bot.");
-        logger.info("-----------------------------------------------------");
+        if (!actions.isEmpty()) {
+            logger.info("[{}] Tick {}: {} trades atingiram TP/SL.", tick.symbol, price, actions.size());
+            long intervalMs = KlineInterval.toMillis(interval);
+            dispatch(actions, tick.eventTime / intervalMs * intervalMs);
+        }
     }
 
-    private void executeBotCycle(User user, BotState state, BotSettings settings) {
-        String symbol = settings.getTradingPair();
-        String interval = "5m";
-        int limit = 50;
-
-        List<BigDecimal> closes;
-        BigDecimal lastPrice;
+    // Bots deste nó (com várias instâncias, cada uma só avalia os users dos seus shards)
+    private List<ActiveBot> ownedBots(List<ActiveBot> bots) {
+        List<ActiveBot> owned = new ArrayList<>(bots.size());
+        for (ActiveBot bot : bots) {
+            if (shards.owns(bot.userId)) {
+                owned.add(bot);
+            }
+        }
+        return owned;
+    }
 
-        logger.info("[Modo: {}] user: {} | Par: {}", simulationMode ? "SIMULACAO" : "PRODUCAO", user.getId(), symbol);
+    // Ordens simuladas correm como tarefas do ciclo; ordens reais vão para o OrderPipeline.
+    // Uma trade já a fechar não é fechada de novo e, no fim de cada ordem, o registo do user
+    // é recarregado (trade aberta/fechada). candleOpenTime identifica a decisão nos
+    // newClientOrderId (ClientOrderIds).
+    private void dispatch(List<BotAction> actions, long candleOpenTime) {
+        for (BotAction action : actions) {
+            if (!action.isBuy() && !closingTrades.add(action.bot.openTradeId)) {
+                continue;
+            }
+            ActiveBot bot = action.bot;
+            logger.info("[Modo: {}] user: {} | Par: {} | {}", simulationMode ? "SIMULACAO" : "PRODUCAO",
+                    bot.userId, bot.tradingPair, action.isBuy() ? "Compra aconselhada." : "Venda: " + action.reason);
+            Runnable done = () -> {
+                registry.refreshUser(bot.userId);
+                if (!action.isBuy()) {
+                    closingTrades.remove(bot.openTradeId);
+                }
+            };
+            if (simulationMode) {
+                cycleExecutor.submit("user " + bot.userId, () -> {
+                    try {
+                        executeSimulated(action);
+                    } finally {
+                        done.run();
+                    }
+                });
+            } else {
+                submitOrder(action, candleOpenTime, done);
+            }
+        }
+    }
 
-        // Sempre obter candles da API Binance pública
-        logger.info("A obter candles da API Binance...");
-        List<BinanceClient.Candle> candles = binanceClient.getKlines(symbol, interval, limit);
+    private List<BotAction> evaluateSymbol(String symbol, List<ActiveBot> bots) {
+        // Candles partilhados por todos os users do mesmo par (1 pedido por candle fechado)
+        CandleSeries.View candles = marketDataCache.getCandles(symbol, interval, CANDLE_LIMIT);
         if (candles.size() < 20) {
-            logger.warn("Dados insuficientes ({} candles) para {}, user {}.", candles.size(), symbol, user.getId());
-            return;
+            logger.warn("Dados insuficientes ({} candles) para {}; {} bots ignorados.", candles.size(), symbol, bots.size());
+            return List.of();
         }
-        closes = new ArrayList<>();
-        for (BinanceClient.Candle c : candles) {
-            closes.add(c.close);
+        MarketSnapshot snapshot = new MarketSnapshot(symbol, interval, candles, macdEngine);
+
+        List<BotAction> actions = new ArrayList<>();
+        for (ActiveBot bot : bots) {
+            if (!bot.hasCredentials()) {
+                logger.warn("user {} nao tem credenciais Binance associadas.", bot.userId);
+                continue;
+            }
+            if (bot.hasExchangeExit() || bot.hasPendingOrder()) {
+                continue;
+            }
+            try {
+                BotAction action = bot.hasOpenTrade()
+                        ? evaluateOpenTrade(bot, snapshot)
+                        : evaluateEntry(bot, snapshot);
+                if (action != null) {
+                    actions.add(action);
+                }
+            } catch (RuntimeException e) {
+                // Settings inválidas de um user não podem travar a avaliação dos restantes do par
+                logger.error("Erro ao avaliar bot do user {}: {}", bot.userId, e.getMessage());
+            }
         }
-        lastPrice = closes.get(closes.size() - 1);
 
-        // Calcular indicadores
-        int rsiPeriod = settings.getRsiThreshold() != null ? settings.getRsiThreshold() : 14;
-        BigDecimal rsi = calculateRSI(closes, rsiPeriod);
-        MACDResult macdResult = calculateMACD(closes, 12, 26, 9);
-        BollingerResult bb = calculateBollingerBands(closes, 20, 2.0);
+        logger.info("[{}] preco={} MACD.hist={} BB.lower={} | {} bots avaliados, {} com ordem a executar.",
+                symbol, snapshot.lastPrice, snapshot.macd.histogram, snapshot.bollinger.lowerBand,
+                bots.size(), actions.size());
+        return actions;
+    }
 
-        // Credenciais
-        Optional<UserCredentials> credOpt = userCredentialsRepo.findByUser(user);
-        if (credOpt.isEmpty()) {
-            logger.warn("user {} nao tem credenciais Binance associadas.", user.getId());
-            return;
+    // Sinais de compra de um user sem trade aberta; null se a compra for desaconselhada
+    private BotAction evaluateEntry(ActiveBot bot, MarketSnapshot snapshot) {
+        boolean anyCheck = false;
+
+        if (bot.rsiEnabled) {
+            double rsi = snapshot.rsi(bot.rsiPeriod());
+            if (!(rsi < bot.rsiThreshold)) {
+                return null;
+            }
+            anyCheck = true;
         }
-        UserCredentials creds = credOpt.get();
 
-        // Quantidade a comprar = spendAmount / lastPrice
-        BigDecimal spendAmount = settings.getTradeAmount();
-        int assetScale    = 8;
-        BigDecimal quantity = spendAmount.divide(lastPrice, assetScale, RoundingMode.DOWN);
-        logger.info("Usuário quer gastar {} USDT → quantidade = {}", spendAmount, quantity);
-
-        Optional<BotTrade> maybeOpenTrade = botTradeRepo.findOpenTradeByUserAndSymbol(user.getId(), symbol);
-        if (maybeOpenTrade.isPresent()) {
-            logger.info("Trade em aberto detectado.");
-            processOpenTrade(maybeOpenTrade.get(), settings, lastPrice, rsi, macdResult, bb,
-                    creds.getEncryptedApiKey(), creds.getEncryptedSecretKey());
-        } else {
-            logger.info("Sem trade ativo.");
-            logger.info("Sinais de compra:");
-            List<Boolean> buyChecks = new ArrayList<>();
-
-            if (settings.isRsiEnabled()) {
-                boolean signal = rsi.compareTo(BigDecimal.valueOf(settings.getRsiThreshold())) < 0;
-                logger.info("- [RSI ativo] RSI ({}) < {}? {}", rsi.setScale(2, RoundingMode.HALF_UP), settings.getRsiThreshold(), signal);
-                buyChecks.add(signal);
+        if (bot.macdEnabled) {
+            if (!(snapshot.macd.histogram > 0)) {
+                return null;
             }
+            anyCheck = true;
+        }
 
-            if (settings.isMacdEnabled()) {
-                boolean signal = macdResult.histogram.compareTo(BigDecimal.ZERO) > 0;
-                logger.info("- [MACD ativo] MACD.hist > 0? {}", signal);
-                buyChecks.add(signal);
+        if (bot.movingAvgEnabled) {
+            if (snapshot.lastPrice.compareTo(snapshot.bollingerLower) >= 0) {
+                return null;
             }
+            anyCheck = true;
+        }
+
+        if (!anyCheck) {
+            return null;
+        }
+        // Quantidade a comprar = spendAmount / lastPrice
+        BigDecimal quantity = bot.tradeAmount.divide(snapshot.lastPrice, 8, RoundingMode.DOWN);
+        return BotAction.buy(bot, snapshot.lastPrice, quantity);
+    }
+
+    // TP/SL e sinais de venda de um user com trade aberta; null se a venda for desaconselhada
+    private BotAction evaluateOpenTrade(ActiveBot bot, MarketSnapshot snapshot) {
+        BigDecimal lastPrice = snapshot.lastPrice;
+        BotAction exit = evaluateExit(bot, lastPrice);
+        if (exit != null) {
+            return exit;
+        }
+
+        boolean shouldSell = false;
+        if (bot.rsiEnabled && snapshot.rsi(bot.rsiPeriod()) > 70) shouldSell = true;
+        if (bot.macdEnabled && snapshot.macd.histogram < 0) shouldSell = true;
+
+        return shouldSell ? BotAction.close(bot, lastPrice, "INDICATOR_SELL") : null;
+    }
+
+    // Take profit / stop loss da trade aberta ao preço dado; null se nenhum foi atingido.
+    // Um TP ou SL sem percentagem definida (settings opcionais) não é verificado
+    private BotAction evaluateExit(ActiveBot bot, BigDecimal lastPrice) {
+        BigDecimal entryPrice = bot.openTradePrice;
+        if (entryPrice == null) {
+            return null;
+        }
 
-            if (settings.isMovingAvgEnabled()) {
-                boolean signal = lastPrice.compareTo(bb.lowerBand) < 0;
-                logger.info("- [Bollinger ativo] preco < BB.lower? {}", signal);
-                buyChecks.add(signal);
+        if (bot.takeProfitPerc != null) {
+            BigDecimal takeProfitPrice = entryPrice.add(entryPrice.multiply(bot.takeProfitPerc.divide(BigDecimal.valueOf(100))));
+            if (lastPrice.compareTo(takeProfitPrice) >= 0) {
+                return BotAction.close(bot, lastPrice, "TAKE_PROFIT");
+            }
+        }
+        if (bot.stopLossPerc != null) {
+            BigDecimal stopLossPrice = entryPrice.subtract(entryPrice.multiply(bot.stopLossPerc.divide(BigDecimal.valueOf(100))));
+            if (lastPrice.compareTo(stopLossPrice) <= 0) {
+                return BotAction.close(bot, lastPrice, "STOP_LOSS");
             }
+        }
+        return null;
+    }
 
-            boolean shouldBuy = !buyChecks.isEmpty() && buyChecks.stream().allMatch(Boolean::booleanValue);
-            if (shouldBuy) {
-                logger.info("Compra aconselhada.");
-                if (simulationMode) {
-                    openSimulatedTrade(user, symbol, quantity, lastPrice);
-                } else {
-                    placeOrderAccordingToType(
-                            user, settings, lastPrice,
-                            creds.getEncryptedApiKey(), creds.getEncryptedSecretKey(),
-                            quantity
-                    );
-                }
+    private void executeSimulated(BotAction action) {
+        ActiveBot bot = action.bot;
+        try {
+            if (action.isBuy()) {
+                openSimulatedTrade(bot.userId, bot.tradingPair, action.quantity, action.price);
             } else {
-                logger.info("Compra desaconselhada.");
+                closeSimulatedTrade(bot.openTradeId, action.price, action.reason);
             }
+        } catch (ResponseStatusException e) {
+            logger.error("Erro ao processar bot do user {}: {} (HTTP {})",
+                    bot.userId, e.getReason(), e.getStatusCode().value());
+        }
+    }
+
+    // Envia a ordem sem bloquear; o registo da trade é feito quando a Binance responder
+    private void submitOrder(BotAction action, long candleOpenTime, Runnable done) {
+        ActiveBot bot = action.bot;
+        String label = "user " + bot.userId;
+        String clientOrderId = ClientOrderIds.of(bot.userId, bot.tradingPair, candleOpenTime, action.isBuy() ? "BUY" : "SELL");
+        if (action.isBuy()) {
+            orderPipeline.submit(label, buyOrder(bot, action.quantity, action.price, clientOrderId),
+                    response -> onBuyAccepted(clientOrderId, response), done);
+        } else {
+            orderPipeline.submit(label, sellOrder(bot, action.price, action.reason, clientOrderId),
+                    response -> onSellAccepted(clientOrderId, action.price, response), done);
         }
     }
 
     private void openSimulatedTrade(
-            User user,
+            UUID userId,
             String symbol,
             BigDecimal amount,
             BigDecimal entryPrice
     ) {
         logger.info("[SIMULACAO] A abrir nova trade de COMPRA simulada:");
-        logger.info("- Utilizador ID: {}", user.getId());
+        logger.info("- Utilizador ID: {}", userId);
         logger.info("- Simbolo: {}", symbol);
         logger.info("- Quantidade: {}", amount.setScale(6, RoundingMode.HALF_UP));
         logger.info("- Preco de entrada: {}", entryPrice.setScale(4, RoundingMode.HALF_UP));
 
-        BotTrade simulated = new BotTrade();
-        simulated.setUser(user);
-        simulated.setSymbol(symbol);
-        simulated.setSide("buy");
-        simulated.setAmount(amount);
-        simulated.setPrice(entryPrice);
-        simulated.setStatus("OPEN");
-        simulated.setExecutedAt(OffsetDateTime.now());
-        botTradeRepo.save(simulated);
-
-        BigDecimal cost = entryPrice.multiply(amount);
-        BigDecimal newBalance = user.getBalance().subtract(cost);
-        user.setBalance(newBalance);
-        userRepo.save(user);
-
-        logger.info("[SIMULACAO] Custo total: {}", cost.setScale(2, RoundingMode.HALF_UP));
-        logger.info("[SIMULACAO] Novo saldo do utilizador: {}", newBalance.setScale(2, RoundingMode.HALF_UP));
-
-    }
-
-    private void processOpenTrade(
-            BotTrade openTrade,
-            BotSettings settings,
-            BigDecimal lastPrice,
-            BigDecimal currentRSI,
-            MACDResult macd,
-            BollingerResult bollinger,
-            String encApiKey,
-            String encSecretKey
-    ) {
-        String symbol = openTrade.getSymbol();
-        BigDecimal entryPrice = openTrade.getPrice();
-        BigDecimal takeProfitPrice = entryPrice.add(entryPrice.multiply(settings.getTakeProfitPerc().divide(BigDecimal.valueOf(100))));
-        BigDecimal stopLossPrice = entryPrice.subtract(entryPrice.multiply(settings.getStopLossPerc().divide(BigDecimal.valueOf(100))));
-
-        if (lastPrice.compareTo(takeProfitPrice) >= 0) {
-            if (simulationMode) closeSimulatedTrade(openTrade, lastPrice, "TAKE_PROFIT");
-            else closeTrade(openTrade, lastPrice, "TAKE_PROFIT", encApiKey, encSecretKey);
-            return;
-        }
-
-        if (lastPrice.compareTo(stopLossPrice) <= 0) {
-            if (simulationMode) closeSimulatedTrade(openTrade, lastPrice, "STOP_LOSS");
-            else closeTrade(openTrade, lastPrice, "STOP_LOSS", encApiKey, encSecretKey);
-            return;
-        }
-
-        boolean shouldSell = false;
-        if (settings.isRsiEnabled() && currentRSI.compareTo(BigDecimal.valueOf(70)) > 0) shouldSell = true;
-        if (settings.isMacdEnabled() && macd.histogram.compareTo(BigDecimal.ZERO) < 0) shouldSell = true;
-
-        if (shouldSell) {
-            if (simulationMode) closeSimulatedTrade(openTrade, lastPrice, "INDICATOR_SELL");
-            else closeTrade(openTrade, lastPrice, "INDICATOR_SELL", encApiKey, encSecretKey);
-        } else {
-            logger.info("Venda desaconselhada.");
-        }
+        botTradeService.openSimulatedTrade(userId, symbol, amount, entryPrice);
     }
 
     private void closeSimulatedTrade(
-            BotTrade openTrade,
+            UUID tradeId,
             BigDecimal exitPrice,
             String reason
     ) {
-        BigDecimal entryPrice = openTrade.getPrice();
-        BigDecimal amount = openTrade.getAmount();
-        User user = openTrade.getUser();
-        BigDecimal profit = exitPrice.subtract(entryPrice).multiply(amount);
-        OffsetDateTime now = OffsetDateTime.now();
-
-        openTrade.setExecutedAt(now);
-        openTrade.setStatus("CLOSED");
-        openTrade.setCloseReason(reason);
-        openTrade.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
-        botTradeRepo.save(openTrade);
-
-        BotTrade sellRecord = new BotTrade();
-        sellRecord.setUser(user);
-        sellRecord.setSymbol(openTrade.getSymbol());
-        sellRecord.setSide("sell");
-        sellRecord.setAmount(amount);
-        sellRecord.setPrice(exitPrice);
-        sellRecord.setStatus("CLOSED");
-        sellRecord.setExecutedAt(now);
-        sellRecord.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
-        botTradeRepo.save(sellRecord);
-
-        BigDecimal saleValue = exitPrice.multiply(amount);
-        BigDecimal newBalance = user.getBalance().add(saleValue);
-        user.setBalance(newBalance);
-        userRepo.save(user);
-
+        botTradeService.closeTrade(tradeId, exitPrice, reason);
     }
 
-    private void closeTrade(
-            BotTrade openTrade,
-            BigDecimal exitPrice,
-            String reason,
-            String encApiKey,
-            String encSecretKey
-    ) {
-        BigDecimal amount = openTrade.getAmount();
-        User user = openTrade.getUser();
-        try {
-            BinanceClient.BinanceOrderResponse response = binanceClient.placeOrder(
-                    encApiKey, encSecretKey,
-                    openTrade.getSymbol(),
-                    "SELL", "MARKET",
-                    amount, null, null
-            );
-            exitPrice = response.price;
-        } catch (Exception e) {
-            logger.error("Erro ao fechar trade: {}", e.getMessage());
-            return;
+    // A ordem SELL é enviada sem transação aberta; só o registo do fecho é transacional.
+    // Vazia se a trade já não estiver aberta (a mesma venda já foi enviada)
+    private Mono<BinanceClient.BinanceOrderResponse> sellOrder(ActiveBot bot, BigDecimal lastPrice, String reason,
+                                                                String clientOrderId) {
+        BigDecimal quantity = bot.openTradeAmount;
+        SymbolFilters filters = exchangeInfo.filters(bot.tradingPair);
+        if (filters != null) {
+            quantity = filters.roundQuantity(quantity, true);
+            String violation = filters.violation(quantity, null, lastPrice, true);
+            if (violation != null) {
+                return rejectLocally(bot, "SELL", violation);
+            }
         }
 
-        BigDecimal entryPrice = openTrade.getPrice();
-        BigDecimal profit = exitPrice.subtract(entryPrice).multiply(amount);
-        OffsetDateTime now = OffsetDateTime.now();
-
-        openTrade.setExecutedAt(now);
-        openTrade.setStatus("CLOSED");
-        openTrade.setCloseReason(reason);
-        openTrade.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
-        botTradeRepo.save(openTrade);
-
-        BotTrade sellRecord = new BotTrade();
-        sellRecord.setUser(user);
-        sellRecord.setSymbol(openTrade.getSymbol());
-        sellRecord.setSide("sell");
-        sellRecord.setAmount(amount);
-        sellRecord.setPrice(exitPrice);
-        sellRecord.setStatus("CLOSED");
-        sellRecord.setExecutedAt(now);
-        sellRecord.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
-        botTradeRepo.save(sellRecord);
-
-        BigDecimal saleValue = exitPrice.multiply(amount);
-        BigDecimal newBalance = user.getBalance().add(saleValue);
-        user.setBalance(newBalance);
-        userRepo.save(user);
-
+        // Trade CLOSING antes do envio: um timeout não leva a uma segunda venda no tick seguinte
+        if (!botTradeService.startClosing(bot.openTradeId, clientOrderId, reason)) {
+            duplicateOrders.increment();
+            logger.warn("Ordem SELL {} do user {} ja enviada ou trade ja fechada ({}); ignorada.",
+                    bot.tradingPair, bot.userId, clientOrderId);
+            return Mono.empty();
+        }
+        return binanceClient.placeOrderAsync(
+                bot.encryptedApiKey, bot.encryptedSecretKey,
+                bot.tradingPair,
+                "SELL", "MARKET",
+                quantity, null, null,
+                clientOrderId
+        );
     }
 
-    private void placeOrderAccordingToType(
-            User user,
-            BotSettings settings,
+    // Ordem BUY de acordo com o tipo configurado; vazia se faltarem parâmetros do tipo ou se
+    // a mesma decisão (clientOrderId) já tiver sido enviada
+    private Mono<BinanceClient.BinanceOrderResponse> buyOrder(
+            ActiveBot bot,
+            BigDecimal quantity,
             BigDecimal lastPrice,
-            String encApiKey,
-            String encSecretKey,
-            BigDecimal quantity
+            String clientOrderId
     ) {
-        String symbol = settings.getTradingPair();
-        String orderType = settings.getOrderType();
-        BigDecimal limitPrice = settings.getLimitPrice();
-        BigDecimal stopPrice = settings.getStopPrice();
-        BigDecimal trailingDelta = settings.getTrailingDelta();
+        String symbol = bot.tradingPair;
+        String orderType = bot.orderType;
+        BigDecimal limitPrice = bot.limitPrice;
+        BigDecimal stopPrice = bot.stopPrice;
+        BigDecimal trailingDelta = bot.trailingDelta;
 
         String binanceType;
         switch (orderType.toUpperCase(Locale.ROOT)) {
@@ -359,24 +442,46 @@ public class BotService {
         BigDecimal stopPriceParam = null;
         if (binanceType.equals("LIMIT") || binanceType.equals("LIMIT_MAKER")) {
             if (limitPrice == null) {
-                logger.error("Limite de preco ausente para ordem LIMIT."); return;
+                logger.error("Limite de preco ausente para ordem LIMIT."); return Mono.empty();
             }
             priceParam = limitPrice;
         }
         if (binanceType.equals("STOP_LOSS_LIMIT")) {
             if (stopPrice == null || limitPrice == null) {
-                logger.error("Faltam valores para ordem STOP-LIMIT."); return;
+                logger.error("Faltam valores para ordem STOP-LIMIT."); return Mono.empty();
             }
             priceParam = limitPrice;
             stopPriceParam = stopPrice;
         }
         if (binanceType.equals("TRAILING_STOP_MARKET")) {
             if (trailingDelta  == null) {
-                logger.error("TrailingDelta nao definido para TRAILING STOP."); return;
+                logger.error("TrailingDelta nao definido para TRAILING STOP."); return Mono.empty();
             }
             stopPriceParam = trailingDelta;
         }
 
+        // Arredonda ao stepSize/tickSize do par e valida os filtros antes de assinar
+        SymbolFilters filters = exchangeInfo.filters(symbol);
+        if (filters != null) {
+            boolean market = binanceType.equals("MARKET") || binanceType.equals("TRAILING_STOP_MARKET");
+            quantity = filters.roundQuantity(quantity, market);
+            priceParam = filters.roundPrice(priceParam);
+            if (binanceType.equals("STOP_LOSS_LIMIT")) {
+                stopPriceParam = filters.roundPrice(stopPriceParam);
+            }
+            String violation = filters.violation(quantity, priceParam, lastPrice, market);
+            if (violation != null) {
+                return rejectLocally(bot, "BUY", violation);
+            }
+        }
+
+        // Trade PENDING antes do envio: um timeout não deixa o user sem trade (e a comprar de novo)
+        if (botTradeService.openPendingTrade(bot.userId, symbol, quantity, lastPrice, clientOrderId) == null) {
+            duplicateOrders.increment();
+            logger.warn("Ordem BUY {} do user {} ja enviada ({}); ignorada.", symbol, bot.userId, clientOrderId);
+            return Mono.empty();
+        }
+
         logger.info("Enviando ordem BUY: tipo={} qty={} priceParam={} stopPriceParam={}",
                 binanceType,
                 quantity.setScale(8, RoundingMode.DOWN),
@@ -384,155 +489,72 @@ public class BotService {
                 stopPriceParam != null ? stopPriceParam.setScale(4,RoundingMode.HALF_UP) : "-"
         );
 
-        try {
-            BinanceClient.BinanceOrderResponse response = binanceClient.placeOrder(
-                    encApiKey, encSecretKey,
-                    symbol,
-                    "BUY",
-                    binanceType,
-                    quantity,
-                    priceParam,
-                    stopPriceParam
-            );
-            BigDecimal execPrice = response.price;
-            logger.info("Ordem BUY executada: preco={} orderId={}", execPrice.setScale(4,RoundingMode.HALF_UP), response.orderId);
-
-            BotTrade newTrade = new BotTrade();
-            newTrade.setUser(user);
-            newTrade.setSymbol(symbol);
-            newTrade.setSide("buy");
-            newTrade.setAmount(quantity);
-            newTrade.setPrice(execPrice);
-            newTrade.setStatus("OPEN");
-            botTradeRepo.save(newTrade);
-
-            logger.info("Novo trade aberto: ID={} Entrada={} Quantidade={} ",
-                    newTrade.getId(),
-                    execPrice.setScale(4,RoundingMode.HALF_UP),
-                    quantity.setScale(6,RoundingMode.HALF_UP)
-            );
-
-        } catch (Exception e) {
-            logger.error("Erro ao executar ordem BUY: {}", e.getMessage());
-        }
-    }
-
-    // Métodos de cálculo de indicadores permanecem idênticos à implementação original
-    // RSI
-    private BigDecimal calculateRSI(List<BigDecimal> closes, int period) {
-        int n = closes.size();
-        if (n <= period) {
-            return BigDecimal.ZERO;
-        }
-        BigDecimal gainSum = BigDecimal.ZERO;
-        BigDecimal lossSum = BigDecimal.ZERO;
-        for (int i = n - period; i < n; i++) {
-            BigDecimal change = closes.get(i).subtract(closes.get(i - 1));
-            if (change.compareTo(BigDecimal.ZERO) > 0) {
-                gainSum = gainSum.add(change);
-            } else {
-                lossSum = lossSum.add(change.abs());
-            }
-        }
-        BigDecimal avgGain = gainSum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
-        BigDecimal avgLoss = lossSum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
-        if (avgLoss.compareTo(BigDecimal.ZERO) == 0) {
-            return BigDecimal.valueOf(100);
-        }
-        BigDecimal rs = avgGain.divide(avgLoss, 8, RoundingMode.HALF_UP);
-        return BigDecimal.valueOf(100)
-                .subtract(BigDecimal.valueOf(100).divide(BigDecimal.ONE.add(rs), 8, RoundingMode.HALF_UP));
+        return binanceClient.placeOrderAsync(
+                bot.encryptedApiKey, bot.encryptedSecretKey,
+                symbol,
+                "BUY",
+                binanceType,
+                quantity,
+                priceParam,
+                stopPriceParam,
+                clientOrderId
+        );
     }
 
-    // EMA (usado no MACD)
-    private BigDecimal calculateEMA(List<BigDecimal> closes, int period) {
-        int n = closes.size();
-        if (n < period) {
-            return closes.get(n - 1);
-        }
-        BigDecimal sum = BigDecimal.ZERO;
-        for (int i = 0; i < period; i++) {
-            sum = sum.add(closes.get(i));
-        }
-        BigDecimal sma = sum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
-        BigDecimal ema = sma;
-        BigDecimal k = BigDecimal.valueOf(2).divide(BigDecimal.valueOf(period + 1), 8, RoundingMode.HALF_UP);
-        for (int i = period; i < n; i++) {
-            ema = closes.get(i).multiply(k).add(ema.multiply(BigDecimal.ONE.subtract(k)));
-        }
-        return ema;
+    private Mono<BinanceClient.BinanceOrderResponse> rejectLocally(ActiveBot bot, String side, String violation) {
+        localRejections.increment();
+        logger.error("Ordem {} {} do user {} nao enviada: {}", side, bot.tradingPair, bot.userId, violation);
+        return Mono.empty();
     }
 
-    // MACD
-    private MACDResult calculateMACD(List<BigDecimal> closes, int fastPeriod, int slowPeriod, int signalPeriod) {
-        BigDecimal macdLine = calculateEMA(closes, fastPeriod).subtract(calculateEMA(closes, slowPeriod));
-        List<BigDecimal> diffList = new ArrayList<>();
-        for (int i = 0; i < closes.size(); i++) {
-            List<BigDecimal> sub = closes.subList(0, i + 1);
-            diffList.add(calculateEMA(sub, fastPeriod).subtract(calculateEMA(sub, slowPeriod)));
-        }
-        int sz = diffList.size();
-        BigDecimal signalLine = calculateEMA(diffList.subList(sz - signalPeriod, sz), signalPeriod);
-        BigDecimal histogram = macdLine.subtract(signalLine);
-        return new MACDResult(macdLine, signalLine, histogram);
+    // Resposta ao envio da BUY: as MARKET vêm executadas; LIMIT, STOP-LIMIT e LIMIT_MAKER ficam
+    // normalmente NEW e a trade continua PENDING até o OrderReconciler ver a execução
+    private void onBuyAccepted(String clientOrderId, BinanceClient.BinanceOrderResponse response) {
+        logger.info("Ordem BUY {} aceite: estado={} orderId={} executado={}",
+                clientOrderId, response.status, response.orderId, response.executedQty);
+        orderReconciler.apply(clientOrderId, response);
     }
 
-    // Bollinger Bands
-    private BollingerResult calculateBollingerBands(List<BigDecimal> closes, int period, double multiplier) {
-        int n = closes.size();
-        if (n < period) {
-            return new BollingerResult(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
-        }
-        BigDecimal sum = BigDecimal.ZERO;
-        for (int i = n - period; i < n; i++) {
-            sum = sum.add(closes.get(i));
-        }
-        BigDecimal sma = sum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
-        BigDecimal variance = BigDecimal.ZERO;
-        for (int i = n - period; i < n; i++) {
-            BigDecimal diff = closes.get(i).subtract(sma);
-            variance = variance.add(diff.multiply(diff));
-        }
-        variance = variance.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
-        BigDecimal stdDev = sqrt(variance, 8);
-        BigDecimal upper = sma.add(stdDev.multiply(BigDecimal.valueOf(multiplier)));
-        BigDecimal lower = sma.subtract(stdDev.multiply(BigDecimal.valueOf(multiplier)));
-        return new BollingerResult(sma, upper, lower);
+    // Resposta ao envio da SELL (MARKET): fecha a trade ao preço médio da venda; o preço do
+    // tick/candle só é usado se a Binance não devolver a execução
+    private void onSellAccepted(String clientOrderId, BigDecimal lastPrice, BinanceClient.BinanceOrderResponse response) {
+        logger.info("Ordem SELL {} aceite: estado={} orderId={} executado={}",
+                clientOrderId, response.status, response.orderId, response.executedQty);
+        if (response.side == null) {
+            response.side = "SELL";
+        }
+        if (response.averagePrice() == null) {
+            response.price = lastPrice;
+        }
+        orderReconciler.apply(clientOrderId, response);
     }
 
-    // Método auxiliar de raiz quadrada
-    private BigDecimal sqrt(BigDecimal value, int scale) {
-        BigDecimal x0 = BigDecimal.ZERO;
-        BigDecimal x1 = new BigDecimal(Math.sqrt(value.doubleValue()));
-        while (!x0.equals(x1)) {
-            x0 = x1;
-            x1 = value.divide(x0, scale, RoundingMode.HALF_UP)
-                    .add(x0)
-                    .divide(BigDecimal.valueOf(2), scale, RoundingMode.HALF_UP);
-        }
-        return x1;
-    }
+    /** Compra ou venda decidida na avaliação de um user, executada depois fora do loop de avaliação. */
+    private static final class BotAction {
+        final ActiveBot bot;
+        final boolean buy;
+        final BigDecimal price;
+        final BigDecimal quantity;
+        final String reason;       // motivo do fecho (TAKE_PROFIT, STOP_LOSS, INDICATOR_SELL)
+
+        private BotAction(ActiveBot bot, boolean buy, BigDecimal price, BigDecimal quantity, String reason) {
+            this.bot = bot;
+            this.buy = buy;
+            this.price = price;
+            this.quantity = quantity;
+            this.reason = reason;
+        }
 
+        static BotAction buy(ActiveBot bot, BigDecimal price, BigDecimal quantity) {
+            return new BotAction(bot, true, price, quantity, null);
+        }
 
-    private static class MACDResult {
-        public final BigDecimal macdLine;
-        public final BigDecimal signalLine;
-        public final BigDecimal histogram;
-        public MACDResult(BigDecimal macdLine, BigDecimal signalLine, BigDecimal histogram) {
-            this.macdLine = macdLine;
-            this.signalLine = signalLine;
-            this.histogram = histogram;
+        static BotAction close(ActiveBot bot, BigDecimal price, String reason) {
+            return new BotAction(bot, false, price, bot.openTradeAmount, reason);
         }
-    }
 
-    private static class BollingerResult {
-        public final BigDecimal middleBand;
-        public final BigDecimal upperBand;
-        public final BigDecimal lowerBand;
-        public BollingerResult(BigDecimal middle, BigDecimal upper, BigDecimal lower) {
-            this.middleBand = middle;
-            this.upperBand = upper;
-            this.lowerBand = lower;
+        boolean isBuy() {
+            return buy;
         }
     }
 }
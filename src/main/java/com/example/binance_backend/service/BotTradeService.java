@@ -0,0 +1,288 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.User;
+import com.example.binance_backend.repository.BotTradeRepository;
+import com.example.binance_backend.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * BotTradeService: escritas de trades e saldos do bot, cada uma na sua transação curta.
+ *
+ * O BotService obtém candles, calcula indicadores e fala com a Binance sem nenhuma transação
+ * aberta; só quando há uma compra ou venda a registar chama um destes métodos, que recarregam
+ * as entidades pelo id e fazem commit logo a seguir.
+ */
+@Service
+public class BotTradeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BotTradeService.class);
+
+    private final BotTradeRepository botTradeRepo;
+    private final UserRepository userRepo;
+
+    public BotTradeService(BotTradeRepository botTradeRepo, UserRepository userRepo) {
+        this.botTradeRepo = botTradeRepo;
+        this.userRepo = userRepo;
+    }
+
+    /** Abre uma trade de compra simulada e desconta o custo ao saldo do user. */
+    @Transactional
+    public BotTrade openSimulatedTrade(UUID userId, String symbol, BigDecimal amount, BigDecimal entryPrice) {
+        User user = userRepo.findById(userId)
+                .orElseThrow(() -> new IllegalStateException("User nao encontrado: " + userId));
+
+        BotTrade simulated = new BotTrade();
+        simulated.setUser(user);
+        simulated.setSymbol(symbol);
+        simulated.setSide("buy");
+        simulated.setAmount(amount);
+        simulated.setPrice(entryPrice);
+        simulated.setStatus("OPEN");
+        simulated.setExecutedAt(OffsetDateTime.now());
+        botTradeRepo.save(simulated);
+
+        BigDecimal cost = entryPrice.multiply(amount);
+        BigDecimal newBalance = user.getBalance().subtract(cost);
+        user.setBalance(newBalance);
+
+        logger.info("[SIMULACAO] Custo total: {}", cost.setScale(2, RoundingMode.HALF_UP));
+        logger.info("[SIMULACAO] Novo saldo do utilizador: {}", newBalance.setScale(2, RoundingMode.HALF_UP));
+        return simulated;
+    }
+
+    /**
+     * Regista uma ordem BUY real antes de a enviar: a trade fica PENDING (o bot não volta a
+     * comprar no par) até a execução ser confirmada pela resposta ou pelo OrderReconciler.
+     *
+     * O duplicado é detetado pela restrição única de {@code client_order_id} e não por uma
+     * consulta prévia: de dois envios concorrentes da mesma decisão só um insere a linha. Sem
+     * {@code @Transactional}: o INSERT corre na transação do repositório, para que a violação
+     * não deixe uma transação exterior marcada para rollback.
+     *
+     * @return a trade pendente, ou null se já existir uma trade com este clientOrderId (a mesma
+     *         decisão já foi enviada)
+     */
+    public BotTrade openPendingTrade(UUID userId, String symbol, BigDecimal amount, BigDecimal expectedPrice,
+                                     String clientOrderId) {
+        BotTrade pending = new BotTrade();
+        pending.setUser(userRepo.getReferenceById(userId));
+        pending.setSymbol(symbol);
+        pending.setSide("buy");
+        pending.setAmount(amount);
+        pending.setPrice(expectedPrice);
+        pending.setStatus("PENDING");
+        pending.setClientOrderId(clientOrderId);
+        try {
+            return botTradeRepo.saveAndFlush(pending);
+        } catch (DataIntegrityViolationException e) {
+            logger.info("Ordem {} ja registada; envio duplicado ignorado.", clientOrderId);
+            return null;
+        }
+    }
+
+    /**
+     * Confirma a execução da ordem BUY: a trade pendente passa a OPEN com a quantidade e o
+     * preço médio executados (null mantém os valores pedidos).
+     *
+     * A passagem PENDING → OPEN é um UPDATE condicional: se a resposta ao envio e o
+     * executionReport chegarem ao mesmo tempo, só um deles abre a trade (e coloca o OCO).
+     *
+     * @return a trade aberta, ou null se não houver trade pendente com este clientOrderId
+     */
+    @Transactional
+    public BotTrade confirmTrade(String clientOrderId, String orderId, BigDecimal amount, BigDecimal execPrice) {
+        if (botTradeRepo.updateStatusByClientOrderId(clientOrderId, "PENDING", "OPEN") == 0) {
+            botTradeRepo.findByClientOrderId(clientOrderId)
+                    .filter(t -> "FAILED".equals(t.getStatus()))
+                    .ifPresent(t -> logger.error("Ordem {} executada mas a trade {} ja estava dada como falhada; "
+                            + "posicao na Binance sem trade aberta.", clientOrderId, t.getId()));
+            return null;
+        }
+        // A linha fica bloqueada pelo UPDATE até ao commit
+        BotTrade trade = botTradeRepo.findByClientOrderId(clientOrderId).orElseThrow();
+        if (amount != null) {
+            trade.setAmount(amount);
+        }
+        if (execPrice != null) {
+            trade.setPrice(execPrice);
+        }
+        trade.setOrderId(orderId);
+        trade.setOrderStatus("FILLED");
+        return trade;
+    }
+
+    /**
+     * Regista o estado de uma ordem BUY ainda a trabalhar na Binance (NEW, PARTIALLY_FILLED):
+     * a trade continua PENDING até a ordem terminar.
+     *
+     * @return false se a trade já não estava pendente ou o estado não mudou
+     */
+    @Transactional
+    public boolean recordOrderStatus(String clientOrderId, String orderId, String orderStatus) {
+        return botTradeRepo.updatePendingOrderStatus(clientOrderId, orderId, orderStatus, OffsetDateTime.now()) > 0;
+    }
+
+    /**
+     * A ordem BUY não chegou a executar: a trade pendente passa a FAILED e o bot pode voltar a
+     * comprar. {@code orderStatus} é o estado final na Binance (null se a ordem não existir).
+     */
+    @Transactional
+    public boolean failPendingTrade(String clientOrderId, String orderStatus) {
+        if (botTradeRepo.updateStatusByClientOrderId(clientOrderId, "PENDING", "FAILED") == 0) {
+            return false;
+        }
+        botTradeRepo.findByClientOrderId(clientOrderId).ifPresent(t -> t.setOrderStatus(orderStatus));
+        return true;
+    }
+
+    /**
+     * Associa à trade o OCO de saída (TP/SL) colocado na Binance, ou desassocia-o (null) se
+     * o OCO deixou de existir sem executar, para a saída voltar a ser vigiada pelo bot.
+     *
+     * @return false se a trade já não estava aberta
+     */
+    @Transactional
+    public boolean setExitOrders(UUID tradeId, Long orderListId) {
+        return botTradeRepo.updateOpenTradeExitOrders(tradeId, orderListId, OffsetDateTime.now()) > 0;
+    }
+
+    /**
+     * Marca a trade como protegida pela Binance antes de enviar o OCO de saída: a partir daqui
+     * o bot e o PositionMonitor já não enviam uma SELL para a mesma posição.
+     *
+     * @return false se a trade já não estava aberta sem OCO (ex: venda já enviada)
+     */
+    @Transactional
+    public boolean startProtecting(UUID tradeId) {
+        return botTradeRepo.markProtecting(tradeId, OffsetDateTime.now()) > 0;
+    }
+
+    /**
+     * Termina o envio do OCO: associa-o à trade, ou (null) devolve a saída ao bot se a Binance
+     * o rejeitou ou se se confirmou que não existe.
+     *
+     * @return false se a trade já não estava PROTECTING
+     */
+    @Transactional
+    public boolean finishProtecting(UUID tradeId, Long orderListId) {
+        return botTradeRepo.finishProtecting(tradeId, orderListId, OffsetDateTime.now()) > 0;
+    }
+
+    /**
+     * Fecha a trade ao preço de saída (simulado ou da ordem SELL já executada): marca-a como
+     * CLOSED, regista a venda e credita o valor ao saldo do user.
+     *
+     * A passagem OPEN → CLOSED é um UPDATE condicional: se o executionReport do OCO e a
+     * reconciliação por REST fecharem a mesma trade ao mesmo tempo, só um regista a venda.
+     *
+     * @return false se a trade já não estava aberta (ex: fechada noutro ciclo)
+     */
+    @Transactional
+    public boolean closeTrade(UUID tradeId, BigDecimal exitPrice, String reason) {
+        if (botTradeRepo.updateStatus(tradeId, "OPEN", "CLOSED") == 0) {
+            logger.warn("Trade {} ja nao esta aberta; fecho ignorado.", tradeId);
+            return false;
+        }
+        // A linha fica bloqueada pelo UPDATE até ao commit
+        BotTrade trade = botTradeRepo.findById(tradeId).orElseThrow();
+        recordClose(trade, exitPrice, trade.getAmount(), exitPrice.multiply(trade.getAmount()), reason);
+        return true;
+    }
+
+    /**
+     * Fecha a trade pela execução de uma perna do OCO: regista a venda da quantidade que o
+     * OCO executou e credita o valor recebido, já sem a comissão cobrada no asset de cotação.
+     *
+     * @param quantity   quantidade vendida pelo OCO
+     * @param quoteQty   valor bruto da venda (executedQty × preço médio)
+     * @param commission comissão cobrada no asset de cotação (zero se foi paga noutro asset)
+     * @return false se a trade já não estava aberta
+     */
+    @Transactional
+    public boolean closeExchangeExit(UUID tradeId, BigDecimal quantity, BigDecimal quoteQty, BigDecimal commission,
+                                     String reason) {
+        if (botTradeRepo.updateStatus(tradeId, "OPEN", "CLOSED") == 0) {
+            logger.warn("Trade {} ja nao esta aberta; fecho pelo OCO ignorado.", tradeId);
+            return false;
+        }
+        BigDecimal exitPrice = quoteQty.divide(quantity, 8, RoundingMode.HALF_UP);
+        recordClose(botTradeRepo.findById(tradeId).orElseThrow(), exitPrice, quantity,
+                quoteQty.subtract(commission), reason);
+        return true;
+    }
+
+    /**
+     * Regista uma ordem SELL real antes de a enviar: a trade passa de OPEN a CLOSING (o bot
+     * não volta a vender) até a execução ser confirmada pela resposta ou pelo OrderReconciler.
+     *
+     * @return false se a trade já não estava aberta (a mesma venda já foi enviada)
+     */
+    @Transactional
+    public boolean startClosing(UUID tradeId, String exitClientOrderId, String reason) {
+        return botTradeRepo.markClosing(tradeId, exitClientOrderId, reason, OffsetDateTime.now()) > 0;
+    }
+
+    /**
+     * Confirma a execução da ordem SELL: a trade CLOSING é fechada ao preço médio da venda,
+     * com o motivo registado no envio.
+     *
+     * @return false se não houver trade a fechar com este clientOrderId (já fechada)
+     */
+    @Transactional
+    public boolean closeSoldTrade(String exitClientOrderId, BigDecimal exitPrice) {
+        Optional<BotTrade> closing = botTradeRepo.findByExitClientOrderIdAndStatus(exitClientOrderId, "CLOSING");
+        if (closing.isEmpty() || botTradeRepo.updateStatus(closing.get().getId(), "CLOSING", "CLOSED") == 0) {
+            return false;
+        }
+        BotTrade trade = botTradeRepo.findById(closing.get().getId()).orElseThrow();
+        recordClose(trade, exitPrice, trade.getAmount(), exitPrice.multiply(trade.getAmount()), trade.getCloseReason());
+        return true;
+    }
+
+    /**
+     * A ordem SELL não chegou a executar: a trade volta a OPEN e a saída volta a ser vigiada.
+     */
+    @Transactional
+    public boolean reopenClosingTrade(String exitClientOrderId) {
+        return botTradeRepo.reopenClosing(exitClientOrderId, OffsetDateTime.now()) > 0;
+    }
+
+    // Marca a trade como CLOSED, regista a venda de {@code amount} e credita {@code saleValue}
+    // ao saldo do user
+    private void recordClose(BotTrade openTrade, BigDecimal exitPrice, BigDecimal amount, BigDecimal saleValue,
+                             String reason) {
+        BigDecimal entryPrice = openTrade.getPrice();
+        User user = openTrade.getUser();
+        BigDecimal profit = saleValue.subtract(entryPrice.multiply(amount));
+        OffsetDateTime now = OffsetDateTime.now();
+
+        openTrade.setExecutedAt(now);
+        openTrade.setStatus("CLOSED");
+        openTrade.setCloseReason(reason);
+        openTrade.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
+
+        BotTrade sellRecord = new BotTrade();
+        sellRecord.setUser(user);
+        sellRecord.setSymbol(openTrade.getSymbol());
+        sellRecord.setSide("sell");
+        sellRecord.setAmount(amount);
+        sellRecord.setPrice(exitPrice);
+        sellRecord.setStatus("CLOSED");
+        sellRecord.setExecutedAt(now);
+        sellRecord.setProfitEstimate(profit.setScale(8, RoundingMode.HALF_UP));
+        botTradeRepo.save(sellRecord);
+
+        user.setBalance(user.getBalance().add(saleValue));
+    }
+}
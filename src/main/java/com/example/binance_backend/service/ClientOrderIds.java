@@ -0,0 +1,29 @@
+package com.example.binance_backend.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * newClientOrderId determinístico das ordens do bot: o mesmo (user, par, candle, lado) gera
+ * sempre o mesmo id. Uma segunda tentativa da mesma decisão (timeout, evento repetido, outro
+ * nó durante um rebalanceamento) leva o mesmo id e é detetada como duplicada, em vez de abrir
+ * uma segunda posição.
+ *
+ * Formato: {@code bot} + UUID v3 sem hífens (35 caracteres, dentro do limite de 36 da Binance).
+ */
+public final class ClientOrderIds {
+
+    static final String PREFIX = "bot";
+
+    private ClientOrderIds() {
+    }
+
+    /**
+     * @param candleOpenTime openTime (epoch ms) do candle em que a decisão foi tomada
+     * @param side           BUY ou SELL
+     */
+    public static String of(UUID userId, String symbol, long candleOpenTime, String side) {
+        String key = userId + "|" + symbol + "|" + candleOpenTime + "|" + side;
+        return PREFIX + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString().replace("-", "");
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.binance_backend.service;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HmacSigner: assinatura HMAC-SHA256 dos pedidos privados da Binance com o mínimo de alocações.
+ *
+ * - O {@link Mac} já inicializado é guardado por secret e por thread (LRU de
+ *   {@value #MAX_KEYS_PER_THREAD} secrets), em vez de {@code Mac.getInstance} + {@code init} a
+ *   cada ordem.
+ * - A query é construída num buffer reutilizado por thread e a assinatura é escrita em hex
+ *   (tabela de lookup) diretamente no fim da query.
+ *
+ * Uso:
+ * <pre>
+ *   String query = signer.query()
+ *           .param("symbol", "BTCUSDT")
+ *           .param("timestamp", now)
+ *           .signWith(secretKey);   // "symbol=BTCUSDT&timestamp=...&signature=..."
+ * </pre>
+ *
+ * A {@link Query} devolvida pertence à thread que a pediu e é reutilizada no próximo
+ * {@link #query()} dessa thread: deve ser usada e assinada de seguida, sem a partilhar.
+ */
+public final class HmacSigner {
+
+    static final int MAX_KEYS_PER_THREAD = 16;
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final ThreadLocal<Query> queries = ThreadLocal.withInitial(Query::new);
+
+    /** Query vazia (buffer reutilizado da thread atual). */
+    public Query query() {
+        Query query = queries.get();
+        query.reset();
+        return query;
+    }
+
+    /** Assinatura em hex de {@code payload} com {@code secretKey}. */
+    public String sign(String secretKey, String payload) {
+        return query().raw(payload).signature(secretKey);
+    }
+
+    /** Query string a assinar, construída num buffer da thread. */
+    public static final class Query {
+
+        private final StringBuilder buffer = new StringBuilder(256);
+        private byte[] bytes = new byte[256];
+        private final Map<String, Mac> macs = new LinkedHashMap<>(MAX_KEYS_PER_THREAD, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Mac> eldest) {
+                return size() > MAX_KEYS_PER_THREAD;
+            }
+        };
+
+        private Query() {
+        }
+
+        public Query param(String name, String value) {
+            if (buffer.length() > 0) {
+                buffer.append('&');
+            }
+            buffer.append(name).append('=').append(value);
+            return this;
+        }
+
+        public Query param(String name, long value) {
+            if (buffer.length() > 0) {
+                buffer.append('&');
+            }
+            buffer.append(name).append('=').append(value);
+            return this;
+        }
+
+        /** Acrescenta {@code &signature=<hex>} e devolve a query completa. */
+        public String signWith(String secretKey) {
+            byte[] hash = hash(secretKey);
+            buffer.append("&signature=");
+            appendHex(hash);
+            return buffer.toString();
+        }
+
+        private Query raw(String payload) {
+            buffer.append(payload);
+            return this;
+        }
+
+        // Só a assinatura em hex (sem a query)
+        private String signature(String secretKey) {
+            byte[] hash = hash(secretKey);
+            buffer.setLength(0);
+            appendHex(hash);
+            return buffer.toString();
+        }
+
+        private byte[] hash(String secretKey) {
+            int length = encodePayload();
+            Mac mac = mac(secretKey);
+            mac.update(bytes, 0, length);
+            return mac.doFinal();
+        }
+
+        private void reset() {
+            buffer.setLength(0);
+        }
+
+        // Copia o buffer para bytes (ASCII direto; UTF-8 se houver outros caracteres)
+        private int encodePayload() {
+            int length = buffer.length();
+            if (bytes.length < length) {
+                bytes = new byte[Math.max(length, bytes.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = buffer.charAt(i);
+                if (c >= 0x80) {
+                    byte[] utf8 = buffer.toString().getBytes(StandardCharsets.UTF_8);
+                    if (bytes.length < utf8.length) {
+                        bytes = new byte[utf8.length];
+                    }
+                    System.arraycopy(utf8, 0, bytes, 0, utf8.length);
+                    return utf8.length;
+                }
+                bytes[i] = (byte) c;
+            }
+            return length;
+        }
+
+        private void appendHex(byte[] hash) {
+            for (byte b : hash) {
+                buffer.append(HEX[(b >> 4) & 0x0f]).append(HEX[b & 0x0f]);
+            }
+        }
+
+        private Mac mac(String secretKey) {
+            Mac mac = macs.get(secretKey);
+            if (mac == null) {
+                try {
+                    mac = Mac.getInstance(ALGORITHM);
+                    mac.init(new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Erro ao inicializar " + ALGORITHM, e);
+                }
+                macs.put(secretKey, mac);
+            }
+            return mac;
+        }
+    }
+}
@@ -0,0 +1,423 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.UserCredentials;
+import com.example.binance_backend.repository.BotTradeRepository;
+import com.example.binance_backend.repository.UserCredentialsRepository;
+import com.example.binance_backend.service.exchange.ExchangeInfoCache;
+import com.example.binance_backend.service.exchange.SymbolFilters;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.service.userdata.OrderUpdateEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * OcoExitManager: saída das trades reais por OCO na Binance ({@code bot.exit-mode=oco}).
+ *
+ * - Logo que uma compra é executada, coloca um OCO de venda com o take profit (LIMIT_MAKER) e
+ *   o stop loss (STOP_LOSS_LIMIT) calculados a partir das percentagens do BotSettings. Antes do
+ *   envio a trade passa a PROTECTING, e a partir daí já não é vendida pelo bot (nem ticks, nem
+ *   candles, nem PositionMonitor). Se a Binance rejeitar o OCO a trade volta a ser vigiada; se
+ *   a resposta se perder, a reconciliação procura o OCO pelo listClientOrderId.
+ * - Quando uma das pernas executa, o {@code executionReport} do user data stream fecha a
+ *   BotTrade com a quantidade vendida e o valor recebido, já sem a comissão
+ *   (TAKE_PROFIT ou STOP_LOSS).
+ * - A cada {@code bot.oco.reconcile-ms} o estado dos OCO abertos é confirmado por REST, para
+ *   apanhar execuções perdidas enquanto o stream esteve em baixo. Um OCO que acabou sem
+ *   executar (cancelado à mão, rejeitado) é desassociado e a trade volta a ser vigiada.
+ *
+ * Se o OCO não puder ser colocado (TP ou SL por definir nas settings, filtros do par, erro da
+ * Binance), a trade fica vigiada pelo bot como no modo {@code monitor}. Em simulação não há OCO.
+ */
+@Service
+public class OcoExitManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(OcoExitManager.class);
+
+    private static final BigDecimal HUNDRED = BigDecimal.valueOf(100);
+
+    // Tempo sem resposta ao envio do OCO a partir do qual a reconciliação o procura na Binance
+    static final Duration PROTECT_GRACE = Duration.ofMinutes(2);
+
+    private final BinanceClient binanceClient;
+    private final ExchangeInfoCache exchangeInfo;
+    private final BotTradeService botTradeService;
+    private final BotTradeRepository botTradeRepo;
+    private final UserCredentialsRepository credentialsRepo;
+    private final OrderPipeline orderPipeline;
+    private final BotCycleExecutor cycleExecutor;
+    private final ActiveBotRegistry registry;
+    private final ShardCoordinator shards;
+
+    private final boolean enabled;
+    // Distância (%) entre o gatilho do stop e o preço limite da ordem de stop
+    private final BigDecimal stopLimitOffsetPerc;
+
+    private final Counter placed;
+    private final Counter fallbacks;
+    private final Counter fills;
+
+    public OcoExitManager(
+            BinanceClient binanceClient,
+            ExchangeInfoCache exchangeInfo,
+            BotTradeService botTradeService,
+            BotTradeRepository botTradeRepo,
+            UserCredentialsRepository credentialsRepo,
+            OrderPipeline orderPipeline,
+            BotCycleExecutor cycleExecutor,
+            ActiveBotRegistry registry,
+            ShardCoordinator shards,
+            MeterRegistry meterRegistry,
+            @Value("${bot.exit-mode:monitor}") String exitMode,
+            @Value("${bot.simulation:true}") boolean simulationMode,
+            @Value("${bot.oco.stop-limit-offset-perc:0.5}") BigDecimal stopLimitOffsetPerc
+    ) {
+        this.binanceClient = binanceClient;
+        this.exchangeInfo = exchangeInfo;
+        this.botTradeService = botTradeService;
+        this.botTradeRepo = botTradeRepo;
+        this.credentialsRepo = credentialsRepo;
+        this.orderPipeline = orderPipeline;
+        this.cycleExecutor = cycleExecutor;
+        this.registry = registry;
+        this.shards = shards;
+        this.enabled = "oco".equals(exitMode.trim().toLowerCase(Locale.ROOT)) && !simulationMode;
+        this.stopLimitOffsetPerc = stopLimitOffsetPerc;
+
+        this.placed = Counter.builder("bot.oco.orders")
+                .tag("result", "placed")
+                .description("OCO de saida colocados na Binance")
+                .register(meterRegistry);
+        this.fallbacks = Counter.builder("bot.oco.orders")
+                .tag("result", "fallback")
+                .description("Trades que ficaram vigiadas pelo bot por nao ter sido possivel colocar o OCO")
+                .register(meterRegistry);
+        this.fills = Counter.builder("bot.oco.fills")
+                .description("Trades fechadas por execucao de uma perna do OCO")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Coloca o OCO de saída de uma trade acabada de abrir (chamado quando a compra executa).
+     *
+     * A quantidade do OCO é a comprada menos a comissão cobrada no asset base (essa parte
+     * nunca chega ao saldo livre e a Binance rejeitaria o OCO por saldo insuficiente). A
+     * comissão vem dos {@code fills} da resposta à compra; se não vierem (execução vista pelo
+     * stream ou pela reconciliação), é lida de {@code /api/v3/myTrades} antes de colocar o OCO.
+     *
+     * @param bot        bot que comprou (percentagens de TP/SL e credenciais)
+     * @param tradeId    BotTrade aberta pela compra
+     * @param orderId    orderId da compra na Binance
+     * @param quantity   quantidade executada
+     * @param entryPrice preço médio de entrada
+     * @param fills      execuções da compra, ou null se não forem conhecidas
+     */
+    public void protect(ActiveBot bot, UUID tradeId, String orderId, BigDecimal quantity, BigDecimal entryPrice,
+                        List<BinanceClient.Fill> fills) {
+        if (!enabled) {
+            return;
+        }
+        if (bot.takeProfitPerc == null || bot.stopLossPerc == null) {
+            // O OCO precisa das duas pernas; o bot verifica só a que estiver definida
+            fallbacks.increment();
+            logger.info("Trade {} sem take profit ou stop loss definido; saida vigiada pelo bot.", tradeId);
+            return;
+        }
+        // A partir daqui nenhuma SELL do bot pode ser enviada para a mesma posição
+        if (!botTradeService.startProtecting(tradeId)) {
+            logger.info("Trade {} ja nao esta aberta sem OCO; OCO nao colocado.", tradeId);
+            return;
+        }
+        SymbolFilters filters = exchangeInfo.filters(bot.tradingPair);
+        String baseAsset = filters != null ? filters.baseAsset : null;
+        if ((fills != null && !fills.isEmpty()) || orderId == null || baseAsset == null) {
+            placeOco(bot, tradeId, quantity.subtract(commissionIn(fills, baseAsset)), entryPrice, filters);
+            return;
+        }
+        AtomicBoolean fetched = new AtomicBoolean();
+        orderPipeline.submit("comissoes trade " + tradeId,
+                binanceClient.fetchOrderFillsAsync(bot.encryptedApiKey, bot.encryptedSecretKey, bot.tradingPair, orderId),
+                orderFills -> {
+                    fetched.set(true);
+                    placeOco(bot, tradeId, quantity.subtract(commissionIn(orderFills, baseAsset)), entryPrice, filters);
+                },
+                () -> {
+                    if (!fetched.get()) {
+                        release(bot, tradeId, "comissoes da compra indisponiveis");
+                    }
+                });
+    }
+
+    /** listClientOrderId do OCO de saída de uma trade (máximo de 36 caracteres na Binance). */
+    static String listClientOrderId(UUID tradeId) {
+        return "oco" + tradeId.toString().replace("-", "");
+    }
+
+    private void placeOco(ActiveBot bot, UUID tradeId, BigDecimal quantity, BigDecimal entryPrice, SymbolFilters filters) {
+        BigDecimal takeProfit = entryPrice.multiply(BigDecimal.ONE.add(bot.takeProfitPerc.divide(HUNDRED)));
+        BigDecimal stop = entryPrice.multiply(BigDecimal.ONE.subtract(bot.stopLossPerc.divide(HUNDRED)));
+        BigDecimal stopLimit = stop.multiply(BigDecimal.ONE.subtract(stopLimitOffsetPerc.divide(HUNDRED)));
+
+        if (filters != null) {
+            quantity = filters.roundQuantity(quantity, false);
+            takeProfit = filters.roundPrice(takeProfit);
+            stop = filters.roundPrice(stop);
+            stopLimit = filters.roundPrice(stopLimit);
+            String violation = filters.violation(quantity, takeProfit, null, false);
+            if (violation == null) {
+                violation = filters.violation(quantity, stopLimit, null, false);
+            }
+            if (violation != null) {
+                release(bot, tradeId, violation);
+                return;
+            }
+        } else {
+            takeProfit = takeProfit.setScale(8, RoundingMode.DOWN);
+            stop = stop.setScale(8, RoundingMode.DOWN);
+            stopLimit = stopLimit.setScale(8, RoundingMode.DOWN);
+        }
+
+        BigDecimal tp = takeProfit;
+        BigDecimal sl = stop;
+        logger.info("A colocar OCO de saida da trade {}: {} {} TP={} SL={} (limite {})",
+                tradeId, quantity.toPlainString(), bot.tradingPair, tp.toPlainString(), sl.toPlainString(),
+                stopLimit.toPlainString());
+        AtomicBoolean answered = new AtomicBoolean();
+        AtomicBoolean rejected = new AtomicBoolean();
+        orderPipeline.submit("OCO trade " + tradeId,
+                binanceClient.placeOcoSellAsync(bot.encryptedApiKey, bot.encryptedSecretKey,
+                        bot.tradingPair, listClientOrderId(tradeId), quantity, takeProfit, stop, stopLimit)
+                        .doOnError(e -> rejected.set(BinanceClient.isRejected(e))),
+                resp -> {
+                    answered.set(true);
+                    link(tradeId, resp.orderListId);
+                    logger.info("OCO {} protege a trade {} (TP={} SL={}).", resp.orderListId, tradeId,
+                            tp.toPlainString(), sl.toPlainString());
+                },
+                () -> {
+                    if (answered.get()) {
+                        registry.refreshUser(bot.userId);
+                    } else if (rejected.get()) {
+                        release(bot, tradeId, "rejeitado pela Binance");
+                    } else {
+                        // Pode ter sido colocado: fica PROTECTING até a reconciliação o procurar
+                        logger.warn("OCO da trade {} sem resposta; estado confirmado na reconciliacao.", tradeId);
+                    }
+                });
+    }
+
+    // Associa o OCO colocado à trade. Se a reconciliação já a tinha devolvido ao bot (resposta
+    // muito atrasada), o OCO é associado à trade aberta na mesma
+    private void link(UUID tradeId, long orderListId) {
+        if (botTradeService.finishProtecting(tradeId, orderListId) || botTradeService.setExitOrders(tradeId, orderListId)) {
+            placed.increment();
+        } else {
+            logger.error("OCO {} colocado mas a trade {} ja nao esta aberta; verificar a posicao na Binance.",
+                    orderListId, tradeId);
+        }
+    }
+
+    // O OCO não foi colocado: a trade volta a OPEN sem OCO e a saída é vigiada pelo bot
+    private void release(ActiveBot bot, UUID tradeId, String reason) {
+        fallbacks.increment();
+        botTradeService.finishProtecting(tradeId, null);
+        logger.warn("OCO da trade {} nao colocado ({}); saida vigiada pelo bot.", tradeId, reason);
+        registry.refreshUser(bot.userId);
+    }
+
+    // Comissão cobrada num asset (ex: BTC numa compra de BTCUSDT sem desconto em BNB)
+    private static BigDecimal commissionIn(List<BinanceClient.Fill> fills, String asset) {
+        BigDecimal total = BigDecimal.ZERO;
+        if (fills == null || asset == null) {
+            return total;
+        }
+        for (BinanceClient.Fill fill : fills) {
+            if (asset.equals(fill.commissionAsset) && fill.commission != null) {
+                total = total.add(fill.commission);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Execução de uma ordem no user data stream: se for a perna executada de um OCO de saída,
+     * fecha a trade correspondente. O fecho (JPA) corre no executor do ciclo.
+     */
+    @EventListener
+    public void onOrderUpdate(OrderUpdateEvent update) {
+        if (!enabled || update.orderListId < 0 || !"SELL".equals(update.side) || !"FILLED".equals(update.status)) {
+            return;
+        }
+        // Com uma só execução a comissão do evento é a da ordem; com várias vem do myTrades
+        List<BinanceClient.Fill> known = null;
+        if (update.lastQty.compareTo(update.cumulativeQty) == 0) {
+            BinanceClient.Fill fill = new BinanceClient.Fill();
+            fill.qty = update.lastQty;
+            fill.price = update.lastPrice;
+            fill.commission = update.commission;
+            fill.commissionAsset = update.commissionAsset;
+            known = List.of(fill);
+        }
+        List<BinanceClient.Fill> legFills = known;
+        cycleExecutor.submit("OCO " + update.orderListId,
+                () -> closeFromFill(update.orderListId, update.symbol, String.valueOf(update.orderId),
+                        update.cumulativeQty, update.cumulativeQuoteQty, legFills, reasonFor(update.type), update.userId));
+    }
+
+    /** Confirma por REST o estado dos OCO de saída das trades abertas dos users deste nó. */
+    @Scheduled(fixedDelayString = "${bot.oco.reconcile-ms:300000}",
+               initialDelayString = "${bot.oco.reconcile-ms:300000}")
+    public void reconcile() {
+        if (!enabled) {
+            return;
+        }
+        for (BotTrade trade : botTradeRepo.findProtectingTradesBefore(OffsetDateTime.now().minus(PROTECT_GRACE))) {
+            UUID userId = trade.getUser().getId();
+            if (!shards.owns(userId)) {
+                continue;
+            }
+            try {
+                reconcileProtecting(trade, userId);
+            } catch (Exception e) {
+                logger.warn("Erro ao procurar o OCO da trade {}: {}", trade.getId(), e.getMessage());
+            }
+        }
+        for (BotTrade trade : botTradeRepo.findOpenTradesWithExchangeExit()) {
+            UUID userId = trade.getUser().getId();
+            if (!shards.owns(userId)) {
+                continue;
+            }
+            try {
+                reconcileTrade(trade, userId);
+            } catch (Exception e) {
+                logger.warn("Erro ao confirmar OCO {} da trade {}: {}", trade.getExitOrderListId(), trade.getId(), e.getMessage());
+            }
+        }
+    }
+
+    // Envio do OCO sem resposta: associa-o se a Binance o tiver, ou devolve a saída ao bot
+    private void reconcileProtecting(BotTrade trade, UUID userId) {
+        Optional<UserCredentials> creds = credentialsRepo.findByUser(trade.getUser());
+        if (creds.isEmpty()) {
+            return;
+        }
+        try {
+            BinanceClient.BinanceOrderListResponse list = binanceClient.fetchOrderListByClientIdAsync(
+                    creds.get().getEncryptedApiKey(), creds.get().getEncryptedSecretKey(),
+                    listClientOrderId(trade.getId())).block();
+            if (list == null) {
+                return;
+            }
+            logger.info("OCO {} da trade {} encontrado na Binance.", list.orderListId, trade.getId());
+            link(trade.getId(), list.orderListId);
+        } catch (RuntimeException e) {
+            if (!BinanceClient.isUnknownOrder(e)) {
+                throw e;
+            }
+            fallbacks.increment();
+            botTradeService.finishProtecting(trade.getId(), null);
+            logger.warn("OCO da trade {} nao existe na Binance; saida vigiada pelo bot.", trade.getId());
+        }
+        registry.refreshUser(userId);
+    }
+
+    private void reconcileTrade(BotTrade trade, UUID userId) {
+        Optional<UserCredentials> creds = credentialsRepo.findByUser(trade.getUser());
+        if (creds.isEmpty()) {
+            return;
+        }
+        String apiKey = creds.get().getEncryptedApiKey();
+        String secretKey = creds.get().getEncryptedSecretKey();
+        long orderListId = trade.getExitOrderListId();
+
+        BinanceClient.BinanceOrderListResponse list = binanceClient.fetchOrderListAsync(apiKey, secretKey, orderListId).block();
+        if (list == null || "EXECUTING".equals(list.listOrderStatus)) {
+            return;
+        }
+        if (list.orders != null) {
+            for (BinanceClient.BinanceOrderListResponse.OrderRef ref : list.orders) {
+                BinanceClient.BinanceOrderResponse order = binanceClient
+                        .fetchOrderAsync(apiKey, secretKey, ref.symbol, ref.orderId).block();
+                if (order != null && "FILLED".equals(order.status)) {
+                    logger.info("OCO {} executado sem evento do stream; a fechar trade {}.", orderListId, trade.getId());
+                    closeFromFill(orderListId, ref.symbol, order.orderId, order.executedQty,
+                            order.cummulativeQuoteQty, null, reasonFor(order.type), userId);
+                    return;
+                }
+            }
+        }
+        // Terminou sem execução: a saída volta a ser vigiada pelo bot
+        logger.warn("OCO {} da trade {} terminou sem execucao ({}); saida volta a ser vigiada pelo bot.",
+                orderListId, trade.getId(), list.listOrderStatus);
+        botTradeService.setExitOrders(trade.getId(), null);
+        registry.refreshUser(userId);
+    }
+
+    // Fecha a trade com a quantidade e o valor executados pela perna do OCO, sem a comissão
+    // cobrada no asset de cotação; fills null = comissão lida do myTrades da ordem
+    private void closeFromFill(long orderListId, String symbol, String orderId, BigDecimal quantity,
+                               BigDecimal quoteQty, List<BinanceClient.Fill> legFills, String reason, UUID userId) {
+        Optional<BotTrade> trade = botTradeRepo.findByExitOrderListIdAndStatus(orderListId, "OPEN");
+        if (trade.isEmpty()) {
+            return;
+        }
+        if (legFills == null) {
+            legFills = fetchFills(trade.get(), symbol, orderId);
+        }
+        SymbolFilters filters = exchangeInfo.filters(symbol);
+        BigDecimal commission = commissionIn(legFills, filters != null ? filters.quoteAsset : null);
+        if (botTradeService.closeExchangeExit(trade.get().getId(), quantity, quoteQty, commission, reason)) {
+            fills.increment();
+            logger.info("Trade {} fechada pelo OCO {}: {} {} a {} (comissao {}).", trade.get().getId(), orderListId,
+                    reason, quantity.toPlainString(), averagePrice(quoteQty, quantity).toPlainString(),
+                    commission.toPlainString());
+        }
+        registry.refreshUser(userId);
+    }
+
+    // Execuções de uma perna do OCO; vazio (sem comissão) se não for possível lê-las
+    private List<BinanceClient.Fill> fetchFills(BotTrade trade, String symbol, String orderId) {
+        Optional<UserCredentials> creds = credentialsRepo.findByUser(trade.getUser());
+        if (creds.isEmpty()) {
+            return List.of();
+        }
+        try {
+            List<BinanceClient.Fill> legFills = binanceClient.fetchOrderFillsAsync(creds.get().getEncryptedApiKey(),
+                    creds.get().getEncryptedSecretKey(), symbol, orderId).block();
+            return legFills != null ? legFills : List.of();
+        } catch (RuntimeException e) {
+            logger.warn("Comissao da ordem {} da trade {} indisponivel: {}", orderId, trade.getId(), e.getMessage());
+            return List.of();
+        }
+    }
+
+    // A perna de take profit é a LIMIT_MAKER; a de stop loss é a STOP_LOSS_LIMIT
+    private static String reasonFor(String orderType) {
+        return "LIMIT_MAKER".equals(orderType) ? "TAKE_PROFIT" : "STOP_LOSS";
+    }
+
+    private static BigDecimal averagePrice(BigDecimal quoteQty, BigDecimal qty) {
+        return quoteQty.divide(qty, 8, RoundingMode.HALF_UP);
+    }
+}
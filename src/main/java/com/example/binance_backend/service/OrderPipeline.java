@@ -0,0 +1,118 @@
+package com.example.binance_backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * OrderPipeline: fila de ordens reais enviadas à Binance sem bloquear threads.
+ *
+ * - Até {@code bot.orders.max-in-flight} ordens de users diferentes estão em curso ao mesmo
+ *   tempo (I/O não bloqueante do WebClient); as restantes esperam na fila pela sua vez.
+ * - Quando a Binance responde, o tratamento da execução (registo da trade, saldo) corre num
+ *   pool próprio de {@code bot.orders.completion-threads} threads, porque usa JPA (bloqueante).
+ * - Cada ordem tem um tempo máximo de {@code bot.orders.timeout-ms}; erros e timeouts são
+ *   registados e não afetam as restantes.
+ */
+@Component
+public class OrderPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderPipeline.class);
+
+    private final Sinks.Many<Mono<Void>> queue = Sinks.many().unicast().onBackpressureBuffer();
+    private final Scheduler completions;
+    private final Disposable worker;
+    private final Duration timeout;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OrderPipeline(
+            @Value("${bot.orders.max-in-flight:64}") int maxInFlight,
+            @Value("${bot.orders.completion-threads:4}") int completionThreads,
+            @Value("${bot.orders.timeout-ms:15000}") long timeoutMs,
+            MeterRegistry meterRegistry
+    ) {
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.completions = Schedulers.newBoundedElastic(completionThreads, Integer.MAX_VALUE, "bot-orders");
+        this.worker = queue.asFlux()
+                .flatMap(order -> order, maxInFlight)
+                .subscribe();
+        Gauge.builder("bot.orders.queued", queued, AtomicInteger::get)
+                .description("Ordens a espera de vez para serem enviadas")
+                .register(meterRegistry);
+        Gauge.builder("bot.orders.in-flight", inFlight, AtomicInteger::get)
+                .description("Ordens enviadas a Binance sem resposta")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Põe uma ordem na fila e volta logo.
+     *
+     * @param label    identificação para os logs (ex: "user ...")
+     * @param order    pedido à Binance (só é enviado quando chegar a sua vez)
+     * @param onFilled tratamento da resposta (corre no pool de conclusões)
+     * @param onDone   corre sempre no fim, com ou sem sucesso
+     */
+    public <T> void submit(Object label, Mono<T> order, Consumer<T> onFilled, Runnable onDone) {
+        Mono<Void> job = order
+                .doOnSubscribe(s -> {
+                    queued.decrementAndGet();
+                    inFlight.incrementAndGet();
+                })
+                .timeout(timeout)
+                .doOnTerminate(inFlight::decrementAndGet)
+                .publishOn(completions)
+                .doOnNext(onFilled)
+                .doOnError(e -> {
+                    if (e instanceof TimeoutException) {
+                        logger.error("Ordem ({}) sem resposta ao fim de {} ms.", label, timeout.toMillis());
+                    } else {
+                        logger.error("Erro na ordem ({}): {}", label, e.getMessage());
+                    }
+                })
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(s -> onDone.run())
+                .then();
+
+        queued.incrementAndGet();
+        Sinks.EmitResult result;
+        synchronized (queue) {
+            result = queue.tryEmitNext(job);
+        }
+        if (result.isFailure()) {
+            queued.decrementAndGet();
+            logger.error("Ordem ({}) rejeitada: fila de ordens fechada ({}).", label, result);
+            onDone.run();
+        }
+    }
+
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        queue.tryEmitComplete();
+        worker.dispose();
+        completions.dispose();
+    }
+}
@@ -0,0 +1,438 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.UserCredentials;
+import com.example.binance_backend.repository.BotTradeRepository;
+import com.example.binance_backend.repository.UserCredentialsRepository;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.service.userdata.OrderUpdateEvent;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * OrderReconciler: ciclo de vida das ordens reais do bot. Na compra, a trade fica PENDING desde
+ * o envio até a ordem terminar; só passa a OPEN com a quantidade e o preço médio realmente
+ * executados ({@code cummulativeQuoteQty / executedQty}). Na venda, a trade fica CLOSING desde
+ * o envio da SELL: só é fechada (ao preço médio da venda) quando a execução é confirmada, e
+ * volta a OPEN se a ordem terminar sem executar. Uma SELL sem resposta nunca é reenviada.
+ *
+ * O estado de cada ordem chega por três vias, todas tratadas em {@link #apply}:
+ * - a resposta ao envio (BotService): MARKET vem logo FILLED; LIMIT, STOP-LIMIT e LIMIT_MAKER
+ *   ficam normalmente NEW;
+ * - o {@code executionReport} do user data stream (NEW, PARTIALLY_FILLED, FILLED, ...);
+ * - a cada {@code bot.orders.reconcile-ms}, por REST, para quando o stream não está ligado ou
+ *   a resposta se perdeu (timeout, instância reiniciada).
+ *
+ * Na passagem por REST, as trades pendentes dos users deste nó são agrupadas por conta: um só
+ * {@code GET /api/v3/openOrders} por conta (até {@code bot.orders.reconcile-concurrency} em
+ * simultâneo) atualiza as ordens ainda a trabalhar. As que já não estão abertas (e as enviadas
+ * há mais de {@code bot.orders.pending-grace-ms} sem resposta) são resolvidas com um
+ * {@code GET /api/v3/allOrders} por (conta, par), procurando cada ordem pelo newClientOrderId:
+ * - executada (total ou parcialmente, já terminada) → OPEN;
+ * - terminada sem execução, ou inexistente (nunca chegou à Binance) → FAILED, e o bot pode
+ *   voltar a comprar.
+ * O allOrders só cobre as últimas 24 h: as trades pendentes mais antigas (ex: instância parada
+ * durante esse tempo) são consultadas uma a uma pelo clientOrderId, e só são dadas como FAILED
+ * se a Binance responder que a ordem não existe (-2013). Uma ordem inexistente passado o
+ * período de graça já não pode chegar à Binance: o pedido seria rejeitado pelo recvWindow.
+ *
+ * Como o clientOrderId é determinístico ({@link ClientOrderIds}) e a trade fica PENDING (ou
+ * CLOSING) antes do envio, um timeout nunca leva a uma segunda compra (ou venda) da mesma decisão.
+ */
+@Service
+public class OrderReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderReconciler.class);
+
+    // Margem para trás no startTime do allOrders (relógios e createdAt gravado após o envio)
+    private static final long LOOKBACK_MARGIN_MS = 60_000;
+    // Intervalo máximo entre startTime e endTime no allOrders
+    private static final long ALL_ORDERS_WINDOW_MS = 24 * 3_600_000L;
+
+    private final BinanceClient binanceClient;
+    private final BotTradeRepository botTradeRepo;
+    private final BotTradeService botTradeService;
+    private final UserCredentialsRepository credentialsRepo;
+    private final OcoExitManager ocoExits;
+    private final BotCycleExecutor cycleExecutor;
+    private final ActiveBotRegistry registry;
+    private final ShardCoordinator shards;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean simulationMode;
+    private final long pendingGraceMs;
+    private final int concurrency;
+
+    public OrderReconciler(
+            BinanceClient binanceClient,
+            BotTradeRepository botTradeRepo,
+            BotTradeService botTradeService,
+            UserCredentialsRepository credentialsRepo,
+            OcoExitManager ocoExits,
+            BotCycleExecutor cycleExecutor,
+            ActiveBotRegistry registry,
+            ShardCoordinator shards,
+            MeterRegistry meterRegistry,
+            @Value("${bot.simulation:true}") boolean simulationMode,
+            @Value("${bot.orders.pending-grace-ms:60000}") long pendingGraceMs,
+            @Value("${bot.orders.reconcile-concurrency:8}") int concurrency
+    ) {
+        this.binanceClient = binanceClient;
+        this.botTradeRepo = botTradeRepo;
+        this.botTradeService = botTradeService;
+        this.credentialsRepo = credentialsRepo;
+        this.ocoExits = ocoExits;
+        this.cycleExecutor = cycleExecutor;
+        this.registry = registry;
+        this.shards = shards;
+        this.meterRegistry = meterRegistry;
+        this.simulationMode = simulationMode;
+        this.pendingGraceMs = pendingGraceMs;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Estado de uma ordem BUY ou SELL do bot (resposta ao envio, executionReport ou consulta
+     * REST). Corre JPA: não chamar em threads do WebClient/stream.
+     *
+     * @return true se a trade deixou de estar pendente (OPEN, FAILED ou CLOSED)
+     */
+    public boolean apply(String clientOrderId, BinanceClient.BinanceOrderResponse order) {
+        boolean sell = "SELL".equals(order.side);
+        String status = order.status;
+        if (status == null || "FILLED".equals(status)) {
+            return sell ? closeSold(clientOrderId, order) : confirm(clientOrderId, order);
+        }
+        switch (status) {
+            case "NEW":
+            case "PENDING_NEW":
+            case "PARTIALLY_FILLED":
+                if (!sell && botTradeService.recordOrderStatus(clientOrderId, order.orderId, status)) {
+                    logger.info("Ordem {} {}: {} executado ate agora.", clientOrderId, status,
+                            order.executedQty != null ? order.executedQty.toPlainString() : "0");
+                }
+                return false;
+            default:
+                // CANCELED, REJECTED, EXPIRED, EXPIRED_IN_MATCH: vale o que chegou a executar
+                if (order.executedQty != null && order.executedQty.signum() > 0) {
+                    return sell ? closeSold(clientOrderId, order) : confirm(clientOrderId, order);
+                }
+                logger.warn("Ordem {} terminou sem execucao ({}).", clientOrderId, status);
+                return fail(clientOrderId, status, sell);
+        }
+    }
+
+    /** executionReport de uma ordem do bot: tratado no executor do ciclo (JPA). */
+    @EventListener
+    public void onOrderUpdate(OrderUpdateEvent update) {
+        // As pernas dos OCO de saída são tratadas pelo OcoExitManager
+        if (simulationMode || update.orderListId >= 0 || update.clientOrderId == null
+                || !update.clientOrderId.startsWith(ClientOrderIds.PREFIX)) {
+            return;
+        }
+        BinanceClient.BinanceOrderResponse order = new BinanceClient.BinanceOrderResponse();
+        order.symbol = update.symbol;
+        order.orderId = String.valueOf(update.orderId);
+        order.clientOrderId = update.clientOrderId;
+        order.status = update.status;
+        order.side = update.side;
+        order.type = update.type;
+        order.executedQty = update.cumulativeQty;
+        order.cummulativeQuoteQty = update.cumulativeQuoteQty;
+        cycleExecutor.submit("ordem " + update.clientOrderId, () -> {
+            if (apply(update.clientOrderId, order)) {
+                registry.refreshUser(update.userId);
+            }
+        });
+    }
+
+    @Scheduled(fixedDelayString = "${bot.orders.reconcile-ms:30000}",
+               initialDelayString = "${bot.orders.reconcile-ms:30000}")
+    public void reconcile() {
+        if (simulationMode) {
+            return;
+        }
+        List<BotTrade> pending = botTradeRepo.findPendingTrades();
+        List<Account> accounts = accounts(pending);
+        if (accounts.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long graceLimit = now - pendingGraceMs;
+        long windowLimit = now - ALL_ORDERS_WINDOW_MS + 2 * LOOKBACK_MARGIN_MS;
+        Set<UUID> touched = new HashSet<>();
+
+        // 1) Ordens ainda abertas: um pedido por conta
+        Map<String, Group> finished = new LinkedHashMap<>();
+        List<Group> beyondWindow = new ArrayList<>();
+        for (Map.Entry<Account, List<BinanceClient.BinanceOrderResponse>> result
+                : fetch(accounts, a -> binanceClient.fetchOpenOrdersAsync(a.apiKey, a.secretKey, a.singleSymbol()))) {
+            Account account = result.getKey();
+            Map<String, BinanceClient.BinanceOrderResponse> open = byClientOrderId(result.getValue());
+            for (BotTrade trade : account.trades) {
+                BinanceClient.BinanceOrderResponse order = open.get(orderRef(trade));
+                if (order != null) {
+                    resolve(trade, order, account.userId, touched);
+                } else if (sentAt(trade) != null && sentBefore(trade, windowLimit)) {
+                    // Fora do alcance do allOrders: consultada sozinha pelo clientOrderId
+                    Group single = new Group(account, trade.getSymbol());
+                    single.trades.add(trade);
+                    beyondWindow.add(single);
+                } else if (trade.getOrderStatus() != null || sentBefore(trade, graceLimit)) {
+                    // Já não está aberta (ou nunca teve resposta): estado final no allOrders
+                    finished.computeIfAbsent(account.userId + "|" + trade.getSymbol(),
+                            k -> new Group(account, trade.getSymbol())).trades.add(trade);
+                }
+                // Senão: enviada há pouco, a resposta ainda pode estar a caminho
+            }
+        }
+
+        // 2) Ordens terminadas: um pedido por (conta, par)
+        for (Map.Entry<Group, List<BinanceClient.BinanceOrderResponse>> result
+                : fetch(finished.values(), g -> binanceClient.fetchOrdersAsync(
+                        g.account.apiKey, g.account.secretKey, g.symbol, g.startTime()))) {
+            Group group = result.getKey();
+            Map<String, BinanceClient.BinanceOrderResponse> orders = byClientOrderId(result.getValue());
+            for (BotTrade trade : group.trades) {
+                BinanceClient.BinanceOrderResponse order = orders.get(orderRef(trade));
+                if (order == null) {
+                    notFound(trade, group.account.userId, touched);
+                } else {
+                    resolve(trade, order, group.account.userId, touched);
+                }
+            }
+        }
+
+        // 3) Trades com mais de 24 h: uma consulta por ordem; lista vazia = a ordem não existe
+        for (Map.Entry<Group, List<BinanceClient.BinanceOrderResponse>> result
+                : fetch(beyondWindow, g -> binanceClient.fetchOrderByClientOrderIdAsync(
+                                g.account.apiKey, g.account.secretKey, g.symbol, orderRef(g.trades.get(0)))
+                        .map(List::of)
+                        .onErrorResume(BinanceClient::isUnknownOrder, e -> Mono.just(List.of())))) {
+            Group group = result.getKey();
+            BotTrade trade = group.trades.get(0);
+            if (result.getValue().isEmpty()) {
+                notFound(trade, group.account.userId, touched);
+            } else {
+                resolve(trade, result.getValue().get(0), group.account.userId, touched);
+            }
+        }
+
+        touched.forEach(registry::refreshUser);
+        logger.info("Reconciliacao: {} trades pendentes em {} contas, {} pares consultados, {} ordens antigas, {} users atualizados.",
+                pending.size(), accounts.size(), finished.size(), beyondWindow.size(), touched.size());
+    }
+
+    // Ordem inexistente na Binance (nunca lá chegou): a compra falhou, ou a venda não aconteceu
+    private void notFound(BotTrade trade, UUID userId, Set<UUID> touched) {
+        boolean sell = isClosing(trade);
+        logger.warn("Ordem {} (trade {}) nao existe na Binance; {}.", orderRef(trade), trade.getId(),
+                sell ? "trade volta a estar aberta" : "trade dada como falhada");
+        if (fail(orderRef(trade), null, sell)) {
+            touched.add(userId);
+        }
+    }
+
+    private void resolve(BotTrade trade, BinanceClient.BinanceOrderResponse order, UUID userId, Set<UUID> touched) {
+        try {
+            if (apply(orderRef(trade), order)) {
+                touched.add(userId);
+            }
+        } catch (RuntimeException e) {
+            logger.error("Erro ao reconciliar trade {}: {}", trade.getId(), e.getMessage());
+        }
+    }
+
+    private boolean confirm(String clientOrderId, BinanceClient.BinanceOrderResponse order) {
+        BigDecimal quantity = order.executedQty != null && order.executedQty.signum() > 0 ? order.executedQty : null;
+        BotTrade trade = botTradeService.confirmTrade(clientOrderId, order.orderId, quantity, order.averagePrice());
+        if (trade == null) {
+            return false;
+        }
+        meterRegistry.counter("bot.orders.reconciled", "result", "filled").increment();
+        logger.info("Ordem {} executada: trade {} aberta com {} a {}.", clientOrderId, trade.getId(),
+                trade.getAmount().toPlainString(), trade.getPrice().toPlainString());
+
+        // bot.exit-mode=oco: TP/SL ficam na Binance em vez de vigiados pelo bot
+        if (ocoExits.isEnabled()) {
+            UUID userId = trade.getUser().getId();
+            for (ActiveBot bot : registry.bySymbol(trade.getSymbol())) {
+                if (bot.userId.equals(userId)) {
+                    ocoExits.protect(bot, trade.getId(), trade.getOrderId(), trade.getAmount(), trade.getPrice(),
+                            order.fills);
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+
+    private boolean closeSold(String clientOrderId, BinanceClient.BinanceOrderResponse order) {
+        BigDecimal exitPrice = order.averagePrice();
+        if (exitPrice == null) {
+            logger.error("Venda {} executada sem preco conhecido; trade fica a fechar.", clientOrderId);
+            return false;
+        }
+        if (!botTradeService.closeSoldTrade(clientOrderId, exitPrice)) {
+            return false;
+        }
+        meterRegistry.counter("bot.orders.reconciled", "result", "sold").increment();
+        logger.info("Venda {} executada a {}: trade fechada.", clientOrderId, exitPrice.toPlainString());
+        return true;
+    }
+
+    private boolean fail(String clientOrderId, String orderStatus, boolean sell) {
+        if (sell) {
+            if (!botTradeService.reopenClosingTrade(clientOrderId)) {
+                return false;
+            }
+            meterRegistry.counter("bot.orders.reconciled", "result", "reopened").increment();
+            return true;
+        }
+        if (!botTradeService.failPendingTrade(clientOrderId, orderStatus)) {
+            return false;
+        }
+        meterRegistry.counter("bot.orders.reconciled", "result", "failed").increment();
+        return true;
+    }
+
+    // Pedidos à Binance em paralelo; as escritas (JPA) ficam na thread que chama
+    private <K> List<Map.Entry<K, List<BinanceClient.BinanceOrderResponse>>> fetch(
+            Collection<K> keys, Function<K, Mono<List<BinanceClient.BinanceOrderResponse>>> request
+    ) {
+        return Flux.fromIterable(keys)
+                .flatMap(key -> request.apply(key)
+                        .map(orders -> Map.entry(key, orders))
+                        .onErrorResume(e -> {
+                            logger.warn("Erro ao consultar ordens ({}): {}", key, e.getMessage());
+                            return Mono.empty();
+                        }), concurrency)
+                .collectList()
+                .block();
+    }
+
+    private static Map<String, BinanceClient.BinanceOrderResponse> byClientOrderId(List<BinanceClient.BinanceOrderResponse> orders) {
+        Map<String, BinanceClient.BinanceOrderResponse> byId = new HashMap<>();
+        for (BinanceClient.BinanceOrderResponse order : orders) {
+            if (order.clientOrderId != null) {
+                byId.put(order.clientOrderId, order);
+            }
+        }
+        return byId;
+    }
+
+    private static boolean isClosing(BotTrade trade) {
+        return "CLOSING".equals(trade.getStatus());
+    }
+
+    // clientOrderId da ordem em curso: a SELL numa trade CLOSING, a BUY numa PENDING
+    private static String orderRef(BotTrade trade) {
+        return isClosing(trade) ? trade.getExitClientOrderId() : trade.getClientOrderId();
+    }
+
+    // Envio da ordem em curso (a SELL é registada ao passar a CLOSING)
+    private static OffsetDateTime sentAt(BotTrade trade) {
+        return isClosing(trade) ? trade.getUpdatedAt() : trade.getCreatedAt();
+    }
+
+    private static boolean sentBefore(BotTrade trade, long epochMs) {
+        OffsetDateTime sentAt = sentAt(trade);
+        return sentAt == null || sentAt.toInstant().toEpochMilli() < epochMs;
+    }
+
+    // Agrupa por conta as trades pendentes dos users deste nó com credenciais
+    private List<Account> accounts(List<BotTrade> pending) {
+        Map<UUID, Account> accounts = new LinkedHashMap<>();
+        Set<UUID> withoutCredentials = new HashSet<>();
+        for (BotTrade trade : pending) {
+            UUID userId = trade.getUser().getId();
+            if (orderRef(trade) == null || !shards.owns(userId) || withoutCredentials.contains(userId)) {
+                continue;
+            }
+            Account account = accounts.get(userId);
+            if (account == null) {
+                Optional<UserCredentials> creds = credentialsRepo.findByUser(trade.getUser());
+                if (creds.isEmpty()) {
+                    withoutCredentials.add(userId);
+                    continue;
+                }
+                account = new Account(userId, creds.get().getEncryptedApiKey(), creds.get().getEncryptedSecretKey());
+                accounts.put(userId, account);
+            }
+            account.trades.add(trade);
+        }
+        return new ArrayList<>(accounts.values());
+    }
+
+    /** Trades pendentes de uma conta: as ordens abertas vêm num só pedido. */
+    private static final class Account {
+        final UUID userId;
+        final String apiKey;
+        final String secretKey;
+        final List<BotTrade> trades = new ArrayList<>();
+
+        Account(UUID userId, String apiKey, String secretKey) {
+            this.userId = userId;
+            this.apiKey = apiKey;
+            this.secretKey = secretKey;
+        }
+
+        // Par único das trades pendentes (openOrders de um par pesa 6 em vez de 80); null se houver vários
+        String singleSymbol() {
+            String symbol = trades.get(0).getSymbol();
+            for (BotTrade trade : trades) {
+                if (!symbol.equals(trade.getSymbol())) {
+                    return null;
+                }
+            }
+            return symbol;
+        }
+
+        @Override
+        public String toString() {
+            return "user " + userId;
+        }
+    }
+
+    /** Ordens terminadas de uma conta num par: resolvidas com um só pedido à Binance. */
+    private static final class Group {
+        final Account account;
+        final String symbol;
+        final List<BotTrade> trades = new ArrayList<>();
+
+        Group(Account account, String symbol) {
+            this.account = account;
+            this.symbol = symbol;
+        }
+
+        // Desde a ordem pendente mais antiga (as anteriores às últimas 24 h ficam de fora do grupo)
+        long startTime() {
+            long now = System.currentTimeMillis();
+            long oldest = now;
+            for (BotTrade trade : trades) {
+                if (sentAt(trade) != null) {
+                    oldest = Math.min(oldest, sentAt(trade).toInstant().toEpochMilli());
+                }
+            }
+            return Math.max(oldest - LOOKBACK_MARGIN_MS, now - ALL_ORDERS_WINDOW_MS + LOOKBACK_MARGIN_MS);
+        }
+
+        @Override
+        public String toString() {
+            return account + " " + symbol;
+        }
+    }
+}
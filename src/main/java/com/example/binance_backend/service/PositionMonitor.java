@@ -0,0 +1,98 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.service.marketdata.MarketDataCache;
+import com.example.binance_backend.service.marketdata.PriceTickEvent;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * PositionMonitor: loop rápido de TP/SL para as trades abertas.
+ *
+ * Os pares com stream de klines ativo já recebem {@link PriceTickEvent} a cada tick. Para os
+ * restantes (stream desligado ou em baixo) este loop vai buscar, a cada
+ * {@code bot.position-monitor.interval-ms}, o último preço de todos esses pares num único
+ * pedido à Binance e publica um tick por par. A avaliação de entradas (RSI/MACD/Bollinger)
+ * continua a correr só no fecho de cada candle.
+ *
+ * O custo por volta depende do número de pares distintos com trades abertas, não de users.
+ */
+@Component
+public class PositionMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PositionMonitor.class);
+
+    private final ActiveBotRegistry registry;
+    private final MarketDataCache marketDataCache;
+    private final BinanceClient binanceClient;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ShardCoordinator shards;
+    private final boolean enabled;
+    private final String interval;
+
+    public PositionMonitor(
+            ActiveBotRegistry registry,
+            MarketDataCache marketDataCache,
+            BinanceClient binanceClient,
+            ApplicationEventPublisher eventPublisher,
+            ShardCoordinator shards,
+            @Value("${bot.position-monitor.enabled:true}") boolean enabled,
+            @Value("${bot.marketdata.interval:5m}") String interval
+    ) {
+        this.registry = registry;
+        this.marketDataCache = marketDataCache;
+        this.binanceClient = binanceClient;
+        this.eventPublisher = eventPublisher;
+        this.shards = shards;
+        this.enabled = enabled;
+        this.interval = interval;
+    }
+
+    @Scheduled(fixedDelayString = "${bot.position-monitor.interval-ms:2000}")
+    public void watch() {
+        if (!enabled) {
+            return;
+        }
+        Set<String> symbols = symbolsToWatch();
+        if (symbols.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, BigDecimal> prices = binanceClient.fetchPrices(symbols);
+            long now = System.currentTimeMillis();
+            for (Map.Entry<String, BigDecimal> price : prices.entrySet()) {
+                eventPublisher.publishEvent(new PriceTickEvent(price.getKey(), price.getValue().doubleValue(), now));
+            }
+            logger.debug("Monitor de posicoes: {} pares verificados por REST.", prices.size());
+        } catch (Exception e) {
+            logger.error("Erro ao obter precos para o monitor de posicoes {}: {}", symbols, e.getMessage());
+        }
+    }
+
+    // Pares sem stream com pelo menos uma trade aberta (sem OCO na Binance) de um user deste nó
+    Set<String> symbolsToWatch() {
+        Set<String> symbols = new TreeSet<>();
+        for (String symbol : registry.activeSymbols()) {
+            if (marketDataCache.isLive(symbol, interval)) {
+                continue;
+            }
+            for (ActiveBot bot : registry.bySymbol(symbol)) {
+                if (bot.hasOpenTrade() && !bot.hasPendingOrder() && !bot.hasExchangeExit() && shards.owns(bot.userId)) {
+                    symbols.add(symbol);
+                    break;
+                }
+            }
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.binance_backend.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ServerClock: relógio da Binance estimado a partir de amostras de {@code /api/v3/time}.
+ *
+ * Cada amostra dá um offset {@code serverTime - (envio + rtt/2)}; é usado o offset da amostra
+ * com menor RTT entre as últimas {@value #SAMPLES} (a que menos sofreu com a rede). O
+ * timestamp dos pedidos assinados é {@code System.currentTimeMillis() + offset}.
+ *
+ * A Binance rejeita um pedido com -1021 se o timestamp estiver 1 s à frente do servidor ou
+ * mais do que {@code recvWindow} atrás; {@link #timestamp} conta quantos pedidos teriam
+ * sido rejeitados com o relógio local sem correção.
+ */
+public final class ServerClock {
+
+    static final int SAMPLES = 8;
+    // Tolerância da Binance para timestamps à frente do servidor
+    static final long MAX_AHEAD_MS = 1000;
+
+    private final long[] offsets = new long[SAMPLES];
+    private final long[] rtts = new long[SAMPLES];
+    private int next;
+    private int count;
+
+    private volatile long offsetMs;
+    private volatile long rttMs;
+    private volatile boolean synced;
+
+    private final AtomicLong corrected = new AtomicLong();
+    private final AtomicLong resyncs = new AtomicLong();
+
+    /** Hora atual da Binance (estimada), em epoch ms. */
+    public long now() {
+        return System.currentTimeMillis() + offsetMs;
+    }
+
+    /** Timestamp para um pedido assinado com o {@code recvWindow} indicado. */
+    public long timestamp(long recvWindowMs) {
+        long offset = offsetMs;
+        // Sem correção: local à frente (offset < 0) ou atrasado mais do que o recvWindow
+        if (offset <= -MAX_AHEAD_MS || offset > recvWindowMs) {
+            corrected.incrementAndGet();
+        }
+        return System.currentTimeMillis() + offset;
+    }
+
+    /**
+     * Regista uma amostra de {@code /api/v3/time}.
+     *
+     * @param sentAt     hora local de envio do pedido
+     * @param serverTime {@code serverTime} devolvido pela Binance
+     * @param receivedAt hora local da resposta
+     */
+    public synchronized void addSample(long sentAt, long serverTime, long receivedAt) {
+        long rtt = Math.max(0, receivedAt - sentAt);
+        offsets[next] = serverTime - (sentAt + rtt / 2);
+        rtts[next] = rtt;
+        next = (next + 1) % SAMPLES;
+        count = Math.min(count + 1, SAMPLES);
+
+        int best = 0;
+        for (int i = 1; i < count; i++) {
+            if (rtts[i] < rtts[best]) {
+                best = i;
+            }
+        }
+        offsetMs = offsets[best];
+        rttMs = rtts[best];
+        synced = true;
+    }
+
+    /** Esquece as amostras anteriores (ex: o relógio local foi acertado e elas já não valem). */
+    public synchronized void reset() {
+        count = 0;
+        next = 0;
+        resyncs.incrementAndGet();
+    }
+
+    public long getOffsetMs() {
+        return offsetMs;
+    }
+
+    public long getRttMs() {
+        return rttMs;
+    }
+
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /** Pedidos assinados que a Binance teria rejeitado sem a correção do offset. */
+    public long getCorrected() {
+        return corrected.get();
+    }
+
+    /** Ressincronizações forçadas por um erro -1021. */
+    public long getResyncs() {
+        return resyncs.get();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.binance_backend.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * ServerTimeSync: mantém o {@link ServerClock} do BinanceClient acertado com a hora da
+ * Binance, com uma amostra de {@code /api/v3/time} (peso 1) no arranque e a cada
+ * {@code bot.binance.time-sync.interval-ms}.
+ *
+ * Métricas: {@code bot.binance.time.offset} e {@code bot.binance.time.rtt} (ms),
+ * {@code bot.binance.time.corrected} (pedidos que seriam rejeitados sem correção) e
+ * {@code bot.binance.time.resyncs} (ressincronizações por erro -1021).
+ */
+@Component
+public class ServerTimeSync {
+
+    private static final Logger logger = LoggerFactory.getLogger(ServerTimeSync.class);
+
+    // Acima disto o relógio local está claramente desacertado
+    private static final long DRIFT_WARN_MS = 1000;
+
+    private final BinanceClient binanceClient;
+    private final boolean enabled;
+
+    public ServerTimeSync(
+            BinanceClient binanceClient,
+            MeterRegistry meterRegistry,
+            @Value("${bot.binance.time-sync.enabled:true}") boolean enabled
+    ) {
+        this.binanceClient = binanceClient;
+        this.enabled = enabled;
+
+        ServerClock clock = binanceClient.clock();
+        Gauge.builder("bot.binance.time.offset", clock, ServerClock::getOffsetMs)
+                .description("Diferenca (ms) entre a hora da Binance e a hora local")
+                .register(meterRegistry);
+        Gauge.builder("bot.binance.time.rtt", clock, ServerClock::getRttMs)
+                .description("RTT (ms) da amostra de /api/v3/time usada no offset")
+                .register(meterRegistry);
+        FunctionCounter.builder("bot.binance.time.corrected", clock, ServerClock::getCorrected)
+                .description("Pedidos assinados que a Binance teria rejeitado sem corrigir o relogio")
+                .register(meterRegistry);
+        FunctionCounter.builder("bot.binance.time.resyncs", clock, ServerClock::getResyncs)
+                .description("Ressincronizacoes do relogio por erro -1021")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        sync();
+    }
+
+    @Scheduled(fixedDelayString = "${bot.binance.time-sync.interval-ms:60000}",
+               initialDelayString = "${bot.binance.time-sync.interval-ms:60000}")
+    public void sync() {
+        if (!enabled) {
+            return;
+        }
+        ServerClock clock = binanceClient.clock();
+        try {
+            binanceClient.syncServerTime();
+        } catch (Exception e) {
+            logger.warn("Erro ao sincronizar a hora com a Binance: {}", e.getMessage());
+            return;
+        }
+        long offset = clock.getOffsetMs();
+        if (Math.abs(offset) >= DRIFT_WARN_MS) {
+            logger.warn("Relogio local desfasado {} ms da Binance (rtt {} ms); timestamps corrigidos.",
+                    offset, clock.getRttMs());
+        } else {
+            logger.debug("Hora da Binance sincronizada: offset {} ms, rtt {} ms.", offset, clock.getRttMs());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.binance_backend.service.exchange;
+
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.BinanceClient;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ExchangeInfoCache: filtros de ordem ({@link SymbolFilters}) dos pares em uso, em memória.
+ *
+ * - Atualizados em background a cada {@code bot.exchange-info.refresh-ms}, com um único
+ *   pedido a exchangeInfo para todos os pares com bots ativos (e os já em cache).
+ * - Um par que ainda não esteja em cache (bot ativado há pouco) é carregado no primeiro
+ *   {@link #filters} e fica em cache a partir daí.
+ *
+ * Se a Binance não responder, os filtros antigos continuam a ser usados; sem filtros a
+ * ordem segue sem validação local (a Binance valida na mesma).
+ */
+@Component
+public class ExchangeInfoCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExchangeInfoCache.class);
+
+    private final BinanceClient binanceClient;
+    private final ActiveBotRegistry registry;
+    private final ConcurrentHashMap<String, SymbolFilters> bySymbol = new ConcurrentHashMap<>();
+
+    public ExchangeInfoCache(BinanceClient binanceClient, ActiveBotRegistry registry, MeterRegistry meterRegistry) {
+        this.binanceClient = binanceClient;
+        this.registry = registry;
+        Gauge.builder("bot.exchange-info.symbols", bySymbol, Map::size)
+                .description("Pares com filtros de ordem em cache")
+                .register(meterRegistry);
+    }
+
+    /** Filtros de um par; vai à Binance se ainda não estiver em cache. Null se não houver. */
+    public SymbolFilters filters(String symbol) {
+        SymbolFilters cached = bySymbol.get(symbol);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            bySymbol.putAll(binanceClient.fetchSymbolFilters(List.of(symbol)));
+        } catch (Exception e) {
+            logger.warn("Nao foi possivel obter os filtros de {}: {}", symbol, e.getMessage());
+        }
+        return bySymbol.get(symbol);
+    }
+
+    /** Volta a carregar os filtros de todos os pares em uso. */
+    @Scheduled(fixedDelayString = "${bot.exchange-info.refresh-ms:3600000}",
+               initialDelayString = "${bot.exchange-info.initial-delay-ms:5000}")
+    public void refresh() {
+        Set<String> symbols = new TreeSet<>(registry.activeSymbols());
+        symbols.addAll(bySymbol.keySet());
+        if (symbols.isEmpty()) {
+            return;
+        }
+        try {
+            Map<String, SymbolFilters> loaded = binanceClient.fetchSymbolFilters(symbols);
+            bySymbol.putAll(loaded);
+            logger.debug("Filtros de ordem atualizados para {} pares.", loaded.size());
+        } catch (Exception e) {
+            logger.warn("Erro ao atualizar filtros de ordem ({} pares): {}", symbols.size(), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.binance_backend.service.exchange;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * SymbolFilters: filtros de um par em {@code /api/v3/exchangeInfo} que a Binance aplica a
+ * cada ordem (PRICE_FILTER, LOT_SIZE, MARKET_LOT_SIZE, MIN_NOTIONAL/NOTIONAL).
+ *
+ * Permite arredondar quantidade e preço para o tickSize/stepSize do par e verificar os
+ * mínimos/máximos antes de assinar a ordem, em vez de descobrir a violação pela resposta
+ * da Binance. Valores a zero significam filtro desligado.
+ */
+public final class SymbolFilters {
+
+    public final String symbol;
+    // Asset comprado/vendido (ex: BTC em BTCUSDT); null se a Binance não o indicar
+    public final String baseAsset;
+    // Asset em que o par é cotado (ex: USDT em BTCUSDT); null se a Binance não o indicar
+    public final String quoteAsset;
+    // PRICE_FILTER
+    public final BigDecimal minPrice;
+    public final BigDecimal maxPrice;
+    public final BigDecimal tickSize;
+    // LOT_SIZE
+    public final BigDecimal minQty;
+    public final BigDecimal maxQty;
+    public final BigDecimal stepSize;
+    // MARKET_LOT_SIZE (ordens MARKET)
+    public final BigDecimal marketMinQty;
+    public final BigDecimal marketMaxQty;
+    public final BigDecimal marketStepSize;
+    // MIN_NOTIONAL / NOTIONAL
+    public final BigDecimal minNotional;
+    public final boolean minNotionalAppliesToMarket;
+
+    public SymbolFilters(
+            String symbol,
+            String baseAsset,
+            String quoteAsset,
+            BigDecimal minPrice, BigDecimal maxPrice, BigDecimal tickSize,
+            BigDecimal minQty, BigDecimal maxQty, BigDecimal stepSize,
+            BigDecimal marketMinQty, BigDecimal marketMaxQty, BigDecimal marketStepSize,
+            BigDecimal minNotional, boolean minNotionalAppliesToMarket
+    ) {
+        this.symbol = symbol;
+        this.baseAsset = baseAsset;
+        this.quoteAsset = quoteAsset;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.tickSize = tickSize;
+        this.minQty = minQty;
+        this.maxQty = maxQty;
+        this.stepSize = stepSize;
+        this.marketMinQty = marketMinQty;
+        this.marketMaxQty = marketMaxQty;
+        this.marketStepSize = marketStepSize;
+        this.minNotional = minNotional;
+        this.minNotionalAppliesToMarket = minNotionalAppliesToMarket;
+    }
+
+    /** Lê os filtros de um elemento de {@code symbols[]} da resposta de exchangeInfo. */
+    public static SymbolFilters fromJson(JsonNode symbolNode) {
+        BigDecimal minPrice = BigDecimal.ZERO, maxPrice = BigDecimal.ZERO, tickSize = BigDecimal.ZERO;
+        BigDecimal minQty = BigDecimal.ZERO, maxQty = BigDecimal.ZERO, stepSize = BigDecimal.ZERO;
+        BigDecimal marketMinQty = BigDecimal.ZERO, marketMaxQty = BigDecimal.ZERO, marketStepSize = BigDecimal.ZERO;
+        BigDecimal minNotional = BigDecimal.ZERO;
+        boolean appliesToMarket = false;
+
+        for (JsonNode f : symbolNode.path("filters")) {
+            switch (f.path("filterType").asText()) {
+                case "PRICE_FILTER":
+                    minPrice = decimal(f, "minPrice");
+                    maxPrice = decimal(f, "maxPrice");
+                    tickSize = decimal(f, "tickSize");
+                    break;
+                case "LOT_SIZE":
+                    minQty = decimal(f, "minQty");
+                    maxQty = decimal(f, "maxQty");
+                    stepSize = decimal(f, "stepSize");
+                    break;
+                case "MARKET_LOT_SIZE":
+                    marketMinQty = decimal(f, "minQty");
+                    marketMaxQty = decimal(f, "maxQty");
+                    marketStepSize = decimal(f, "stepSize");
+                    break;
+                case "MIN_NOTIONAL":
+                    minNotional = decimal(f, "minNotional");
+                    appliesToMarket = f.path("applyToMarket").asBoolean(false);
+                    break;
+                case "NOTIONAL":
+                    minNotional = decimal(f, "minNotional");
+                    appliesToMarket = f.path("applyMinToMarket").asBoolean(false);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return new SymbolFilters(symbolNode.path("symbol").asText(),
+                symbolNode.hasNonNull("baseAsset") ? symbolNode.path("baseAsset").asText() : null,
+                symbolNode.hasNonNull("quoteAsset") ? symbolNode.path("quoteAsset").asText() : null,
+                minPrice, maxPrice, tickSize,
+                minQty, maxQty, stepSize,
+                marketMinQty, marketMaxQty, marketStepSize,
+                minNotional, appliesToMarket);
+    }
+
+    /** Quantidade arredondada para baixo ao stepSize (o de MARKET_LOT_SIZE em ordens MARKET, se existir). */
+    public BigDecimal roundQuantity(BigDecimal quantity, boolean market) {
+        BigDecimal step = market && isSet(marketStepSize) ? marketStepSize : stepSize;
+        return floorTo(quantity, step);
+    }
+
+    /** Preço arredondado para baixo ao tickSize; null continua null. */
+    public BigDecimal roundPrice(BigDecimal price) {
+        return price == null ? null : floorTo(price, tickSize);
+    }
+
+    /**
+     * Primeira regra violada por uma ordem já arredondada, ou null se a Binance a aceitar.
+     *
+     * @param quantity       quantidade da ordem
+     * @param price          preço da ordem (null em MARKET)
+     * @param referencePrice preço usado no notional quando não há preço (último preço conhecido)
+     * @param market         true para ordens MARKET
+     */
+    public String violation(BigDecimal quantity, BigDecimal price, BigDecimal referencePrice, boolean market) {
+        if (quantity.signum() <= 0) {
+            return "quantidade nula depois de arredondar ao stepSize " + stepSize.toPlainString();
+        }
+
+        BigDecimal min = market && isSet(marketMinQty) ? marketMinQty : minQty;
+        BigDecimal max = market && isSet(marketMaxQty) ? marketMaxQty : maxQty;
+        if (isSet(min) && quantity.compareTo(min) < 0) {
+            return "quantidade " + quantity.toPlainString() + " abaixo do minimo " + min.toPlainString() + " (LOT_SIZE)";
+        }
+        if (isSet(max) && quantity.compareTo(max) > 0) {
+            return "quantidade " + quantity.toPlainString() + " acima do maximo " + max.toPlainString() + " (LOT_SIZE)";
+        }
+
+        if (price != null) {
+            if (isSet(minPrice) && price.compareTo(minPrice) < 0) {
+                return "preco " + price.toPlainString() + " abaixo do minimo " + minPrice.toPlainString() + " (PRICE_FILTER)";
+            }
+            if (isSet(maxPrice) && price.compareTo(maxPrice) > 0) {
+                return "preco " + price.toPlainString() + " acima do maximo " + maxPrice.toPlainString() + " (PRICE_FILTER)";
+            }
+        }
+
+        BigDecimal notionalPrice = price != null ? price : referencePrice;
+        if (isSet(minNotional) && notionalPrice != null && (!market || minNotionalAppliesToMarket)) {
+            BigDecimal notional = quantity.multiply(notionalPrice);
+            if (notional.compareTo(minNotional) < 0) {
+                return "valor " + notional.stripTrailingZeros().toPlainString()
+                        + " abaixo do minimo " + minNotional.toPlainString() + " (NOTIONAL)";
+            }
+        }
+        return null;
+    }
+
+    private static BigDecimal floorTo(BigDecimal value, BigDecimal step) {
+        if (!isSet(step)) {
+            return value;
+        }
+        return value.divide(step, 0, RoundingMode.DOWN).multiply(step).stripTrailingZeros();
+    }
+
+    private static boolean isSet(BigDecimal value) {
+        return value != null && value.signum() > 0;
+    }
+
+    private static BigDecimal decimal(JsonNode node, String field) {
+        String text = node.path(field).asText(null);
+        return text == null || text.isEmpty() ? BigDecimal.ZERO : new BigDecimal(text);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.binance_backend.service.indicator;
+
+/**
+ * Resultado das Bollinger Bands: média (SMA) e bandas superior/inferior.
+ */
+public class BollingerResult {
+    public final double middleBand;
+    public final double upperBand;
+    public final double lowerBand;
+
+    public BollingerResult(double middle, double upper, double lower) {
+        this.middleBand = middle;
+        this.upperBand = upper;
+        this.lowerBand = lower;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.binance_backend.service.indicator;
+
+import com.example.binance_backend.service.marketdata.DoubleSeries;
+
+/**
+ * Indicators: RSI, EMA e Bollinger Bands calculados em {@code double} sobre uma
+ * {@link DoubleSeries} (normalmente os closes de um CandleSeries, sem cópia).
+ *
+ * Seguem as mesmas fórmulas da implementação original em BigDecimal (escala 8, HALF_UP),
+ * mas sem alocar nada por operação. A conversão para BigDecimal fica para o ponto de
+ * decisão, onde os valores são comparados com os limites definidos pelo user.
+ * O MACD incremental está em {@link MacdState} / {@link MacdEngine}.
+ */
+public final class Indicators {
+
+    private Indicators() {
+    }
+
+    /**
+     * RSI simples (médias aritméticas de ganhos e perdas) dos últimos {@code period} closes.
+     * Devolve 0 se não houver dados suficientes e 100 se não houver perdas.
+     */
+    public static double rsi(DoubleSeries closes, int period) {
+        int n = closes.size();
+        if (n <= period) {
+            return 0;
+        }
+        double gainSum = 0;
+        double lossSum = 0;
+        for (int i = n - period; i < n; i++) {
+            double change = closes.get(i) - closes.get(i - 1);
+            if (change > 0) {
+                gainSum += change;
+            } else {
+                lossSum -= change;
+            }
+        }
+        double avgGain = gainSum / period;
+        double avgLoss = lossSum / period;
+        if (avgLoss == 0) {
+            return 100;
+        }
+        double rs = avgGain / avgLoss;
+        return 100 - 100 / (1 + rs);
+    }
+
+    /**
+     * EMA de toda a série, semeada com a SMA dos primeiros {@code period} valores.
+     * Com menos de {@code period} valores devolve o último valor.
+     */
+    public static double ema(DoubleSeries values, int period) {
+        int n = values.size();
+        if (n < period) {
+            return values.get(n - 1);
+        }
+        double sum = 0;
+        for (int i = 0; i < period; i++) {
+            sum += values.get(i);
+        }
+        double ema = sum / period;
+        double k = 2.0 / (period + 1);
+        for (int i = period; i < n; i++) {
+            ema = values.get(i) * k + ema * (1 - k);
+        }
+        return ema;
+    }
+
+    /**
+     * MACD de uma janela completa (uma passagem, O(n)). Equivale a alimentar um
+     * {@link MacdState} novo com todos os valores da janela.
+     */
+    public static MacdResult macd(DoubleSeries closes, int fastPeriod, int slowPeriod, int signalPeriod) {
+        MacdState state = new MacdState(fastPeriod, slowPeriod, signalPeriod);
+        for (int i = 0; i < closes.size(); i++) {
+            state.update(closes.get(i));
+        }
+        return state.current();
+    }
+
+    /**
+     * Bollinger Bands dos últimos {@code period} closes (desvio padrão populacional).
+     * Devolve bandas a zero se não houver dados suficientes.
+     */
+    public static BollingerResult bollinger(DoubleSeries closes, int period, double multiplier) {
+        int n = closes.size();
+        if (n < period) {
+            return new BollingerResult(0, 0, 0);
+        }
+        double sum = 0;
+        for (int i = n - period; i < n; i++) {
+            sum += closes.get(i);
+        }
+        double sma = sum / period;
+        double variance = 0;
+        for (int i = n - period; i < n; i++) {
+            double diff = closes.get(i) - sma;
+            variance += diff * diff;
+        }
+        double stdDev = Math.sqrt(variance / period);
+        return new BollingerResult(sma, sma + stdDev * multiplier, sma - stdDev * multiplier);
+    }
+}
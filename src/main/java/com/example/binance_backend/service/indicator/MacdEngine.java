@@ -0,0 +1,69 @@
+package com.example.binance_backend.service.indicator;
+
+import com.example.binance_backend.service.marketdata.CandleSeries;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MacdEngine: MACD(12, 26, 9) por (symbol, interval) com a mesma semântica do cálculo antigo.
+ *
+ * O cálculo antigo semeava as EMAs no início da janela recebida (os últimos
+ * {@code BotService.CANDLE_LIMIT} candles) e recalculava-as para cada prefixo (O(n²)).
+ * Aqui o estado é também semeado no primeiro candle da janela, mas numa única passagem (O(n)),
+ * e só quando a janela muda: enquanto o último candle está em formação, cada atualização do
+ * stream aplica apenas esse close de forma provisória sobre o estado guardado (O(1)).
+ *
+ * Como o estado depende só da janela, o resultado não depende de há quanto tempo o processo
+ * está a correr nem da réplica que avalia o par.
+ */
+@Component
+public class MacdEngine {
+
+    public static final int FAST_PERIOD = 12;
+    public static final int SLOW_PERIOD = 26;
+    public static final int SIGNAL_PERIOD = 9;
+
+    private final ConcurrentHashMap<String, Tracked> states = new ConcurrentHashMap<>();
+
+    /**
+     * Devolve o MACD da janela, incluindo o candle mais recente.
+     *
+     * @param candles janela de candles (do mais antigo ao mais recente), pelo menos SIGNAL_PERIOD
+     */
+    public MacdResult macd(String symbol, String interval, CandleSeries.View candles) {
+        Tracked tracked = states.computeIfAbsent(symbol + ":" + interval, k -> new Tracked());
+        int n = candles.size();
+        long firstOpenTime = candles.openTime(0);
+        long lastSeededOpenTime = n > 1 ? candles.openTime(n - 2) : Long.MIN_VALUE;
+
+        synchronized (tracked) {
+            if (tracked.state == null || tracked.size != n
+                    || tracked.firstOpenTime != firstOpenTime || tracked.lastOpenTime != lastSeededOpenTime) {
+                // Janela nova: semeia de novo com todos os candles menos o último
+                MacdState state = new MacdState(FAST_PERIOD, SLOW_PERIOD, SIGNAL_PERIOD);
+                for (int i = 0; i < n - 1; i++) {
+                    state.update(candles.close(i));
+                }
+                tracked.state = state;
+                tracked.size = n;
+                tracked.firstOpenTime = firstOpenTime;
+                tracked.lastOpenTime = lastSeededOpenTime;
+            }
+            // O último candle (fechado ou em formação) entra sem alterar o estado
+            return tracked.state.peek(candles.lastClose());
+        }
+    }
+
+    /** Remove o estado de (symbol, interval), forçando nova semente no próximo cálculo. */
+    public void reset(String symbol, String interval) {
+        states.remove(symbol + ":" + interval);
+    }
+
+    private static final class Tracked {
+        MacdState state;
+        int size;
+        long firstOpenTime;
+        long lastOpenTime;
+    }
+}
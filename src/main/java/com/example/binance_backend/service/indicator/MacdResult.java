@@ -0,0 +1,16 @@
+package com.example.binance_backend.service.indicator;
+
+/**
+ * Resultado do MACD: linha MACD (EMA rápida - EMA lenta), linha de sinal e histograma.
+ */
+public class MacdResult {
+    public final double macdLine;
+    public final double signalLine;
+    public final double histogram;
+
+    public MacdResult(double macdLine, double signalLine, double histogram) {
+        this.macdLine = macdLine;
+        this.signalLine = signalLine;
+        this.histogram = histogram;
+    }
+}
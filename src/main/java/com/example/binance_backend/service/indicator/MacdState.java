@@ -0,0 +1,116 @@
+package com.example.binance_backend.service.indicator;
+
+/**
+ * Estado corrente do MACD para uma série: EMA rápida, EMA lenta e a janela da linha de sinal,
+ * tudo em {@code double}. Cada close novo atualiza o estado em O(1), sem alocações.
+ *
+ * Reproduz as convenções do cálculo original (BotService.calculateMACD):
+ * - EMA com menos de {@code period} valores = último valor recebido;
+ * - EMA semeada com a SMA dos primeiros {@code period} valores, k = 2 / (period + 1);
+ * - linha de sinal = calculateEMA das últimas {@code signalPeriod} diferenças, ou seja,
+ *   a média simples dessa janela.
+ */
+public final class MacdState {
+
+    private final Ema fast;
+    private final Ema slow;
+    private final int signalPeriod;
+    private final double[] diffs;
+    private double diffSum;
+    private long count;
+
+    public MacdState(int fastPeriod, int slowPeriod, int signalPeriod) {
+        this.fast = new Ema(fastPeriod);
+        this.slow = new Ema(slowPeriod);
+        this.signalPeriod = signalPeriod;
+        this.diffs = new double[signalPeriod];
+    }
+
+    /** Acrescenta um close definitivo (candle fechado). */
+    public void update(double close) {
+        fast.update(close);
+        slow.update(close);
+        double diff = fast.value - slow.value;
+        int slot = (int) (count % signalPeriod);
+        // Recalcula a soma da janela em vez de subtrair o valor que sai, para não acumular erro
+        diffs[slot] = diff;
+        count++;
+        diffSum = windowSum();
+    }
+
+    /**
+     * Calcula o MACD como se {@code close} fosse o próximo valor, sem alterar o estado
+     * (usado para o candle ainda em formação).
+     */
+    public MacdResult peek(double close) {
+        double macdLine = fast.peek(close) - slow.peek(close);
+        int slot = (int) (count % signalPeriod);
+        double sum = diffSum - diffs[slot] + macdLine;
+        return result(macdLine, sum, count + 1);
+    }
+
+    /** MACD com o último close já aplicado via {@link #update}. */
+    public MacdResult current() {
+        return result(fast.value - slow.value, diffSum, count);
+    }
+
+    /** Número de closes aplicados desde a criação do estado. */
+    public long count() {
+        return count;
+    }
+
+    private double windowSum() {
+        double sum = 0;
+        for (double d : diffs) {
+            sum += d;
+        }
+        return sum;
+    }
+
+    private MacdResult result(double macdLine, double sum, long n) {
+        if (n < signalPeriod) {
+            throw new IllegalStateException("MACD precisa de pelo menos " + signalPeriod + " valores");
+        }
+        double signalLine = sum / signalPeriod;
+        return new MacdResult(macdLine, signalLine, macdLine - signalLine);
+    }
+
+    /**
+     * EMA incremental com as mesmas convenções de Indicators.ema.
+     */
+    private static final class Ema {
+        private final int period;
+        private final double k;
+        private double seedSum;
+        private long count;
+        private double value;
+
+        Ema(int period) {
+            this.period = period;
+            this.k = 2.0 / (period + 1);
+        }
+
+        void update(double x) {
+            count++;
+            if (count < period) {
+                seedSum += x;
+                value = x;
+            } else if (count == period) {
+                value = (seedSum + x) / period;
+            } else {
+                value = x * k + value * (1 - k);
+            }
+        }
+
+        double peek(double x) {
+            long next = count + 1;
+            if (next < period) {
+                return x;
+            }
+            if (next == period) {
+                return (seedSum + x) / period;
+            }
+            return x * k + value * (1 - k);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.binance_backend.service.indicator;
+
+import com.example.binance_backend.service.marketdata.CandleSeries;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * MarketSnapshot: preço e indicadores de um par num ciclo do bot, calculados uma vez e
+ * partilhados por todos os users que operam esse par. Cada par é avaliado uma única vez por
+ * candle fechado, por isso 1000 users no mesmo par custam um só cálculo por candle.
+ *
+ * MACD e Bollinger têm parâmetros fixos e são calculados à cabeça; o RSI depende do período
+ * de cada user e é memorizado por período. Não é thread-safe: cada snapshot é avaliado por
+ * uma única thread.
+ */
+public final class MarketSnapshot {
+
+    public final String symbol;
+    public final CandleSeries.View candles;
+    public final double lastClose;
+    public final BigDecimal lastPrice;
+    public final MacdResult macd;
+    public final BollingerResult bollinger;
+    public final BigDecimal bollingerLower;
+
+    private final Map<Integer, Double> rsiByPeriod = new HashMap<>();
+
+    public MarketSnapshot(String symbol, String interval, CandleSeries.View candles, MacdEngine macdEngine) {
+        this.symbol = symbol;
+        this.candles = candles;
+        this.lastClose = candles.lastClose();
+        this.lastPrice = BigDecimal.valueOf(lastClose);
+        this.macd = macdEngine.macd(symbol, interval, candles);
+        this.bollinger = Indicators.bollinger(candles.closes(), 20, 2.0);
+        this.bollingerLower = BigDecimal.valueOf(bollinger.lowerBand);
+    }
+
+    /** RSI com o período dado (calculado no primeiro pedido de cada período). */
+    public double rsi(int period) {
+        return rsiByPeriod.computeIfAbsent(period, p -> Indicators.rsi(candles.closes(), p));
+    }
+}
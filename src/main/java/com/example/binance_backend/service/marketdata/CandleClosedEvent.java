@@ -0,0 +1,28 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * Fecho de um candle de (symbol, interval): vindo do stream (kline com {@code x=true}) ou,
+ * para pares sem stream, detetado pelo {@link MarketEventPublisher} na fronteira do intervalo.
+ */
+public final class CandleClosedEvent {
+
+    public final String symbol;
+    public final String interval;
+    public final long openTime;
+    public final long closeTime;
+    // Momento (epoch ms) em que o fecho foi conhecido: event time da Binance ou fronteira do intervalo
+    public final long eventTime;
+
+    public CandleClosedEvent(String symbol, String interval, long openTime, long closeTime, long eventTime) {
+        this.symbol = symbol;
+        this.interval = interval;
+        this.openTime = openTime;
+        this.closeTime = closeTime;
+        this.eventTime = eventTime;
+    }
+
+    @Override
+    public String toString() {
+        return "CandleClosedEvent{" + symbol + " " + interval + " openTime=" + openTime + "}";
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * CandleSeries: buffer circular de capacidade fixa com os candles de um (symbol, interval),
+ * guardados em arrays primitivos (um array por campo: openTime, OHLCV, closeTime e número
+ * de trades) em vez de objetos Candle com BigDecimal.
+ *
+ * - upsert(...) acrescenta um candle novo em O(1), ou substitui o último (candle em formação).
+ * - tail(n) devolve uma {@link View} com uma cópia dos últimos n candles.
+ *
+ * As escritas atualizam os arrays no lugar (o candle em formação) ou deslocam candles
+ * (backfill fora de ordem), por isso tail(n) copia a janela dentro do mesmo lock: uma vista
+ * nunca mistura candles de duas revisões nem muda enquanto um indicador a está a ler.
+ * A cópia são alguns arrays de n posições por avaliação do par, partilhada por todos os users.
+ */
+public final class CandleSeries implements KlineSink {
+
+    private final int capacity;
+    private final long[] openTime;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] volume;
+    private final long[] closeTime;
+    private final long[] trades;
+
+    private int start;      // posição física do candle mais antigo
+    private int size;
+    private long revision;  // incrementado a cada escrita
+
+    public CandleSeries(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacidade invalida: " + capacity);
+        }
+        this.capacity = capacity;
+        this.openTime = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.closeTime = new long[capacity];
+        this.trades = new long[capacity];
+    }
+
+    /**
+     * Insere ou atualiza o candle com este openTime. O caso normal (candle novo no fim)
+     * é O(1); candles já existentes são localizados por pesquisa binária, e candles fora
+     * de ordem vindos de um backfill são colocados na posição certa.
+     */
+    @Override
+    public synchronized void upsert(long time, double o, double h, double l, double c, double v,
+                                    long closeAt, long tradeCount) {
+        revision++;
+        if (size == 0 || time > openTime[physical(size - 1)]) {
+            int pos;
+            if (size < capacity) {
+                pos = physical(size);
+                size++;
+            } else {
+                // Cheio: o novo candle ocupa o lugar do mais antigo
+                pos = start;
+                start = (start + 1) % capacity;
+            }
+            write(pos, time, o, h, l, c, v, closeAt, tradeCount);
+            return;
+        }
+
+        if (time == openTime[physical(size - 1)]) {
+            // Atualização do candle em formação
+            write(physical(size - 1), time, o, h, l, c, v, closeAt, tradeCount);
+            return;
+        }
+
+        // Candle já conhecido (ex: REST a re-enviar candles sobrepostos): pesquisa binária
+        int insertAt = lowerBound(time);
+        if (insertAt < size && openTime[physical(insertAt)] == time) {
+            write(physical(insertAt), time, o, h, l, c, v, closeAt, tradeCount);
+            return;
+        }
+
+        if (size == capacity) {
+            if (insertAt == 0) {
+                return; // mais antigo do que tudo o que cabe no buffer
+            }
+            start = (start + 1) % capacity;
+            size--;
+            insertAt--;
+        }
+        for (int j = size; j > insertAt; j--) {
+            copy(physical(j - 1), physical(j));
+        }
+        size++;
+        write(physical(insertAt), time, o, h, l, c, v, closeAt, tradeCount);
+    }
+
+    /** Cópia dos últimos {@code count} candles (ou todos, se houver menos). */
+    public synchronized View tail(int count) {
+        int n = Math.min(count, size);
+        View view = new View(n);
+        int first = size - n;
+        for (int i = 0; i < n; i++) {
+            int pos = physical(first + i);
+            view.openTime[i] = openTime[pos];
+            view.open[i] = open[pos];
+            view.high[i] = high[pos];
+            view.low[i] = low[pos];
+            view.close[i] = close[pos];
+            view.volume[i] = volume[pos];
+            view.closeTime[i] = closeTime[pos];
+            view.trades[i] = trades[pos];
+        }
+        return view;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /** openTime do candle mais recente, ou -1 se a série estiver vazia. */
+    public synchronized long lastOpenTime() {
+        return size == 0 ? -1 : openTime[physical(size - 1)];
+    }
+
+    /** Contador de escritas: muda sempre que algum candle é acrescentado ou atualizado. */
+    public synchronized long revision() {
+        return revision;
+    }
+
+    // Primeiro índice lógico com openTime >= time
+    private int lowerBound(long time) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (openTime[physical(mid)] < time) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int physical(int logical) {
+        return (start + logical) % capacity;
+    }
+
+    private void write(int pos, long time, double o, double h, double l, double c, double v,
+                       long closeAt, long tradeCount) {
+        openTime[pos] = time;
+        open[pos] = o;
+        high[pos] = h;
+        low[pos] = l;
+        close[pos] = c;
+        volume[pos] = v;
+        closeTime[pos] = closeAt;
+        trades[pos] = tradeCount;
+    }
+
+    private void copy(int from, int to) {
+        write(to, openTime[from], open[from], high[from], low[from], close[from], volume[from],
+                closeTime[from], trades[from]);
+    }
+
+    /**
+     * Janela só de leitura com os candles copiados da série, indexada de 0 (mais antigo)
+     * a size()-1 (mais recente). Não é afetada por escritas posteriores na série.
+     */
+    public static final class View {
+        private final long[] openTime;
+        private final double[] open;
+        private final double[] high;
+        private final double[] low;
+        private final double[] close;
+        private final double[] volume;
+        private final long[] closeTime;
+        private final long[] trades;
+
+        private View(int size) {
+            this.openTime = new long[size];
+            this.open = new double[size];
+            this.high = new double[size];
+            this.low = new double[size];
+            this.close = new double[size];
+            this.volume = new double[size];
+            this.closeTime = new long[size];
+            this.trades = new long[size];
+        }
+
+        public int size() {
+            return close.length;
+        }
+
+        public long openTime(int i) { return openTime[at(i)]; }
+        public double open(int i)   { return open[at(i)]; }
+        public double high(int i)   { return high[at(i)]; }
+        public double low(int i)    { return low[at(i)]; }
+        public double close(int i)  { return close[at(i)]; }
+        public double volume(int i) { return volume[at(i)]; }
+        public long closeTime(int i) { return closeTime[at(i)]; }
+        public long trades(int i)    { return trades[at(i)]; }
+
+        /** Preço de fecho do candle mais recente da janela. */
+        public double lastClose() {
+            return close(size() - 1);
+        }
+
+        /** Os closes da janela como DoubleSeries (sem nova cópia). */
+        public DoubleSeries closes() {
+            return DoubleSeries.of(close);
+        }
+
+        private int at(int i) {
+            if (i < 0 || i >= size()) {
+                throw new IndexOutOfBoundsException("Indice " + i + " fora da janela de " + size() + " candles");
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * Vista só de leitura sobre uma sequência de valores primitivos (ex: closes de um CandleSeries),
+ * indexada do mais antigo (0) para o mais recente ({@code size() - 1}). Não copia os dados.
+ */
+public interface DoubleSeries {
+
+    int size();
+
+    double get(int i);
+
+    /** Último valor da série. */
+    default double last() {
+        return get(size() - 1);
+    }
+
+    /** Vista sobre um array (sem cópia). */
+    static DoubleSeries of(double... values) {
+        return new DoubleSeries() {
+            @Override
+            public int size() {
+                return values.length;
+            }
+
+            @Override
+            public double get(int i) {
+                return values[i];
+            }
+        };
+    }
+}
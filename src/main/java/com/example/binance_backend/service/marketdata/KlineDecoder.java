@@ -0,0 +1,158 @@
+package com.example.binance_backend.service.marketdata;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * KlineDecoder: descodifica a resposta de /api/v3/klines token a token (JsonParser),
+ * escrevendo cada candle diretamente num {@link KlineSink}. Não constrói a árvore JSON
+ * nem Strings por campo: os preços (que a Binance envia como strings) são lidos a partir
+ * do buffer de caracteres do parser.
+ *
+ * Formato de cada linha:
+ * [openTime, "open", "high", "low", "close", "volume", closeTime, "quoteVolume", trades,
+ *  "takerBuyBaseVolume", "takerBuyQuoteVolume", "ignore"]
+ */
+public final class KlineDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    // Potências de 10 exatamente representáveis em double
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    // Acima disto a mantissa deixa de ser exata em double
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private KlineDecoder() {
+    }
+
+    /**
+     * Descodifica o corpo completo de uma resposta de klines.
+     *
+     * @return número de candles escritos no sink
+     */
+    public static int decode(byte[] body, KlineSink sink) throws IOException {
+        try (JsonParser parser = JSON.createParser(body)) {
+            return decode(parser, sink);
+        }
+    }
+
+    /**
+     * Descodifica um array de klines a partir da posição atual do parser.
+     *
+     * @return número de candles escritos no sink
+     */
+    public static int decode(JsonParser p, KlineSink sink) throws IOException {
+        if (p.nextToken() != JsonToken.START_ARRAY) {
+            throw new JsonParseException(p, "Resposta de klines nao e um array");
+        }
+        int count = 0;
+        JsonToken token;
+        while ((token = p.nextToken()) == JsonToken.START_ARRAY) {
+            long openTime  = nextLong(p);
+            double open    = nextDouble(p);
+            double high    = nextDouble(p);
+            double low     = nextDouble(p);
+            double close   = nextDouble(p);
+            double volume  = nextDouble(p);
+            long closeTime = nextLong(p);
+            p.nextToken();                 // quoteVolume (não usado)
+            long trades    = nextLong(p);
+            // Restantes campos (taker volumes, "ignore") e eventuais campos novos da API
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                p.skipChildren();
+            }
+            sink.upsert(openTime, open, high, low, close, volume, closeTime, trades);
+            count++;
+        }
+        if (token != JsonToken.END_ARRAY) {
+            throw new JsonParseException(p, "Linha de kline invalida: " + token);
+        }
+        return count;
+    }
+
+    private static long nextLong(JsonParser p) throws IOException {
+        JsonToken t = p.nextToken();
+        if (t == JsonToken.VALUE_NUMBER_INT) {
+            return p.getLongValue();
+        }
+        if (t == JsonToken.VALUE_STRING) {
+            return (long) parseDecimal(p);
+        }
+        throw new JsonParseException(p, "Esperado inteiro, encontrado " + t);
+    }
+
+    private static double nextDouble(JsonParser p) throws IOException {
+        JsonToken t = p.nextToken();
+        if (t == JsonToken.VALUE_STRING) {
+            return parseDecimal(p);
+        }
+        if (t == JsonToken.VALUE_NUMBER_INT || t == JsonToken.VALUE_NUMBER_FLOAT) {
+            return p.getDoubleValue();
+        }
+        throw new JsonParseException(p, "Esperado numero, encontrado " + t);
+    }
+
+    /**
+     * Converte a string atual do parser (ex: "27123.45000000") em double sem criar a String.
+     * Com mantissa até 2^53 e até 22 casas decimais, mantissa / 10^casas é arredondado
+     * corretamente (o mesmo resultado que Double.parseDouble); fora disso usa o caminho lento.
+     */
+    static double parseDecimal(JsonParser p) throws IOException {
+        char[] buf = p.getTextCharacters();
+        int off = p.getTextOffset();
+        int len = p.getTextLength();
+        double value = parseDecimal(buf, off, len);
+        if (Double.isNaN(value)) {
+            return Double.parseDouble(new String(buf, off, len));
+        }
+        return value;
+    }
+
+    /** Devolve NaN quando o texto não cabe no caminho rápido. */
+    static double parseDecimal(char[] buf, int off, int len) {
+        int i = off;
+        int end = off + len;
+        boolean negative = false;
+        if (i < end && (buf[i] == '-' || buf[i] == '+')) {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int decimals = 0;
+        boolean seenDot = false;
+        boolean seenDigit = false;
+        for (; i < end; i++) {
+            char ch = buf[i];
+            if (ch >= '0' && ch <= '9') {
+                mantissa = mantissa * 10 + (ch - '0');
+                if (mantissa >= MAX_EXACT_MANTISSA) {
+                    return Double.NaN;
+                }
+                if (seenDot) {
+                    decimals++;
+                }
+                seenDigit = true;
+            } else if (ch == '.' && !seenDot) {
+                seenDot = true;
+            } else {
+                return Double.NaN; // expoente ou caracter inesperado
+            }
+        }
+        if (!seenDigit || decimals >= POW10.length) {
+            return Double.NaN;
+        }
+        double value = decimals == 0 ? mantissa : mantissa / POW10[decimals];
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * Utilitários para os intervalos de kline da Binance ("1m", "5m", "1h", "1d", ...).
+ */
+public final class KlineInterval {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR   = 60 * MINUTE;
+    private static final long DAY    = 24 * HOUR;
+
+    private KlineInterval() {
+    }
+
+    /**
+     * Converte um intervalo da Binance para milissegundos.
+     *
+     * @param interval intervalo (ex: "5m", "1h", "1d", "1w", "1M")
+     * @return duração de um candle em milissegundos
+     * @throws IllegalArgumentException se o intervalo nao for reconhecido
+     */
+    public static long toMillis(String interval) {
+        if (interval == null || interval.length() < 2) {
+            throw new IllegalArgumentException("Intervalo invalido: " + interval);
+        }
+        char unit = interval.charAt(interval.length() - 1);
+        long amount;
+        try {
+            amount = Long.parseLong(interval.substring(0, interval.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Intervalo invalido: " + interval, e);
+        }
+        switch (unit) {
+            case 's': return amount * 1000L;
+            case 'm': return amount * MINUTE;
+            case 'h': return amount * HOUR;
+            case 'd': return amount * DAY;
+            case 'w': return amount * 7 * DAY;
+            case 'M': return amount * 30 * DAY; // aproximado: a Binance fecha no fim do mês civil
+            default:
+                throw new IllegalArgumentException("Intervalo invalido: " + interval);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * Destino dos candles descodificados pelo {@link KlineDecoder}: recebe os campos já
+ * em primitivos, sem objetos intermédios. O {@link CandleSeries} é a implementação normal.
+ */
+@FunctionalInterface
+public interface KlineSink {
+
+    void upsert(long openTime, double open, double high, double low, double close, double volume,
+                long closeTime, long trades);
+}
@@ -0,0 +1,230 @@
+package com.example.binance_backend.service.marketdata;
+
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * KlineStreamService: mantém os candles em memória através dos streams
+ * {@code <symbol>@kline_<interval>} da Binance, em vez de fazer polling REST a cada ciclo.
+ *
+ * - Subscreve todos os pares referenciados por BotSettings de bots ativos (revisto periodicamente).
+ * - Cada mensagem de kline é aplicada no MarketDataCache e passada ao MarketEventPublisher
+ *   (fecho de candle / tick de preço).
+ * - Ao (re)ligar, recupera por REST os candles perdidos durante a desconexão (gap backfill).
+ * - Em caso de erro ou fecho da ligação, volta a ligar com backoff exponencial.
+ */
+@Service
+public class KlineStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(KlineStreamService.class);
+
+    private final MarketDataCache marketDataCache;
+    private final MarketEventPublisher marketEvents;
+    private final ActiveBotRegistry registry;
+    private final WebSocketClient webSocketClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final String streamUrl;
+    private final String interval;
+
+    // Pares atualmente subscritos e ligação correspondente
+    private Set<String> subscribed = Collections.emptySet();
+    private Disposable connection;
+    private volatile boolean connected;
+    // Sessão WebSocket atual: o fecho de uma sessão anterior não mexe no estado da atual
+    private final AtomicLong sessions = new AtomicLong();
+    private long currentSession;
+
+    public KlineStreamService(
+            MarketDataCache marketDataCache,
+            MarketEventPublisher marketEvents,
+            ActiveBotRegistry registry,
+            @Value("${bot.marketdata.stream.enabled:true}") boolean enabled,
+            @Value("${bot.marketdata.stream.url:wss://stream.binance.com:9443}") String streamUrl,
+            @Value("${bot.marketdata.interval:5m}") String interval
+    ) {
+        this.marketDataCache = marketDataCache;
+        this.marketEvents = marketEvents;
+        this.registry = registry;
+        this.webSocketClient = new ReactorNettyWebSocketClient();
+        this.enabled = enabled;
+        this.streamUrl = streamUrl;
+        this.interval = interval;
+    }
+
+    /**
+     * Revê periodicamente os pares com bots ativos e, se mudaram, volta a ligar
+     * com o novo conjunto de streams.
+     */
+    @Scheduled(fixedDelayString = "${bot.marketdata.stream.refresh-ms:60000}")
+    public void refreshSubscriptions() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            subscribe(registry.activeSymbols());
+        } catch (Exception e) {
+            logger.error("Erro ao atualizar subscricoes de klines: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Define o conjunto de pares a acompanhar. Se for igual ao atual não faz nada.
+     */
+    public synchronized void subscribe(Set<String> symbols) {
+        Set<String> wanted = symbols.stream()
+                .map(s -> s.toUpperCase(Locale.ROOT))
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (wanted.equals(subscribed)) {
+            return;
+        }
+
+        disconnect();
+        subscribed = Collections.unmodifiableSet(wanted);
+        if (wanted.isEmpty()) {
+            logger.info("Sem pares ativos; stream de klines desligado.");
+            return;
+        }
+
+        URI uri = URI.create(streamUrl + "/stream?streams=" + wanted.stream()
+                .map(s -> s.toLowerCase(Locale.ROOT) + "@kline_" + interval)
+                .collect(Collectors.joining("/")));
+        logger.info("A ligar stream de klines {} para {} pares: {}", interval, wanted.size(), wanted);
+
+        Set<String> symbolsForConnection = subscribed;
+        connection = Mono.defer(() -> webSocketClient.execute(uri, session -> handle(session, symbolsForConnection)))
+                // A Binance fecha as ligações a cada 24h: nesse caso volta a ligar de imediato
+                .repeat()
+                // transientErrors: depois de uma ligação bem sucedida o backoff recomeça em 1s
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30))
+                        .transientErrors(true)
+                        .doBeforeRetry(rs -> logger.warn("Stream de klines caiu ({}); nova tentativa #{}",
+                                rs.failure().getMessage(), rs.totalRetriesInARow() + 1)))
+                .subscribe();
+    }
+
+    /** Pares atualmente subscritos. */
+    public Set<String> getSubscribed() {
+        return subscribed;
+    }
+
+    /** Indica se existe uma ligação ativa ao stream. */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @PreDestroy
+    public synchronized void disconnect() {
+        if (connection != null) {
+            connection.dispose();
+            connection = null;
+        }
+        currentSession = 0;
+        connected = false;
+        markLive(subscribed, false);
+    }
+
+    Mono<Void> handle(WebSocketSession session, Set<String> symbols) {
+        long id = startSession();
+        // Antes de processar mensagens, preenche o buraco deixado pela desconexão.
+        // As mensagens que chegarem entretanto ficam em buffer na ligação.
+        Mono<Void> backfill = Mono.fromRunnable(() -> {
+                    for (String symbol : symbols) {
+                        int fetched = marketDataCache.backfill(symbol, interval);
+                        logger.debug("Backfill REST {} {}: {} candles", symbol, interval, fetched);
+                    }
+                    setSessionLive(id, symbols, true);
+                })
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+
+        Flux<Void> messages = session.receive()
+                .map(WebSocketMessage::getPayloadAsText)
+                .doOnNext(this::onMessage)
+                .thenMany(Flux.empty());
+
+        return backfill.thenMany(messages)
+                .doFinally(signal -> setSessionLive(id, symbols, false))
+                .then();
+    }
+
+    private synchronized long startSession() {
+        currentSession = sessions.incrementAndGet();
+        return currentSession;
+    }
+
+    // Só a sessão atual liga/desliga o estado; uma sessão já substituída (ou desligada) é ignorada
+    private synchronized void setSessionLive(long id, Set<String> symbols, boolean live) {
+        if (id != currentSession) {
+            return;
+        }
+        markLive(symbols, live);
+        connected = live;
+    }
+
+    /**
+     * Processa uma mensagem do combined stream:
+     * {"stream":"btcusdt@kline_5m","data":{"e":"kline","s":"BTCUSDT","k":{"t":...,"o":"...",...}}}
+     */
+    void onMessage(String payload) {
+        try {
+            JsonNode root = objectMapper.readTree(payload);
+            JsonNode data = root.has("data") ? root.get("data") : root;
+            JsonNode k = data.get("k");
+            if (k == null) {
+                return;
+            }
+            String symbol = k.get("s").asText();
+            String klineInterval = k.get("i").asText();
+            long openTime = k.get("t").asLong();
+            double close = Double.parseDouble(k.get("c").asText());
+            long closeTime = k.get("T").asLong();
+            marketDataCache.onCandle(
+                    symbol,
+                    klineInterval,
+                    openTime,
+                    Double.parseDouble(k.get("o").asText()),
+                    Double.parseDouble(k.get("h").asText()),
+                    Double.parseDouble(k.get("l").asText()),
+                    close,
+                    Double.parseDouble(k.get("v").asText()),
+                    closeTime,
+                    k.get("n").asLong()
+            );
+            long eventTime = data.has("E") ? data.get("E").asLong() : System.currentTimeMillis();
+            marketEvents.onKline(symbol, klineInterval, openTime, close, closeTime, k.path("x").asBoolean(false), eventTime);
+        } catch (Exception e) {
+            logger.warn("Mensagem de kline invalida ignorada: {}", e.getMessage());
+        }
+    }
+
+    private void markLive(Set<String> symbols, boolean live) {
+        for (String symbol : symbols) {
+            marketDataCache.setLive(symbol, interval, live);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.binance_backend.service.marketdata;
+
+import com.example.binance_backend.service.BinanceClient;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MarketDataCache: camada partilhada entre o BotService e o BinanceClient.
+ *
+ * Os candles são guardados por (symbol, interval) num {@link CandleSeries} (arrays primitivos,
+ * capacidade fixa) e partilhados por todos os users que operam o mesmo par. Há duas formas
+ * de os manter atualizados:
+ *
+ * - REST: o par é pedido à Binance no máximo uma vez por candle, e a resposta é
+ *         reutilizada até ao fecho do candle seguinte.
+ * - stream: o KlineStreamService empurra cada atualização de kline via {@link #onCandle};
+ *           enquanto o par estiver "live" os pedidos são sempre servidos da memória.
+ */
+@Service
+public class MarketDataCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarketDataCache.class);
+
+    // Máximo de candles guardados por (symbol, interval)
+    static final int MAX_CANDLES = 500;
+
+    private final BinanceClient binanceClient;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public MarketDataCache(BinanceClient binanceClient, MeterRegistry meterRegistry) {
+        this.binanceClient = binanceClient;
+        this.hits = Counter.builder("bot.marketdata.cache.requests")
+                .tag("result", "hit")
+                .description("Pedidos de candles servidos pela cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("bot.marketdata.cache.requests")
+                .tag("result", "miss")
+                .description("Pedidos de candles que foram à API da Binance")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Devolve uma vista sobre os últimos {@code limit} candles de (symbol, interval). Se o par
+     * estiver a ser alimentado pelo stream, responde sempre da memória; caso contrário só vai
+     * à Binance quando a cache está vazia, tem menos candles do que os pedidos, ou o candle
+     * mais recente já fechou.
+     *
+     * @param symbol   par de trading (ex: "BTCUSDT")
+     * @param interval intervalo (ex: "5m")
+     * @param limit    número de candles pretendidos
+     * @return cópia dos candles, do mais antigo para o mais recente
+     */
+    public CandleSeries.View getCandles(String symbol, String interval, int limit) {
+        Entry entry = entry(symbol, interval);
+
+        // Lock por chave: users concorrentes do mesmo par esperam pelo mesmo pedido
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            if (entry.series.size() >= limit && (entry.live || now < entry.expiresAt)) {
+                hits.increment();
+                return entry.series.tail(limit);
+            }
+
+            misses.increment();
+            int fetched = fetch(entry, symbol, interval, limit);
+            logger.debug("Cache de candles atualizada via REST: {} {} ({} candles, valida ate {})",
+                    symbol, interval, fetched, entry.expiresAt);
+            return entry.series.tail(limit);
+        }
+    }
+
+    /**
+     * Recupera por REST os candles em falta desde o último candle conhecido
+     * (usado após (re)ligar o stream). Devolve o número de candles pedidos.
+     */
+    public int backfill(String symbol, String interval) {
+        Entry entry = entry(symbol, interval);
+        synchronized (entry) {
+            int missing = MAX_CANDLES;
+            long lastOpen = entry.series.lastOpenTime();
+            if (lastOpen >= 0) {
+                long gap = (System.currentTimeMillis() - lastOpen) / KlineInterval.toMillis(interval);
+                // +1 para reescrever o último candle conhecido, que pode ter ficado incompleto
+                missing = (int) Math.min(MAX_CANDLES, Math.max(2, gap + 1));
+            }
+            misses.increment();
+            fetch(entry, symbol, interval, missing);
+            return missing;
+        }
+    }
+
+    /**
+     * Aplica uma atualização de kline vinda do stream: substitui o candle com o mesmo
+     * openTime ou acrescenta-o no fim.
+     */
+    public void onCandle(String symbol, String interval,
+                         long openTime, double open, double high, double low, double close, double volume,
+                         long closeTime, long trades) {
+        Entry entry = entry(symbol, interval);
+        synchronized (entry) {
+            entry.series.upsert(openTime, open, high, low, close, volume, closeTime, trades);
+            entry.expiresAt = entry.series.lastOpenTime() + KlineInterval.toMillis(interval);
+        }
+    }
+
+    /**
+     * Marca (symbol, interval) como alimentado (ou não) pelo stream. Quando deixa de estar
+     * "live" a cache volta às regras de expiração do modo REST.
+     */
+    public void setLive(String symbol, String interval, boolean live) {
+        Entry entry = entry(symbol, interval);
+        synchronized (entry) {
+            entry.live = live;
+        }
+    }
+
+    /** Indica se (symbol, interval) está a ser alimentado pelo stream. */
+    public boolean isLive(String symbol, String interval) {
+        Entry entry = entries.get(symbol + ":" + interval);
+        if (entry == null) {
+            return false;
+        }
+        synchronized (entry) {
+            return entry.live;
+        }
+    }
+
+    /** Total de pedidos servidos pela cache desde o arranque. */
+    public long getHits() {
+        return (long) hits.count();
+    }
+
+    /** Total de pedidos que tiveram de ir à Binance desde o arranque. */
+    public long getMisses() {
+        return (long) misses.count();
+    }
+
+    private Entry entry(String symbol, String interval) {
+        return entries.computeIfAbsent(symbol + ":" + interval, k -> new Entry());
+    }
+
+    // Descodifica a resposta REST diretamente para o CandleSeries da entrada
+    private int fetch(Entry entry, String symbol, String interval, int limit) {
+        int fetched = binanceClient.fetchKlines(symbol, interval, limit, entry.series);
+        long lastOpen = entry.series.lastOpenTime();
+        if (lastOpen >= 0) {
+            entry.expiresAt = lastOpen + KlineInterval.toMillis(interval);
+        }
+        return fetched;
+    }
+
+    private static class Entry {
+        final CandleSeries series = new CandleSeries(MAX_CANDLES);
+        long expiresAt;
+        boolean live;
+    }
+}
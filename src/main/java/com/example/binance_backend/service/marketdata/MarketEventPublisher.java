@@ -0,0 +1,107 @@
+package com.example.binance_backend.service.marketdata;
+
+import com.example.binance_backend.service.ActiveBotRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * MarketEventPublisher: transforma as atualizações de mercado em eventos para o bot.
+ *
+ * - {@link CandleClosedEvent}: quando o stream indica que um kline fechou ({@code x=true}).
+ *   Para pares que não estão "live" no stream (stream desligado ou em baixo) o fecho é
+ *   detetado pela fronteira do intervalo, {@code bot.trigger.rest-grace-ms} depois dela.
+ * - {@link PriceTickEvent}: último preço entre fechos, no máximo um por par a cada
+ *   {@code bot.trigger.tick-min-interval-ms}, para as verificações de TP/SL.
+ *
+ * Os listeners correm na thread que publica (ex: thread do stream), por isso não podem bloquear.
+ */
+@Component
+public class MarketEventPublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(MarketEventPublisher.class);
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final MarketDataCache marketDataCache;
+    private final ActiveBotRegistry registry;
+    private final String interval;
+    private final long tickMinIntervalMs;
+    private final long restGraceMs;
+
+    // Último tick publicado por par (epoch ms)
+    private final ConcurrentHashMap<String, Long> lastTickAt = new ConcurrentHashMap<>();
+    // openTime do último candle fechado publicado pelo fallback REST
+    private volatile long lastRestClose = -1;
+
+    public MarketEventPublisher(
+            ApplicationEventPublisher eventPublisher,
+            MarketDataCache marketDataCache,
+            ActiveBotRegistry registry,
+            @Value("${bot.marketdata.interval:5m}") String interval,
+            @Value("${bot.trigger.tick-min-interval-ms:1000}") long tickMinIntervalMs,
+            @Value("${bot.trigger.rest-grace-ms:2000}") long restGraceMs
+    ) {
+        this.eventPublisher = eventPublisher;
+        this.marketDataCache = marketDataCache;
+        this.registry = registry;
+        this.interval = interval;
+        this.tickMinIntervalMs = tickMinIntervalMs;
+        this.restGraceMs = restGraceMs;
+    }
+
+    /**
+     * Chamado pelo KlineStreamService depois de aplicar um kline no MarketDataCache.
+     *
+     * @param closed    flag {@code x} do kline (candle fechado)
+     * @param eventTime event time da mensagem (epoch ms)
+     */
+    public void onKline(String symbol, String interval, long openTime, double close, long closeTime,
+                        boolean closed, long eventTime) {
+        if (closed) {
+            eventPublisher.publishEvent(new CandleClosedEvent(symbol, interval, openTime, closeTime, eventTime));
+            return;
+        }
+        Long previous = lastTickAt.get(symbol);
+        if (previous != null && eventTime - previous < tickMinIntervalMs) {
+            return;
+        }
+        lastTickAt.put(symbol, eventTime);
+        eventPublisher.publishEvent(new PriceTickEvent(symbol, close, eventTime));
+    }
+
+    /**
+     * Fallback para pares sem stream: depois de cada fronteira do intervalo (+ margem para a
+     * Binance fechar o candle) publica um CandleClosedEvent por cada par ativo que não está "live".
+     */
+    @Scheduled(fixedDelayString = "${bot.trigger.rest-poll-ms:1000}")
+    public void pollCandleCloses() {
+        long intervalMs = KlineInterval.toMillis(interval);
+        long now = System.currentTimeMillis();
+        long currentOpen = (now - restGraceMs) / intervalMs * intervalMs;
+        long closedOpen = currentOpen - intervalMs;
+        if (closedOpen <= lastRestClose) {
+            return;
+        }
+        boolean firstRun = lastRestClose < 0;
+        lastRestClose = closedOpen;
+        if (firstRun) {
+            return; // no arranque espera pela próxima fronteira
+        }
+
+        try {
+            for (String symbol : registry.activeSymbols()) {
+                if (!marketDataCache.isLive(symbol, interval)) {
+                    logger.debug("Fecho de candle {} {} detetado por fronteira (sem stream)", symbol, interval);
+                    eventPublisher.publishEvent(new CandleClosedEvent(symbol, interval, closedOpen, currentOpen - 1, currentOpen));
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao publicar fechos de candle (fallback REST): {}", e.getMessage());
+        }
+    }
+}
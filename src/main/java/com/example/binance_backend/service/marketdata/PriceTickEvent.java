@@ -0,0 +1,24 @@
+package com.example.binance_backend.service.marketdata;
+
+/**
+ * Último preço de um par entre fechos de candle (limitado a um por par a cada
+ * {@code bot.trigger.tick-min-interval-ms}), usado para verificar TP/SL.
+ */
+public final class PriceTickEvent {
+
+    public final String symbol;
+    public final double price;
+    // Event time (epoch ms) da mensagem da Binance
+    public final long eventTime;
+
+    public PriceTickEvent(String symbol, double price, long eventTime) {
+        this.symbol = symbol;
+        this.price = price;
+        this.eventTime = eventTime;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceTickEvent{" + symbol + " " + price + "}";
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.binance_backend.service.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * BinanceRateLimiter: limita os pedidos REST à Binance ao peso (request weight) e ao número
+ * de ordens permitidos, antes de a Binance responder com 429 (e depois 418, IP banido).
+ *
+ * - Peso por IP: token bucket de {@code bot.binance.limits.weight-per-minute}, reposto de
+ *   forma contínua. Cada pedido gasta o peso do endpoint ({@link #weightOf}).
+ * - Ordens por conta: por API key, um bucket de {@code bot.binance.limits.orders-per-10s} e
+ *   outro de {@code bot.binance.limits.orders-per-day}. Só contam os POST que colocam ordens
+ *   (cancelamentos não).
+ * - Prioridade: ordens podem usar o bucket todo; market data e restantes pedidos deixam
+ *   sempre {@code bot.binance.limits.order-reserve-weight} livres para as ordens.
+ * - Autocorreção: os headers {@code X-MBX-USED-WEIGHT-1M} e {@code X-MBX-ORDER-COUNT-<intervalo>}
+ *   (10S, 1D) de cada resposta baixam o saldo local do intervalo se a Binance contar mais
+ *   (outras instâncias no mesmo IP, pedidos fora do backend). Um 429/418 com {@code Retry-After} suspende todos
+ *   os pedidos até essa altura.
+ *
+ * Sem saldo, o pedido espera (sem bloquear threads) até haver; se a espera passar de
+ * {@code bot.binance.limits.max-wait-ms} falha com 429.
+ *
+ * Métricas: {@code bot.binance.weight.available}, {@code bot.binance.weight.used} (último
+ * valor reportado pela Binance), {@code bot.binance.ratelimit.throttled} (tag priority) e
+ * {@code bot.binance.ratelimit.rejected} (respostas 429/418).
+ */
+@Component
+public class BinanceRateLimiter implements ExchangeFilterFunction {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinanceRateLimiter.class);
+
+    static final String USED_WEIGHT_HEADER = "X-MBX-USED-WEIGHT-1M";
+    static final String ORDER_COUNT_HEADER_PREFIX = "X-MBX-ORDER-COUNT-";
+    private static final String API_KEY_HEADER = "X-MBX-APIKEY";
+
+    private final int weightPerMinute;
+    private final int orderReserve;
+    // Limite de ordens por intervalo, com o sufixo do header (10S, 1D)
+    private final Map<String, Integer> orderLimits;
+    private final long maxWaitMs;
+
+    // Bucket de peso (partilhado) e de ordens (por API key, um por intervalo)
+    private final Bucket weight;
+    private final ConcurrentHashMap<String, Map<String, Bucket>> orders = new ConcurrentHashMap<>();
+    // Até quando a Binance pediu para não enviar pedidos (epoch ms)
+    private volatile long bannedUntil;
+    private volatile int lastUsedWeight;
+
+    private final Counter throttledOrders;
+    private final Counter throttledData;
+    private final MeterRegistry meterRegistry;
+
+    public BinanceRateLimiter(
+            @Value("${bot.binance.limits.weight-per-minute:6000}") int weightPerMinute,
+            @Value("${bot.binance.limits.order-reserve-weight:600}") int orderReserve,
+            @Value("${bot.binance.limits.orders-per-10s:100}") int ordersPer10s,
+            @Value("${bot.binance.limits.orders-per-day:200000}") int ordersPerDay,
+            @Value("${bot.binance.limits.max-wait-ms:30000}") long maxWaitMs,
+            MeterRegistry meterRegistry
+    ) {
+        this.weightPerMinute = weightPerMinute;
+        this.orderReserve = orderReserve;
+        this.orderLimits = Map.of("10S", ordersPer10s, "1D", ordersPerDay);
+        this.maxWaitMs = maxWaitMs;
+        this.weight = new Bucket(weightPerMinute, 60_000);
+        this.meterRegistry = meterRegistry;
+
+        Gauge.builder("bot.binance.weight.available", this, BinanceRateLimiter::getAvailableWeight)
+                .description("Peso de pedidos disponivel no limitador local")
+                .register(meterRegistry);
+        Gauge.builder("bot.binance.weight.used", this, l -> l.lastUsedWeight)
+                .description("Peso usado no ultimo minuto, reportado pela Binance")
+                .register(meterRegistry);
+        this.throttledOrders = Counter.builder("bot.binance.ratelimit.throttled")
+                .tag("priority", "order")
+                .description("Pedidos que tiveram de esperar por peso/ordens disponiveis")
+                .register(meterRegistry);
+        this.throttledData = Counter.builder("bot.binance.ratelimit.throttled")
+                .tag("priority", "data")
+                .description("Pedidos que tiveram de esperar por peso/ordens disponiveis")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        String path = request.url().getPath();
+        boolean order = isOrder(request.method(), path);
+        int requestWeight = weightOf(request.method(), path, request.url().getRawQuery());
+        String apiKey = order ? request.headers().getFirst(API_KEY_HEADER) : null;
+
+        return permit(requestWeight, order, apiKey, System.currentTimeMillis(), false)
+                .then(Mono.defer(() -> next.exchange(request)))
+                .doOnNext(response -> onResponse(response, apiKey));
+    }
+
+    // Espera (sem bloquear) até haver peso e, nas ordens, saldo de ordens da conta
+    private Mono<Void> permit(int requestWeight, boolean order, String apiKey, long startedAt, boolean counted) {
+        return Mono.defer(() -> {
+            long wait = tryAcquire(requestWeight, order, apiKey);
+            if (wait == 0) {
+                return Mono.empty();
+            }
+            if (!counted) {
+                (order ? throttledOrders : throttledData).increment();
+            }
+            if (System.currentTimeMillis() + wait - startedAt > maxWaitMs) {
+                return Mono.error(new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Limite de pedidos a Binance atingido (espera de " + wait + " ms)"));
+            }
+            return Mono.delay(Duration.ofMillis(wait))
+                    .then(permit(requestWeight, order, apiKey, startedAt, true));
+        });
+    }
+
+    /**
+     * Tenta gastar {@code requestWeight} (e uma ordem, se for uma ordem).
+     *
+     * @return 0 se o pedido pode seguir já; senão os ms a esperar antes de tentar de novo
+     */
+    long tryAcquire(int requestWeight, boolean order, String apiKey) {
+        long now = System.currentTimeMillis();
+        if (now < bannedUntil) {
+            return bannedUntil - now;
+        }
+        Collection<Bucket> orderBuckets = order && apiKey != null
+                ? orders.computeIfAbsent(apiKey, k -> newOrderBuckets()).values()
+                : List.of();
+        synchronized (this) {
+            double floor = order ? 0 : orderReserve;
+            long wait = weight.waitFor(requestWeight, floor, now);
+            for (Bucket bucket : orderBuckets) {
+                wait = Math.max(wait, bucket.waitFor(1, 0, now));
+            }
+            if (wait > 0) {
+                return Math.max(1, wait);
+            }
+            weight.take(requestWeight);
+            for (Bucket bucket : orderBuckets) {
+                bucket.take(1);
+            }
+            return 0;
+        }
+    }
+
+    void onResponse(ClientResponse response, String apiKey) {
+        long now = System.currentTimeMillis();
+        String used = response.headers().asHttpHeaders().getFirst(USED_WEIGHT_HEADER);
+        if (used != null) {
+            try {
+                lastUsedWeight = Integer.parseInt(used.trim());
+                synchronized (this) {
+                    weight.atMost(weightPerMinute - lastUsedWeight, now);
+                }
+            } catch (NumberFormatException ignored) {
+                // header inválido: fica a contagem local
+            }
+        }
+        Map<String, Bucket> orderBuckets = apiKey != null ? orders.get(apiKey) : null;
+        if (orderBuckets != null) {
+            // Um header por intervalo (X-MBX-ORDER-COUNT-10S, X-MBX-ORDER-COUNT-1D)
+            response.headers().asHttpHeaders().forEach((name, values) -> {
+                if (!name.regionMatches(true, 0, ORDER_COUNT_HEADER_PREFIX, 0, ORDER_COUNT_HEADER_PREFIX.length())
+                        || values.isEmpty()) {
+                    return;
+                }
+                String interval = name.substring(ORDER_COUNT_HEADER_PREFIX.length()).toUpperCase(Locale.ROOT);
+                Bucket bucket = orderBuckets.get(interval);
+                if (bucket == null) {
+                    return;  // intervalo sem limite configurado
+                }
+                try {
+                    int count = Integer.parseInt(values.get(0).trim());
+                    synchronized (this) {
+                        bucket.atMost(orderLimits.get(interval) - count, now);
+                    }
+                } catch (NumberFormatException ignored) {
+                    // header inválido: fica a contagem local
+                }
+            });
+        }
+
+        int status = response.statusCode().value();
+        if (status == 429 || status == 418) {
+            long retryAfterMs = retryAfterMs(response);
+            bannedUntil = Math.max(bannedUntil, now + retryAfterMs);
+            meterRegistry.counter("bot.binance.ratelimit.rejected", "status", String.valueOf(status)).increment();
+            logger.error("Binance respondeu {} (limite de pedidos{}); pedidos suspensos durante {} ms.",
+                    status, status == 418 ? ", IP banido" : "", retryAfterMs);
+        }
+    }
+
+    private static long retryAfterMs(ClientResponse response) {
+        String retryAfter = response.headers().asHttpHeaders().getFirst("Retry-After");
+        if (retryAfter != null) {
+            try {
+                return Long.parseLong(retryAfter.trim()) * 1000;
+            } catch (NumberFormatException ignored) {
+                // formato HTTP-date não é usado pela Binance
+            }
+        }
+        return 60_000;
+    }
+
+    public double getAvailableWeight() {
+        synchronized (this) {
+            return weight.available();
+        }
+    }
+
+    private Map<String, Bucket> newOrderBuckets() {
+        return Map.of(
+                "10S", new Bucket(orderLimits.get("10S"), 10_000),
+                "1D", new Bucket(orderLimits.get("1D"), 86_400_000));
+    }
+
+    // Pedidos que contam para os limites de ordens da Binance: os POST que colocam ordens
+    // (simples, OCO e cancelReplace); cancelamentos (DELETE) e ordens de teste não contam
+    static boolean isOrder(HttpMethod method, String path) {
+        return HttpMethod.POST.equals(method)
+                && (path.equals("/api/v3/order") || path.equals("/api/v3/order/oco")
+                    || path.equals("/api/v3/order/cancelReplace") || path.startsWith("/api/v3/orderList/"));
+    }
+
+    /** Peso de um pedido, de acordo com a documentação da API spot da Binance. */
+    static int weightOf(HttpMethod method, String path, String query) {
+        switch (path) {
+            case "/api/v3/klines": {
+                int limit = intParam(query, "limit", 500);
+                if (limit < 100) return 1;
+                if (limit < 500) return 2;
+                if (limit <= 1000) return 5;
+                return 10;
+            }
+            case "/api/v3/ticker/price":
+                return query != null && query.contains("symbol=") ? 2 : 4;
+            case "/api/v3/account":
+            case "/api/v3/allOrders":
+            case "/api/v3/myTrades":
+            case "/api/v3/exchangeInfo":
+                return 20;
+            case "/api/v3/openOrders":
+                return query != null && query.contains("symbol=") ? 6 : 80;
+            case "/api/v3/order":
+                return HttpMethod.GET.equals(method) ? 4 : 1;
+            case "/api/v3/orderList":
+                return HttpMethod.GET.equals(method) ? 4 : 1;
+            case "/api/v3/userDataStream":
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static int intParam(String query, String name, int defaultValue) {
+        if (query == null) {
+            return defaultValue;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.startsWith(name + "=")) {
+                try {
+                    return Integer.parseInt(pair.substring(name.length() + 1));
+                } catch (NumberFormatException e) {
+                    return defaultValue;
+                }
+            }
+        }
+        return defaultValue;
+    }
+
+    /** Token bucket com reposição contínua (não thread-safe: acesso sob o lock do limitador). */
+    static final class Bucket {
+        private final double capacity;
+        private final double perMs;
+        private double tokens;
+        private long refilledAt;
+
+        Bucket(int capacity, long periodMs) {
+            this.capacity = capacity;
+            this.perMs = capacity / (double) periodMs;
+            this.tokens = capacity;
+            this.refilledAt = System.currentTimeMillis();
+        }
+
+        // ms até haver amount acima de floor (0 se já houver)
+        long waitFor(int amount, double floor, long now) {
+            refill(now);
+            double missing = floor + amount - tokens;
+            return missing <= 0 ? 0 : (long) Math.ceil(missing / perMs);
+        }
+
+        void take(int amount) {
+            tokens -= amount;
+        }
+
+        void atMost(double reported, long now) {
+            refill(now);
+            tokens = Math.min(tokens, Math.max(0, reported));
+        }
+
+        double available() {
+            refill(System.currentTimeMillis());
+            return tokens;
+        }
+
+        private void refill(long now) {
+            if (now > refilledAt) {
+                tokens = Math.min(capacity, tokens + (now - refilledAt) * perMs);
+                refilledAt = now;
+            }
+        }
+    }
+}
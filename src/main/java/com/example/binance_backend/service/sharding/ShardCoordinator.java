@@ -0,0 +1,198 @@
+package com.example.binance_backend.service.sharding;
+
+import com.example.binance_backend.model.BotNode;
+import com.example.binance_backend.model.BotShardLease;
+import com.example.binance_backend.repository.BotNodeRepository;
+import com.example.binance_backend.repository.BotShardLeaseRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.*;
+
+/**
+ * ShardCoordinator: divide os bots entre as várias instâncias do backend.
+ *
+ * Os users são distribuídos por {@code bot.sharding.shards} shards (hash do userId). Cada shard
+ * tem uma linha em {@code bot_shard_lease}; a cada heartbeat o nó:
+ *
+ * 1. regista-se em {@code bot_node} e conta os nós vivos;
+ * 2. renova os leases que já tem;
+ * 3. se tiver mais do que a sua parte justa (shards / nós vivos) liberta o excesso, para que
+ *    um nó novo os apanhe;
+ * 4. se tiver menos, reclama shards livres ou expirados com {@code FOR UPDATE SKIP LOCKED}.
+ *
+ * Um nó que morra deixa os leases expirar e os restantes ficam com os seus shards. Se o próprio
+ * nó não conseguir renovar a tempo (BD em baixo, pausa longa), deixa de processar qualquer user
+ * até voltar a ter leases válidos, para nunca haver dois nós com o mesmo shard.
+ *
+ * Com {@code bot.sharding.enabled=false} (instância única) todos os users pertencem a este nó.
+ */
+@Component
+public class ShardCoordinator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+    private final BotShardLeaseRepository leaseRepo;
+    private final BotNodeRepository nodeRepo;
+    private final TransactionTemplate transactionTemplate;
+
+    private final boolean enabled;
+    private final int shardCount;
+    private final long leaseMs;
+    private final String nodeId;
+
+    // Shards deste nó e até quando são válidos localmente (epoch ms)
+    private volatile Set<Integer> ownedShards = Collections.emptySet();
+    private volatile long validUntil;
+
+    public ShardCoordinator(
+            BotShardLeaseRepository leaseRepo,
+            BotNodeRepository nodeRepo,
+            PlatformTransactionManager transactionManager,
+            @Value("${bot.sharding.enabled:false}") boolean enabled,
+            @Value("${bot.sharding.shards:64}") int shardCount,
+            @Value("${bot.sharding.lease-ms:20000}") long leaseMs,
+            @Value("${bot.sharding.node-id:}") String nodeId
+    ) {
+        this.leaseRepo = leaseRepo;
+        this.nodeRepo = nodeRepo;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.shardCount = shardCount;
+        this.leaseMs = leaseMs;
+        this.nodeId = nodeId == null || nodeId.isBlank() ? defaultNodeId() : nodeId;
+    }
+
+    /** Shard de um user (estável entre nós e reinícios). */
+    public int shardOf(UUID userId) {
+        return Math.floorMod(userId.hashCode(), shardCount);
+    }
+
+    /** Indica se este nó deve processar o bot do user. */
+    public boolean owns(UUID userId) {
+        if (!enabled) {
+            return true;
+        }
+        return System.currentTimeMillis() < validUntil && ownedShards.contains(shardOf(userId));
+    }
+
+    public Set<Integer> getOwnedShards() {
+        return ownedShards;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Scheduled(fixedDelayString = "${bot.sharding.heartbeat-ms:5000}")
+    public void heartbeat() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            ensureShardRows();
+            long startedAt = System.currentTimeMillis();
+            Set<Integer> owned = transactionTemplate.execute(tx -> rebalance(OffsetDateTime.now()));
+            boolean changed = !owned.equals(ownedShards);
+            ownedShards = owned;
+            // Margem de 1/4 do lease: deixa de processar antes de outro nó poder reclamar os shards
+            validUntil = startedAt + leaseMs * 3 / 4;
+            if (changed) {
+                logger.info("Node {}: {} de {} shards ({}).", nodeId, owned.size(), shardCount, owned);
+            }
+        } catch (Exception e) {
+            logger.error("Heartbeat de sharding falhou no node {}: {}", nodeId, e.getMessage());
+        }
+    }
+
+    /** Sai do cluster: liberta os shards para os outros nós os reclamarem de imediato. */
+    @PreDestroy
+    public void leave() {
+        if (!enabled) {
+            return;
+        }
+        ownedShards = Collections.emptySet();
+        validUntil = 0;
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                leaseRepo.releaseAll(nodeId);
+                nodeRepo.deleteById(nodeId);
+            });
+            logger.info("Node {} saiu do cluster e libertou os seus shards.", nodeId);
+        } catch (Exception e) {
+            logger.warn("Node {} nao conseguiu libertar os shards ao sair: {}", nodeId, e.getMessage());
+        }
+    }
+
+    private Set<Integer> rebalance(OffsetDateTime now) {
+        OffsetDateTime until = now.plusNanos(leaseMs * 1_000_000);
+
+        nodeRepo.save(new BotNode(nodeId, now));
+        nodeRepo.deleteStale(now.minusNanos(leaseMs * 10 * 1_000_000));
+        long liveNodes = Math.max(1, nodeRepo.countByLastHeartbeatAfter(now.minusNanos(leaseMs * 1_000_000)));
+        int fairShare = (int) ((shardCount + liveNodes - 1) / liveNodes);
+
+        leaseRepo.renew(nodeId, until);
+        List<BotShardLease> mine = leaseRepo.findByOwnerOrderByShardIdAsc(nodeId);
+
+        // Nó novo no cluster: liberta o excesso (os shards mais altos)
+        for (int i = mine.size() - 1; i >= fairShare; i--) {
+            BotShardLease lease = mine.remove(i);
+            lease.setOwner(null);
+            lease.setLeaseUntil(null);
+        }
+
+        // Nó saiu ou arranque: reclama shards livres/expirados até à parte justa
+        if (mine.size() < fairShare) {
+            for (BotShardLease lease : leaseRepo.lockClaimable(now, fairShare - mine.size())) {
+                lease.setOwner(nodeId);
+                lease.setLeaseUntil(until);
+                mine.add(lease);
+            }
+        }
+
+        Set<Integer> owned = new TreeSet<>();
+        for (BotShardLease lease : mine) {
+            owned.add(lease.getShardId());
+        }
+        return Collections.unmodifiableSet(owned);
+    }
+
+    // Cria as linhas de lease em falta (primeiro arranque ou aumento de shards)
+    private void ensureShardRows() {
+        if (leaseRepo.count() >= shardCount) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(tx -> {
+                List<BotShardLease> missing = new ArrayList<>();
+                for (int shard = 0; shard < shardCount; shard++) {
+                    if (!leaseRepo.existsById(shard)) {
+                        missing.add(new BotShardLease(shard));
+                    }
+                }
+                leaseRepo.saveAll(missing);
+            });
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Linhas de shard criadas em simultaneo por outro node: {}", e.getMessage());
+        }
+    }
+
+    private static String defaultNodeId() {
+        String host;
+        try {
+            host = java.net.InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "node";
+        }
+        return host + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+}
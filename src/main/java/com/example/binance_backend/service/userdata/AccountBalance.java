@@ -0,0 +1,25 @@
+package com.example.binance_backend.service.userdata;
+
+import java.math.BigDecimal;
+
+/** Saldo de um asset na conta Binance de um user. */
+public final class AccountBalance {
+
+    public final String asset;
+    public final BigDecimal free;
+    public final BigDecimal locked;
+    // Hora (epoch ms) da Binance a que o saldo se refere
+    public final long updateTime;
+
+    public AccountBalance(String asset, BigDecimal free, BigDecimal locked, long updateTime) {
+        this.asset = asset;
+        this.free = free;
+        this.locked = locked;
+        this.updateTime = updateTime;
+    }
+
+    @Override
+    public String toString() {
+        return "AccountBalance{" + asset + " free=" + free.toPlainString() + " locked=" + locked.toPlainString() + "}";
+    }
+}
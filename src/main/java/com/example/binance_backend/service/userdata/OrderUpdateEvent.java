@@ -0,0 +1,67 @@
+package com.example.binance_backend.service.userdata;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Atualização de uma ordem recebida no user data stream ({@code executionReport}): criação,
+ * execução parcial/total, cancelamento, rejeição ou expiração.
+ */
+public final class OrderUpdateEvent {
+
+    public final UUID userId;
+    public final String symbol;
+    public final String clientOrderId;
+    public final long orderId;
+    // OCO a que a ordem pertence (-1 se não pertencer a nenhum)
+    public final long orderListId;
+    public final String side;
+    public final String type;
+    // Estado atual da ordem (NEW, PARTIALLY_FILLED, FILLED, CANCELED, REJECTED, EXPIRED)
+    public final String status;
+    // Motivo desta atualização (NEW, TRADE, CANCELED, REJECTED, EXPIRED, ...)
+    public final String executionType;
+    public final BigDecimal lastQty;
+    public final BigDecimal lastPrice;
+    public final BigDecimal cumulativeQty;
+    public final BigDecimal cumulativeQuoteQty;
+    public final BigDecimal commission;
+    public final String commissionAsset;
+    // Hora (epoch ms) da transação na Binance
+    public final long transactTime;
+
+    public OrderUpdateEvent(
+            UUID userId, String symbol, String clientOrderId, long orderId, long orderListId,
+            String side, String type, String status, String executionType,
+            BigDecimal lastQty, BigDecimal lastPrice,
+            BigDecimal cumulativeQty, BigDecimal cumulativeQuoteQty,
+            BigDecimal commission, String commissionAsset, long transactTime
+    ) {
+        this.userId = userId;
+        this.symbol = symbol;
+        this.clientOrderId = clientOrderId;
+        this.orderId = orderId;
+        this.orderListId = orderListId;
+        this.side = side;
+        this.type = type;
+        this.status = status;
+        this.executionType = executionType;
+        this.lastQty = lastQty;
+        this.lastPrice = lastPrice;
+        this.cumulativeQty = cumulativeQty;
+        this.cumulativeQuoteQty = cumulativeQuoteQty;
+        this.commission = commission;
+        this.commissionAsset = commissionAsset;
+        this.transactTime = transactTime;
+    }
+
+    /** A ordem já não vai mudar (executada, cancelada, rejeitada ou expirada). */
+    public boolean isFinal() {
+        return !"NEW".equals(status) && !"PARTIALLY_FILLED".equals(status) && !"PENDING_NEW".equals(status);
+    }
+
+    @Override
+    public String toString() {
+        return "OrderUpdateEvent{" + symbol + " " + side + " " + orderId + " " + status + " " + cumulativeQty.toPlainString() + "}";
+    }
+}
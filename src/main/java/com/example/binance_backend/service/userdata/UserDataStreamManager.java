@@ -0,0 +1,396 @@
+package com.example.binance_backend.service.userdata;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.BinanceClient;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * UserDataStreamManager: um user data stream da Binance por credencial, com os saldos e as
+ * últimas ordens de cada user em memória, em vez de pedir {@code /api/v3/account} (peso 20)
+ * a cada consulta.
+ *
+ * - Cada stream tem a sua listenKey, criada ao ligar e renovada a cada
+ *   {@code bot.userdata.keepalive-ms}; se a Binance a der como expirada, é criada outra.
+ * - Ao (re)ligar, os saldos são semeados com um único pedido a /api/v3/account; a partir daí
+ *   são atualizados pelos eventos {@code outboundAccountPosition} e {@code balanceUpdate}.
+ * - Cada {@code executionReport} atualiza a cache de ordens do user e é publicado como
+ *   {@link OrderUpdateEvent} (na thread do stream: os listeners não devem bloquear).
+ * - Há stream para todos os users com bot ativo (e credenciais) desta instância; os restantes
+ *   ligam-se na primeira consulta de saldo e são fechados ao fim de {@code bot.userdata.idle-ms}
+ *   sem consultas.
+ *
+ * Em modo simulação não é aberto nenhum stream.
+ */
+@Service
+public class UserDataStreamManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserDataStreamManager.class);
+
+    // Últimas ordens guardadas por user
+    static final int MAX_ORDERS_PER_USER = 200;
+
+    private final BinanceClient binanceClient;
+    private final ActiveBotRegistry registry;
+    private final ShardCoordinator shards;
+    private final ApplicationEventPublisher events;
+    private final WebSocketClient webSocketClient = new ReactorNettyWebSocketClient();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final boolean enabled;
+    private final String streamUrl;
+    private final long idleMs;
+
+    private final ConcurrentHashMap<UUID, Session> sessions = new ConcurrentHashMap<>();
+
+    private final Counter memoryReads;
+    private final Counter restReads;
+
+    public UserDataStreamManager(
+            BinanceClient binanceClient,
+            ActiveBotRegistry registry,
+            ShardCoordinator shards,
+            ApplicationEventPublisher events,
+            MeterRegistry meterRegistry,
+            @Value("${bot.userdata.enabled:true}") boolean enabled,
+            @Value("${bot.simulation:true}") boolean simulationMode,
+            @Value("${bot.userdata.stream.url:wss://stream.binance.com:9443}") String streamUrl,
+            @Value("${bot.userdata.idle-ms:600000}") long idleMs
+    ) {
+        this.binanceClient = binanceClient;
+        this.registry = registry;
+        this.shards = shards;
+        this.events = events;
+        this.enabled = enabled && !simulationMode;
+        this.streamUrl = streamUrl;
+        this.idleMs = idleMs;
+
+        Gauge.builder("bot.userdata.streams", sessions, Map::size)
+                .description("User data streams abertos")
+                .register(meterRegistry);
+        Gauge.builder("bot.userdata.ready", this, UserDataStreamManager::readyCount)
+                .description("User data streams ligados e com saldos sincronizados")
+                .register(meterRegistry);
+        this.memoryReads = Counter.builder("bot.userdata.balance.requests")
+                .tag("source", "memory")
+                .description("Consultas de saldo servidas pelo user data stream")
+                .register(meterRegistry);
+        this.restReads = Counter.builder("bot.userdata.balance.requests")
+                .tag("source", "rest")
+                .description("Consultas de saldo que foram a /api/v3/account")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Saldo livre de um asset. Responde da memória se o stream do user estiver sincronizado;
+     * senão abre o stream (se ainda não existir) e responde desta vez por REST.
+     *
+     * @return saldo livre em texto (ex: "123.45678900"); "0" se o asset não existir na conta
+     */
+    public String freeBalance(UUID userId, String encryptedApiKey, String encryptedSecretKey, String asset) {
+        if (enabled) {
+            Session session = open(userId, encryptedApiKey, encryptedSecretKey);
+            session.lastAccess = System.currentTimeMillis();
+            if (session.ready) {
+                memoryReads.increment();
+                AccountBalance balance = session.balances.get(asset.toUpperCase(Locale.ROOT));
+                return balance != null ? balance.free.toPlainString() : "0";
+            }
+        }
+        restReads.increment();
+        return binanceClient.fetchFreeBalance(encryptedApiKey, encryptedSecretKey, asset);
+    }
+
+    /** Saldos em memória de um user (vazio se não houver stream sincronizado). */
+    public Map<String, AccountBalance> balances(UUID userId) {
+        Session session = sessions.get(userId);
+        return session != null && session.ready ? Map.copyOf(session.balances) : Map.of();
+    }
+
+    /** Último estado conhecido de uma ordem do user, recebido pelo stream. */
+    public Optional<OrderUpdateEvent> order(UUID userId, long orderId) {
+        Session session = sessions.get(userId);
+        if (session == null) {
+            return Optional.empty();
+        }
+        synchronized (session.orders) {
+            return Optional.ofNullable(session.orders.get(orderId));
+        }
+    }
+
+    /** Indica se o stream do user está ligado e com os saldos sincronizados. */
+    public boolean isReady(UUID userId) {
+        Session session = sessions.get(userId);
+        return session != null && session.ready;
+    }
+
+    /**
+     * Abre streams para os users com bot ativo nesta instância e fecha os que deixaram de
+     * ser precisos (sem bot ativo e sem consultas há mais de {@code bot.userdata.idle-ms}).
+     */
+    @Scheduled(fixedDelayString = "${bot.userdata.refresh-ms:60000}")
+    public void refreshStreams() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Set<UUID> wanted = new HashSet<>();
+            for (String symbol : registry.activeSymbols()) {
+                for (ActiveBot bot : registry.bySymbol(symbol)) {
+                    if (bot.hasCredentials() && shards.owns(bot.userId)) {
+                        wanted.add(bot.userId);
+                        open(bot.userId, bot.encryptedApiKey, bot.encryptedSecretKey);
+                    }
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            for (Session session : sessions.values()) {
+                if (!wanted.contains(session.userId) && now - session.lastAccess > idleMs) {
+                    close(session);
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao atualizar user data streams: {}", e.getMessage());
+        }
+    }
+
+    /** Prolonga as listenKeys de todos os streams abertos (expiram 60 min sem keep-alive). */
+    @Scheduled(fixedDelayString = "${bot.userdata.keepalive-ms:1800000}",
+               initialDelayString = "${bot.userdata.keepalive-ms:1800000}")
+    public void keepAlive() {
+        for (Session session : sessions.values()) {
+            String listenKey = session.listenKey;
+            if (listenKey == null) {
+                continue;
+            }
+            binanceClient.keepAliveListenKey(session.encryptedApiKey, listenKey)
+                    .subscribe(null, e -> logger.warn("Keep-alive da listenKey do user {} falhou: {}",
+                            session.userId, e.getMessage()));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Session session : sessions.values()) {
+            close(session);
+        }
+    }
+
+    // Stream do user, criado (ou recriado, se a API key mudou) se for preciso
+    private Session open(UUID userId, String encryptedApiKey, String encryptedSecretKey) {
+        Session session = sessions.get(userId);
+        if (session != null && session.encryptedApiKey.equals(encryptedApiKey)) {
+            return session;
+        }
+        synchronized (this) {
+            session = sessions.get(userId);
+            if (session != null && session.encryptedApiKey.equals(encryptedApiKey)) {
+                return session;
+            }
+            if (session != null) {
+                close(session);
+            }
+            session = new Session(userId, encryptedApiKey, encryptedSecretKey);
+            sessions.put(userId, session);
+            connect(session);
+            return session;
+        }
+    }
+
+    private void connect(Session session) {
+        logger.info("A ligar user data stream do user {}.", session.userId);
+        session.connection = Mono.defer(() -> binanceClient.createListenKey(session.encryptedApiKey)
+                        .flatMap(listenKey -> {
+                            session.listenKey = listenKey;
+                            URI uri = URI.create(streamUrl + "/ws/" + listenKey);
+                            return webSocketClient.execute(uri, ws -> handle(ws, session));
+                        }))
+                // Ligação fechada (24h, listenKey expirada): nova listenKey e nova ligação
+                .repeat()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(60))
+                        .doBeforeRetry(rs -> logger.warn("User data stream do user {} caiu ({}); nova tentativa #{}",
+                                session.userId, rs.failure().getMessage(), rs.totalRetries() + 1)))
+                .subscribe();
+    }
+
+    private void close(Session session) {
+        sessions.remove(session.userId, session);
+        session.ready = false;
+        if (session.connection != null) {
+            session.connection.dispose();
+        }
+        String listenKey = session.listenKey;
+        if (listenKey != null) {
+            binanceClient.closeListenKey(session.encryptedApiKey, listenKey)
+                    .subscribe(null, e -> logger.debug("Erro ao fechar listenKey do user {}: {}",
+                            session.userId, e.getMessage()));
+        }
+        logger.info("User data stream do user {} fechado.", session.userId);
+    }
+
+    private Mono<Void> handle(WebSocketSession ws, Session session) {
+        // Semeia os saldos depois de ligar; os eventos que chegarem entretanto ficam em buffer
+        // na ligação e só são aplicados se forem mais recentes do que o snapshot
+        Mono<Void> seed = binanceClient.fetchBalancesAsync(session.encryptedApiKey, session.encryptedSecretKey)
+                .doOnNext(balances -> {
+                    balances.values().forEach(session::applyBalance);
+                    session.ready = true;
+                    logger.info("User data stream do user {} sincronizado ({} assets).",
+                            session.userId, balances.size());
+                })
+                .then();
+
+        return seed.thenMany(ws.receive()
+                        .map(WebSocketMessage::getPayloadAsText)
+                        // listenKeyExpired: termina a ligação para voltar a ligar com outra listenKey
+                        .takeUntil(payload -> onMessage(session, payload)))
+                .doFinally(signal -> session.ready = false)
+                .then();
+    }
+
+    /**
+     * Aplica uma mensagem do user data stream.
+     *
+     * @return true se a listenKey expirou e a ligação deve ser refeita
+     */
+    boolean onMessage(Session session, String payload) {
+        try {
+            JsonNode event = objectMapper.readTree(payload);
+            switch (event.path("e").asText()) {
+                case "outboundAccountPosition": {
+                    long updateTime = event.path("u").asLong();
+                    for (JsonNode b : event.path("B")) {
+                        session.applyBalance(new AccountBalance(b.path("a").asText(),
+                                new BigDecimal(b.path("f").asText("0")),
+                                new BigDecimal(b.path("l").asText("0")),
+                                updateTime));
+                    }
+                    return false;
+                }
+                case "balanceUpdate": {
+                    // Depósitos, levantamentos e transferências: delta no saldo livre
+                    String asset = event.path("a").asText();
+                    AccountBalance current = session.balances.get(asset);
+                    long clearTime = event.path("T").asLong();
+                    if (current != null && clearTime > current.updateTime) {
+                        session.applyBalance(new AccountBalance(asset,
+                                current.free.add(new BigDecimal(event.path("d").asText("0"))),
+                                current.locked, clearTime));
+                    }
+                    return false;
+                }
+                case "executionReport":
+                    onExecutionReport(session, event);
+                    return false;
+                case "listenKeyExpired":
+                    logger.warn("listenKey do user {} expirou; a ligar de novo.", session.userId);
+                    return true;
+                default:
+                    return false;
+            }
+        } catch (Exception e) {
+            logger.warn("Mensagem do user data stream invalida ignorada: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void onExecutionReport(Session session, JsonNode e) {
+        String status = e.path("X").asText();
+        // Num cancelamento "c" é o id do pedido de cancelamento; o da ordem vem em "C"
+        String clientOrderId = "CANCELED".equals(status) && !e.path("C").asText().isEmpty()
+                ? e.path("C").asText()
+                : e.path("c").asText();
+        OrderUpdateEvent update = new OrderUpdateEvent(
+                session.userId,
+                e.path("s").asText(),
+                clientOrderId,
+                e.path("i").asLong(),
+                e.path("g").asLong(-1),
+                e.path("S").asText(),
+                e.path("o").asText(),
+                status,
+                e.path("x").asText(),
+                new BigDecimal(e.path("l").asText("0")),
+                new BigDecimal(e.path("L").asText("0")),
+                new BigDecimal(e.path("z").asText("0")),
+                new BigDecimal(e.path("Z").asText("0")),
+                new BigDecimal(e.path("n").asText("0")),
+                e.path("N").isNull() ? null : e.path("N").asText(null),
+                e.path("T").asLong()
+        );
+        synchronized (session.orders) {
+            session.orders.put(update.orderId, update);
+        }
+        logger.debug("Ordem atualizada pelo stream (user {}): {}", session.userId, update);
+        events.publishEvent(update);
+    }
+
+    private int readyCount() {
+        int ready = 0;
+        for (Session session : sessions.values()) {
+            if (session.ready) {
+                ready++;
+            }
+        }
+        return ready;
+    }
+
+    /** Stream de um user: listenKey, ligação e caches de saldos/ordens. */
+    static final class Session {
+        final UUID userId;
+        final String encryptedApiKey;
+        final String encryptedSecretKey;
+        final ConcurrentHashMap<String, AccountBalance> balances = new ConcurrentHashMap<>();
+        // Últimas ordens por orderId (protegido pelo lock do próprio mapa)
+        final Map<Long, OrderUpdateEvent> orders = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, OrderUpdateEvent> eldest) {
+                return size() > MAX_ORDERS_PER_USER;
+            }
+        };
+
+        volatile String listenKey;
+        volatile Disposable connection;
+        volatile boolean ready;
+        volatile long lastAccess = System.currentTimeMillis();
+
+        Session(UUID userId, String encryptedApiKey, String encryptedSecretKey) {
+            this.userId = userId;
+            this.encryptedApiKey = encryptedApiKey;
+            this.encryptedSecretKey = encryptedSecretKey;
+        }
+
+        // Só substitui o saldo guardado por um igual ou mais recente
+        void applyBalance(AccountBalance balance) {
+            balances.merge(balance.asset, balance,
+                    (current, incoming) -> incoming.updateTime >= current.updateTime ? incoming : current);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.binance_backend.benchmark;
+
+import com.example.binance_backend.service.HmacSigner;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assinaturas por segundo de uma query de /api/v3/order:
+ * - legacy: caminho antigo do BinanceClient (TreeMap → String, Mac.getInstance + init,
+ *   hex com String.format por byte)
+ * - signer: HmacSigner (Mac em cache por thread, buffer reutilizado, hex por tabela)
+ *
+ * Para correr (com o perfil de GC):
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *        com.example.binance_backend.benchmark.HmacSignerBenchmark
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HmacSignerBenchmark {
+
+    private static final String SECRET = "NhqPtmdSJYdKjVHjA7PZj4Mge3R5YNiP1e3UZjInClVN65XAbvqqM6A7H5fATj0j";
+
+    private final HmacSigner signer = new HmacSigner();
+    private long timestamp = 1_700_000_000_000L;
+
+    @Benchmark
+    public String legacy() throws Exception {
+        Map<String, String> params = new TreeMap<>();
+        params.put("symbol", "BTCUSDT");
+        params.put("side", "BUY");
+        params.put("type", "LIMIT");
+        params.put("quantity", "0.00150000");
+        params.put("price", "65000.5");
+        params.put("timestamp", String.valueOf(timestamp++));
+
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> e : params.entrySet()) {
+            if (sb.length() > 0) sb.append("&");
+            sb.append(e.getKey()).append("=").append(e.getValue());
+        }
+        String queryString = sb.toString();
+
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(), "HmacSHA256"));
+        byte[] hash = mac.doFinal(queryString.getBytes());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : hash) {
+            hex.append(String.format("%02x", b));
+        }
+        return queryString + "&signature=" + hex;
+    }
+
+    @Benchmark
+    public String signer() {
+        return signer.query()
+                .param("symbol", "BTCUSDT")
+                .param("side", "BUY")
+                .param("type", "LIMIT")
+                .param("quantity", "0.00150000")
+                .param("price", "65000.5")
+                .param("timestamp", timestamp++)
+                .signWith(SECRET);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HmacSignerBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
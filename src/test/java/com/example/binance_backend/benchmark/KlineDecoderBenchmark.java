@@ -0,0 +1,111 @@
+package com.example.binance_backend.benchmark;
+
+import com.example.binance_backend.service.marketdata.CandleSeries;
+import com.example.binance_backend.service.marketdata.KlineDecoder;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compara a descodificação de /api/v3/klines:
+ * - treeToBigDecimal: caminho antigo (JsonNode[] + new BigDecimal(asText()) por campo)
+ * - streamingToSeries: KlineDecoder (JsonParser) a escrever diretamente num CandleSeries
+ *
+ * Para correr (com o perfil de GC):
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ *   java -cp target/test-classes:target/classes:$(cat target/cp.txt) \
+ *        com.example.binance_backend.benchmark.KlineDecoderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KlineDecoderBenchmark {
+
+    @Param({"50", "500", "1000"})
+    int limit;
+
+    private byte[] body;
+    private ObjectMapper objectMapper;
+    private CandleSeries series;
+
+    @Setup
+    public void setUp() {
+        body = sampleResponse(limit).getBytes(StandardCharsets.UTF_8);
+        objectMapper = new ObjectMapper();
+        series = new CandleSeries(1000);
+    }
+
+    @Benchmark
+    public void treeToBigDecimal(Blackhole bh) throws IOException {
+        JsonNode[] raw = objectMapper.readValue(body, JsonNode[].class);
+        List<BigDecimal[]> candles = new ArrayList<>();
+        for (JsonNode arr : raw) {
+            long openTime = arr.get(0).asLong();
+            BigDecimal open  = new BigDecimal(arr.get(1).asText());
+            BigDecimal high  = new BigDecimal(arr.get(2).asText());
+            BigDecimal low   = new BigDecimal(arr.get(3).asText());
+            BigDecimal close = new BigDecimal(arr.get(4).asText());
+            bh.consume(openTime);
+            candles.add(new BigDecimal[]{open, high, low, close});
+        }
+        bh.consume(candles);
+    }
+
+    @Benchmark
+    public void streamingToSeries(Blackhole bh) throws IOException {
+        bh.consume(KlineDecoder.decode(body, series));
+    }
+
+    static String sampleResponse(int count) {
+        Random random = new Random(42);
+        long openTime = 1_700_000_000_000L;
+        double price = 27_000;
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            double open = price;
+            double close = price + (random.nextDouble() - 0.5) * 50;
+            double high = Math.max(open, close) + random.nextDouble() * 10;
+            double low = Math.min(open, close) - random.nextDouble() * 10;
+            if (i > 0) sb.append(',');
+            sb.append('[').append(openTime).append(',')
+                    .append(quoted(open)).append(',').append(quoted(high)).append(',')
+                    .append(quoted(low)).append(',').append(quoted(close)).append(',')
+                    .append(quoted(random.nextDouble() * 100)).append(',')
+                    .append(openTime + 299_999).append(',')
+                    .append(quoted(random.nextDouble() * 1_000_000)).append(',')
+                    .append(random.nextInt(5000)).append(',')
+                    .append(quoted(random.nextDouble() * 50)).append(',')
+                    .append(quoted(random.nextDouble() * 500_000)).append(",\"0\"]");
+            openTime += 300_000;
+            price = close;
+        }
+        return sb.append(']').toString();
+    }
+
+    private static String quoted(double value) {
+        return "\"" + String.format(java.util.Locale.ROOT, "%.8f", value) + "\"";
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(KlineDecoderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.binance_backend.repository;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.model.*;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A query dos bots ativos devolve, numa só ida à BD, as settings, as credenciais e a trade
+ * em aberto no par de cada user com bot ligado.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:activebots;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+class BotSettingsRepositoryTest {
+
+    @Autowired private UserRepository userRepo;
+    @Autowired private BotSettingsRepository settingsRepo;
+    @Autowired private BotStateRepository stateRepo;
+    @Autowired private UserCredentialsRepository credentialsRepo;
+    @Autowired private BotTradeRepository tradeRepo;
+    @Autowired private TestEntityManager entityManager;
+
+    @Test
+    void loadsSettingsCredentialsAndOpenTradeOfActiveBotsInOneQuery() {
+        User withTrade = user("a", "BTCUSDT", true, true);
+        User withoutTrade = user("b", "BTCUSDT", true, true);
+        User noCredentials = user("c", "BTCUSDT", true, false);
+        user("d", "BTCUSDT", false, true);   // bot desligado
+        User other = user("e", "ETHUSDT", true, true);
+
+        UUID openId = trade(withTrade, "BTCUSDT", "OPEN", "100").getId();
+        trade(withTrade, "BTCUSDT", "CLOSED", "90");
+        trade(withoutTrade, "ETHUSDT", "OPEN", "10");
+
+        Map<UUID, ActiveBot> bots = settingsRepo.findActiveBots().stream()
+                .collect(Collectors.toMap(b -> b.userId, Function.identity()));
+
+        assertThat(bots.keySet()).containsExactlyInAnyOrder(withTrade.getId(), withoutTrade.getId(), noCredentials.getId(), other.getId());
+        assertThat(bots.get(other.getId()).tradingPair).isEqualTo("ETHUSDT");
+
+        ActiveBot a = bots.get(withTrade.getId());
+        assertThat(a.hasOpenTrade()).isTrue();
+        assertThat(a.openTradeId).isEqualTo(openId);
+        assertThat(a.openTradePrice).isEqualByComparingTo("100");
+        assertThat(a.hasCredentials()).isTrue();
+        assertThat(a.encryptedApiKey).isEqualTo("key-a");
+        assertThat(a.takeProfitPerc).isEqualByComparingTo("2");
+        assertThat(a.rsiPeriod()).isEqualTo(30);
+
+        assertThat(bots.get(withoutTrade.getId()).hasOpenTrade()).isFalse();
+        assertThat(bots.get(noCredentials.getId()).hasCredentials()).isFalse();
+
+        List<ActiveBot> single = settingsRepo.findActiveBotsByUserId(withTrade.getId());
+        assertThat(single).extracting(b -> b.openTradeId).containsExactly(openId);
+    }
+
+    @Test
+    void returnsOneRowPerBotWithTheLatestTradeInProgress() {
+        User user = user("f", "BTCUSDT", true, true);
+        UUID openId = trade(user, "BTCUSDT", "OPEN", "100").getId();
+        tradeRepo.flush();
+        // A trade OPEN é anterior à BUY ainda pendente
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE bot_trades SET created_at = created_at - INTERVAL '1' HOUR WHERE id = :id")
+                .setParameter("id", openId)
+                .executeUpdate();
+        UUID pendingId = trade(user, "BTCUSDT", "PENDING", "101").getId();
+
+        assertThat(settingsRepo.findActiveBots()).filteredOn(b -> b.userId.equals(user.getId()))
+                .extracting(b -> b.openTradeId).containsExactly(pendingId);
+        assertThat(settingsRepo.findActiveBotsByUserId(user.getId()))
+                .extracting(b -> b.openTradeStatus).containsExactly("PENDING");
+    }
+
+    @Test
+    void tradesHiddenByANewerTradeOfTheSamePairAreReported() {
+        User user = user("g", "BTCUSDT", true, true);
+        UUID olderId = trade(user, "BTCUSDT", "OPEN", "100").getId();
+        tradeRepo.flush();
+        entityManager.getEntityManager()
+                .createNativeQuery("UPDATE bot_trades SET created_at = created_at - INTERVAL '1' HOUR WHERE id = :id")
+                .setParameter("id", olderId)
+                .executeUpdate();
+        UUID newerId = trade(user, "BTCUSDT", "OPEN", "101").getId();
+        trade(user, "ETHUSDT", "OPEN", "10");
+        trade(user, "BTCUSDT", "CLOSED", "90");
+
+        // O bot vê só a mais recente; a outra trade OPEN do par é reportada
+        assertThat(settingsRepo.findActiveBotsByUserId(user.getId()))
+                .extracting(b -> b.openTradeId).containsExactly(newerId);
+        assertThat(settingsRepo.findTradesHiddenByNewerTrade())
+                .extracting(BotTrade::getId).containsExactly(olderId);
+    }
+
+    private User user(String name, String pair, boolean active, boolean credentials) {
+        User user = new User();
+        user.setEmail(name + "@test.local");
+        user.setUsername(name);
+        user.setPasswordHash("x");
+        userRepo.save(user);
+
+        BotSettings settings = new BotSettings();
+        settings.setUser(user);
+        settings.setTradingPair(pair);
+        settings.setOrderType("MARKET");
+        settings.setTradeAmount(new BigDecimal("50"));
+        settings.setStopLossPerc(new BigDecimal("1"));
+        settings.setTakeProfitPerc(new BigDecimal("2"));
+        settings.setRsiEnabled(true);
+        settings.setRsiThreshold(30);
+        settingsRepo.save(settings);
+
+        BotState state = new BotState();
+        state.setUser(user);
+        state.setActive(active);
+        stateRepo.save(state);
+
+        if (credentials) {
+            UserCredentials creds = new UserCredentials();
+            creds.setUser(user);
+            creds.setEncryptedApiKey("key-" + name);
+            creds.setEncryptedSecretKey("secret-" + name);
+            credentialsRepo.save(creds);
+        }
+        return user;
+    }
+
+    private BotTrade trade(User user, String symbol, String status, String price) {
+        BotTrade trade = new BotTrade();
+        trade.setUser(user);
+        trade.setSymbol(symbol);
+        trade.setSide("buy");
+        trade.setAmount(new BigDecimal("0.5"));
+        trade.setPrice(new BigDecimal(price));
+        trade.setStatus(status);
+        return tradeRepo.save(trade);
+    }
+}
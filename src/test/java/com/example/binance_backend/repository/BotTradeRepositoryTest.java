@@ -0,0 +1,179 @@
+package com.example.binance_backend.repository;
+
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.User;
+import com.example.binance_backend.service.BotTradeService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * As mudanças de estado das trades são UPDATEs condicionais: de várias chamadas para a mesma
+ * transição (resposta ao envio, executionReport, reconciliação) só a primeira muda a linha.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:bottrades;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@Import(BotTradeService.class)
+class BotTradeRepositoryTest {
+
+    @Autowired private UserRepository userRepo;
+    @Autowired private BotTradeRepository tradeRepo;
+    @Autowired private BotTradeService tradeService;
+
+    @Test
+    void pendingTradeIsConfirmedOnlyOnceAndNeverReopenedAfterFailing() {
+        User user = user("a");
+        pending(user, "bot-1");
+        pending(user, "bot-2");
+
+        assertThat(tradeRepo.updateStatusByClientOrderId("bot-1", "PENDING", "OPEN")).isEqualTo(1);
+        assertThat(tradeRepo.updateStatusByClientOrderId("bot-1", "PENDING", "OPEN")).isZero();
+        // Um NEW atrasado já não toca numa trade aberta
+        assertThat(tradeRepo.updatePendingOrderStatus("bot-1", "9", "NEW", OffsetDateTime.now())).isZero();
+        assertThat(tradeRepo.findByClientOrderId("bot-1").orElseThrow().getStatus()).isEqualTo("OPEN");
+
+        assertThat(tradeRepo.updatePendingOrderStatus("bot-2", "7", "NEW", OffsetDateTime.now())).isEqualTo(1);
+        assertThat(tradeRepo.updatePendingOrderStatus("bot-2", "7", "NEW", OffsetDateTime.now())).isZero();
+        assertThat(tradeRepo.updateStatusByClientOrderId("bot-2", "PENDING", "FAILED")).isEqualTo(1);
+        assertThat(tradeRepo.updateStatusByClientOrderId("bot-2", "PENDING", "OPEN")).isZero();
+        BotTrade failed = tradeRepo.findByClientOrderId("bot-2").orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo("FAILED");
+        assertThat(failed.getOrderStatus()).isEqualTo("NEW");
+    }
+
+    @Test
+    void openTradeIsClosedAndCreditedOnlyOnce() {
+        User user = user("b");
+        BotTrade trade = pending(user, "bot-3");
+        tradeRepo.updateStatusByClientOrderId("bot-3", "PENDING", "OPEN");
+
+        // Fill do OCO pelo stream e pela reconciliação REST
+        assertThat(tradeService.closeTrade(trade.getId(), new BigDecimal("66000"), "TAKE_PROFIT")).isTrue();
+        assertThat(tradeService.closeTrade(trade.getId(), new BigDecimal("66000"), "TAKE_PROFIT")).isFalse();
+        // O OCO já não pode ser associado (nem reabrir a trade)
+        assertThat(tradeService.setExitOrders(trade.getId(), 5L)).isFalse();
+        tradeRepo.flush();
+
+        assertThat(tradeRepo.findByUserOrderByCreatedAtDesc(user))
+                .filteredOn(t -> "sell".equals(t.getSide())).hasSize(1);
+        assertThat(tradeRepo.findById(trade.getId()).orElseThrow().getStatus()).isEqualTo("CLOSED");
+        assertThat(userRepo.findById(user.getId()).orElseThrow().getBalance()).isEqualByComparingTo("66");
+    }
+
+    @Test
+    void sellIsStartedOnlyOnceAndClosesAtTheReasonRecordedOnSend() {
+        User user = user("c");
+        BotTrade trade = pending(user, "bot-4");
+        tradeRepo.updateStatusByClientOrderId("bot-4", "PENDING", "OPEN");
+
+        assertThat(tradeService.startClosing(trade.getId(), "bot-sell-1", "STOP_LOSS")).isTrue();
+        // Tick seguinte com a SELL ainda sem resposta: não há segunda venda
+        assertThat(tradeService.startClosing(trade.getId(), "bot-sell-2", "STOP_LOSS")).isFalse();
+
+        // SELL expirada sem execução: a trade volta a estar aberta e pode ser vendida de novo
+        assertThat(tradeService.reopenClosingTrade("bot-sell-1")).isTrue();
+        assertThat(tradeService.startClosing(trade.getId(), "bot-sell-2", "TAKE_PROFIT")).isTrue();
+        assertThat(tradeService.closeSoldTrade("bot-sell-1", new BigDecimal("66000"))).isFalse();
+        assertThat(tradeService.closeSoldTrade("bot-sell-2", new BigDecimal("66000"))).isTrue();
+        assertThat(tradeService.closeSoldTrade("bot-sell-2", new BigDecimal("66000"))).isFalse();
+        tradeRepo.flush();
+
+        BotTrade closed = tradeRepo.findById(trade.getId()).orElseThrow();
+        assertThat(closed.getStatus()).isEqualTo("CLOSED");
+        assertThat(closed.getCloseReason()).isEqualTo("TAKE_PROFIT");
+        assertThat(userRepo.findById(user.getId()).orElseThrow().getBalance()).isEqualByComparingTo("66");
+    }
+
+    @Test
+    void tradeProtectedByAnOcoIsNotSoldByTheBotAndIsCreditedNetOfCommission() {
+        User user = user("d");
+        BotTrade trade = pending(user, "bot-5");
+        tradeRepo.updateStatusByClientOrderId("bot-5", "PENDING", "OPEN");
+
+        assertThat(tradeService.startProtecting(trade.getId())).isTrue();
+        // OCO a ser enviado e depois já associado: a SELL do bot não passa
+        assertThat(tradeService.startClosing(trade.getId(), "bot-sell-5", "STOP_LOSS")).isFalse();
+        assertThat(tradeService.finishProtecting(trade.getId(), 7L)).isTrue();
+        assertThat(tradeService.startClosing(trade.getId(), "bot-sell-5", "STOP_LOSS")).isFalse();
+
+        // O OCO vendeu 0.00099 BTC (a compra menos a comissão) por 65.34 USDT, com 0.06534 USDT de comissão
+        assertThat(tradeService.closeExchangeExit(trade.getId(), new BigDecimal("0.00099"), new BigDecimal("65.34"),
+                new BigDecimal("0.06534"), "TAKE_PROFIT")).isTrue();
+        tradeRepo.flush();
+
+        BotTrade sell = tradeRepo.findByUserOrderByCreatedAtDesc(user).stream()
+                .filter(t -> "sell".equals(t.getSide())).findFirst().orElseThrow();
+        assertThat(sell.getAmount()).isEqualByComparingTo("0.00099");
+        assertThat(sell.getPrice()).isEqualByComparingTo("66000");
+        assertThat(sell.getProfitEstimate()).isEqualByComparingTo("0.92466");
+        assertThat(userRepo.findById(user.getId()).orElseThrow().getBalance()).isEqualByComparingTo("65.27466");
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void concurrentSubmissionsOfTheSameOrderRegisterOnePendingTrade() throws Exception {
+        // Sem transação do teste: cada envio faz commit como em produção
+        User user = user("e");
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<BotTrade>> results = new ArrayList<>();
+            for (int i = 0; i < 2; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return tradeService.openPendingTrade(user.getId(), "BTCUSDT", new BigDecimal("0.001"),
+                            new BigDecimal("65000"), "bot-6");
+                }));
+            }
+            start.countDown();
+
+            List<BotTrade> opened = new ArrayList<>();
+            for (Future<BotTrade> result : results) {
+                opened.add(result.get(10, TimeUnit.SECONDS));
+            }
+            assertThat(opened).filteredOn(Objects::nonNull).hasSize(1);
+            assertThat(tradeRepo.findByClientOrderId("bot-6")).isPresent();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private User user(String name) {
+        User user = new User();
+        user.setEmail(name + "@test.local");
+        user.setUsername(name);
+        user.setPasswordHash("x");
+        return userRepo.save(user);
+    }
+
+    private BotTrade pending(User user, String clientOrderId) {
+        BotTrade trade = new BotTrade();
+        trade.setUser(user);
+        trade.setSymbol("BTCUSDT");
+        trade.setSide("buy");
+        trade.setAmount(new BigDecimal("0.001"));
+        trade.setPrice(new BigDecimal("65000"));
+        trade.setStatus("PENDING");
+        trade.setClientOrderId(clientOrderId);
+        return tradeRepo.saveAndFlush(trade);
+    }
+}
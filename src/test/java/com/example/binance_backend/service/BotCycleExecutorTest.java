@@ -0,0 +1,69 @@
+package com.example.binance_backend.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BotCycleExecutorTest {
+
+    private final BotCycleExecutor executor = new BotCycleExecutor(4, 500);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void tasksRunInParallelWithIsolatedFailuresAndTimeouts() throws InterruptedException {
+        Set<Integer> done = ConcurrentHashMap.newKeySet();
+        Set<Integer> interrupted = ConcurrentHashMap.newKeySet();
+        CountDownLatch finished = new CountDownLatch(8);
+
+        long start = System.currentTimeMillis();
+        for (int user = 1; user <= 8; user++) {
+            int u = user;
+            executor.submit("user " + u, () -> {
+                try {
+                    if (u == 3) {
+                        throw new IllegalStateException("falha simulada");
+                    }
+                    if (u == 5) {
+                        sleep(10_000); // nunca termina a tempo: é interrompido pelo timeout
+                    }
+                    sleep(100);
+                    done.add(u);
+                } catch (IllegalStateException e) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        interrupted.add(u);
+                    }
+                    throw e;
+                } finally {
+                    finished.countDown();
+                }
+            });
+        }
+
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue();
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertThat(done).containsExactlyInAnyOrder(1, 2, 4, 6, 7, 8);
+        assertThat(interrupted).containsExactly(5);
+        // 8 users x 100 ms em sequência seriam 800 ms + 10 s; em paralelo fica perto do timeout
+        assertThat(elapsed).isLessThan(2_000);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrompido", e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.service.exchange.ExchangeInfoCache;
+import com.example.binance_backend.service.indicator.MacdEngine;
+import com.example.binance_backend.service.marketdata.CandleClosedEvent;
+import com.example.binance_backend.service.marketdata.CandleSeries;
+import com.example.binance_backend.service.marketdata.MarketDataCache;
+import com.example.binance_backend.service.marketdata.PriceTickEvent;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BotServiceTest {
+
+    private final MarketDataCache marketData = mock(MarketDataCache.class);
+    private final BotTradeService tradeService = mock(BotTradeService.class);
+    private final ActiveBotRegistry registry = mock(ActiveBotRegistry.class);
+    private final BotCycleExecutor cycleExecutor = new BotCycleExecutor(4, 5_000);
+    private final OrderPipeline pipeline = new OrderPipeline(4, 1, 5_000, new SimpleMeterRegistry());
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private BotService service;
+
+    @BeforeEach
+    void setUp() {
+        ShardCoordinator singleNode = new ShardCoordinator(null, null, mock(PlatformTransactionManager.class), false, 64, 20_000, "test");
+        service = new BotService(mock(BinanceClient.class), marketData, new MacdEngine(), cycleExecutor, tradeService,
+                singleNode, registry, pipeline, mock(ExchangeInfoCache.class), mock(OrderReconciler.class), meters);
+        ReflectionTestUtils.setField(service, "simulationMode", true);
+        ReflectionTestUtils.setField(service, "interval", "5m");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        cycleExecutor.shutdown();
+    }
+
+    @Test
+    void candleCloseBuysForTheBotsOfThePairWhoseSignalsAgree() throws Exception {
+        // Fechos sempre a descer: RSI 0, abaixo do limite de 14
+        when(marketData.getCandles(eq("BTCUSDT"), eq("5m"), any(Integer.class))).thenReturn(falling(30));
+        ActiveBot buyer = bot(null, null);
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(buyer));
+        CountDownLatch refreshed = refreshes(buyer.userId);
+
+        service.onCandleClosed(new CandleClosedEvent("BTCUSDT", "5m", 0L, 299_999L, System.currentTimeMillis()));
+
+        // 10 USDT ao último fecho (71)
+        verify(tradeService, timeout(2_000)).openSimulatedTrade(eq(buyer.userId), eq("BTCUSDT"),
+                eq(new BigDecimal("0.14084507")), eq(new BigDecimal("71.0")));
+        assertThat(refreshed.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void candleOfAnotherIntervalIsIgnored() {
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(bot(null, null)));
+
+        service.onCandleClosed(new CandleClosedEvent("BTCUSDT", "1h", 0L, 3_599_999L, System.currentTimeMillis()));
+
+        verify(registry, after(200).never()).bySymbol(anyString());
+    }
+
+    @Test
+    void priceTickClosesTradesThatReachTakeProfitOrStopLoss() {
+        ActiveBot profit = bot(UUID.randomUUID(), "OPEN");
+        // Sem TP/SL definidos: só sai por sinal de venda no fecho do candle
+        ActiveBot holding = new ActiveBot(UUID.randomUUID(), "BTCUSDT", "MARKET", BigDecimal.TEN, null, null, null,
+                null, null, true, 14, false, false, "key", "secret",
+                UUID.randomUUID(), "OPEN", new BigDecimal("100"), BigDecimal.ONE, null);
+        ActiveBot loss = bot("ETHUSDT", UUID.randomUUID(), "OPEN");
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(profit, holding));
+        when(registry.bySymbol("ETHUSDT")).thenReturn(List.of(loss));
+
+        // Entrada a 100 com TP 2% e SL 1%
+        service.onPriceTick(new PriceTickEvent("BTCUSDT", 102.5, System.currentTimeMillis()));
+        service.onPriceTick(new PriceTickEvent("ETHUSDT", 98.9, System.currentTimeMillis()));
+
+        verify(tradeService, timeout(2_000)).closeTrade(profit.openTradeId, new BigDecimal("102.5"), "TAKE_PROFIT");
+        verify(tradeService, timeout(2_000)).closeTrade(loss.openTradeId, new BigDecimal("98.9"), "STOP_LOSS");
+        verify(tradeService, after(200).never()).closeTrade(eq(holding.openTradeId), any(), any());
+    }
+
+    @Test
+    void tradeAlreadyClosingIsNotClosedAgainByTheNextTick() throws Exception {
+        ActiveBot bot = bot(UUID.randomUUID(), "OPEN");
+        // O registo só é recarregado no fim do fecho: o tick seguinte ainda vê a trade OPEN
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(bot));
+        CountDownLatch refreshed = refreshes(bot.userId);
+        CountDownLatch closing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger closes = new AtomicInteger();
+        doAnswer(inv -> {
+            closes.incrementAndGet();
+            closing.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return true;
+        }).when(tradeService).closeTrade(any(), any(), any());
+
+        service.onPriceTick(new PriceTickEvent("BTCUSDT", 103, System.currentTimeMillis()));
+        assertThat(closing.await(2, TimeUnit.SECONDS)).isTrue();
+        // Repetido até ser verificado: descartado se a verificação do primeiro tick ainda não terminou
+        waitUntil(() -> {
+            service.onPriceTick(new PriceTickEvent("BTCUSDT", 104, System.currentTimeMillis()));
+            return tickChecks() >= 2;
+        });
+
+        verify(tradeService, after(200).times(1)).closeTrade(any(), any(), any());
+        release.countDown();
+        assertThat(refreshed.await(2, TimeUnit.SECONDS)).isTrue();
+
+        // Terminado o fecho, a trade deixa de estar bloqueada (logo a seguir ao refresh do registo)
+        waitUntil(() -> {
+            service.onPriceTick(new PriceTickEvent("BTCUSDT", 105, System.currentTimeMillis()));
+            return closes.get() >= 2;
+        });
+    }
+
+    @Test
+    void tradesWithOrderInFlightAreNotEvaluated() throws Exception {
+        when(marketData.getCandles(eq("BTCUSDT"), eq("5m"), any(Integer.class))).thenReturn(falling(30));
+        ActiveBot pending = bot(UUID.randomUUID(), "PENDING");
+        ActiveBot closing = bot(UUID.randomUUID(), "CLOSING");
+        ActiveBot open = bot(UUID.randomUUID(), "OPEN");
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(pending, closing, open));
+
+        service.onPriceTick(new PriceTickEvent("BTCUSDT", 150, System.currentTimeMillis()));
+        verify(tradeService, timeout(2_000)).closeTrade(open.openTradeId, new BigDecimal("150.0"), "TAKE_PROFIT");
+
+        service.onCandleClosed(new CandleClosedEvent("BTCUSDT", "5m", 0L, 299_999L, System.currentTimeMillis()));
+        waitUntil(() -> candleChecks() == 1);
+
+        verify(tradeService, after(200).never()).closeTrade(eq(pending.openTradeId), any(), any());
+        verify(tradeService, never()).closeTrade(eq(closing.openTradeId), any(), any());
+        verify(tradeService, never()).openSimulatedTrade(any(), any(), any(), any());
+    }
+
+    @Test
+    void failingBotDoesNotStopTheOthersOfThePair() {
+        when(marketData.getCandles(eq("BTCUSDT"), eq("5m"), any(Integer.class))).thenReturn(falling(30));
+        // RSI ativo sem limite: a avaliação deste bot falha
+        ActiveBot invalid = new ActiveBot(UUID.randomUUID(), "BTCUSDT", "MARKET", BigDecimal.TEN, null, null, null,
+                BigDecimal.ONE, new BigDecimal("2"), true, null, false, false, "key", "secret",
+                null, null, null, null, null);
+        ActiveBot buyer = bot(null, null);
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(invalid, buyer));
+
+        service.onCandleClosed(new CandleClosedEvent("BTCUSDT", "5m", 0L, 299_999L, System.currentTimeMillis()));
+
+        verify(tradeService, timeout(2_000)).openSimulatedTrade(eq(buyer.userId), any(), any(), any());
+        verify(tradeService, after(200).never()).openSimulatedTrade(eq(invalid.userId), any(), any(), any());
+    }
+
+    @Test
+    void failedCloseDoesNotStopTheOthersAndIsRetriedOnTheNextTick() throws Exception {
+        ActiveBot failing = bot(UUID.randomUUID(), "OPEN");
+        ActiveBot other = bot(UUID.randomUUID(), "OPEN");
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(failing, other));
+        AtomicInteger attempts = new AtomicInteger();
+        when(tradeService.closeTrade(eq(failing.openTradeId), any(), any())).thenAnswer(inv -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("base de dados indisponivel");
+            }
+            return true;
+        });
+        CountDownLatch refreshed = refreshes(failing.userId);
+
+        service.onPriceTick(new PriceTickEvent("BTCUSDT", 103, System.currentTimeMillis()));
+
+        verify(tradeService, timeout(2_000)).closeTrade(other.openTradeId, new BigDecimal("103.0"), "TAKE_PROFIT");
+        assertThat(refreshed.await(2, TimeUnit.SECONDS)).isTrue();
+
+        // O fecho falhado liberta a trade (logo a seguir ao refresh do registo) e o tick seguinte tenta de novo
+        waitUntil(() -> {
+            service.onPriceTick(new PriceTickEvent("BTCUSDT", 103, System.currentTimeMillis()));
+            return attempts.get() >= 2;
+        });
+    }
+
+    // refreshUser é synchronized: verify com timeout ficaria com o monitor do mock
+    private CountDownLatch refreshes(UUID userId) {
+        CountDownLatch refreshed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            refreshed.countDown();
+            return null;
+        }).when(registry).refreshUser(userId);
+        return refreshed;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private long tickChecks() {
+        return meters.get("bot.trigger.latency").tag("trigger", "price_tick").timer().count();
+    }
+
+    private long candleChecks() {
+        return meters.get("bot.trigger.latency").tag("trigger", "candle_close").timer().count();
+    }
+
+    // Bot com RSI(14), TP 2% e SL 1%; com trade (entrada a 100) se tradeId não for null
+    private static ActiveBot bot(UUID tradeId, String status) {
+        return bot("BTCUSDT", tradeId, status);
+    }
+
+    private static ActiveBot bot(String symbol, UUID tradeId, String status) {
+        boolean open = tradeId != null;
+        return new ActiveBot(UUID.randomUUID(), symbol, "MARKET", BigDecimal.TEN, null, null, null,
+                BigDecimal.ONE, new BigDecimal("2"), true, 14, false, false, "key", "secret",
+                tradeId, status, open ? new BigDecimal("100") : null, open ? BigDecimal.ONE : null, null);
+    }
+
+    // count candles de 5m com fechos a descer de 100 até 100 - count + 1
+    private static CandleSeries.View falling(int count) {
+        CandleSeries series = new CandleSeries(count);
+        for (int i = 0; i < count; i++) {
+            double close = 100 - i;
+            series.upsert(i * 300_000L, close + 1, close + 1, close, close, 10, i * 300_000L + 299_999, 5);
+        }
+        return series.tail(count);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.binance_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HmacSignerTest {
+
+    // Exemplo de pedido assinado da documentação da API da Binance
+    private static final String SECRET = "NhqPtmdSJYdKjVHjA7PZj4Mge3R5YNiP1e3UZjInClVN65XAbvqqM6A7H5fATj0j";
+    private static final String QUERY = "symbol=LTCBTC&side=BUY&type=LIMIT&timeInForce=GTC&quantity=1&price=0.1&recvWindow=5000&timestamp=1499827319559";
+    private static final String SIGNATURE = "c8db56825ae71d6d79447849e617115f4a920fa2acdcab2b053c4b2838bd6b71";
+
+    private final HmacSigner signer = new HmacSigner();
+
+    @Test
+    void signsLikeTheBinanceDocumentation() {
+        assertThat(signer.sign(SECRET, QUERY)).isEqualTo(SIGNATURE);
+
+        String signed = signer.query()
+                .param("symbol", "LTCBTC")
+                .param("side", "BUY")
+                .param("type", "LIMIT")
+                .param("timeInForce", "GTC")
+                .param("quantity", "1")
+                .param("price", "0.1")
+                .param("recvWindow", 5000)
+                .param("timestamp", 1499827319559L)
+                .signWith(SECRET);
+        assertThat(signed).isEqualTo(QUERY + "&signature=" + SIGNATURE);
+    }
+
+    @Test
+    void reusesBuffersAndMacsAcrossSecretsOnTheSameThread() {
+        String other = signer.sign("outro-secret", QUERY);
+        assertThat(other).hasSize(64).isNotEqualTo(SIGNATURE);
+
+        // Mais secrets do que a cache guarda: os mais antigos são reinicializados sem erro
+        for (int i = 0; i < HmacSigner.MAX_KEYS_PER_THREAD * 2; i++) {
+            signer.sign("secret-" + i, QUERY);
+        }
+        assertThat(signer.sign(SECRET, QUERY)).isEqualTo(SIGNATURE);
+        assertThat(signer.sign("outro-secret", QUERY)).isEqualTo(other);
+        assertThat(signer.query().param("timestamp", 1).signWith(SECRET)).startsWith("timestamp=1&signature=");
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.User;
+import com.example.binance_backend.model.UserCredentials;
+import com.example.binance_backend.repository.BotTradeRepository;
+import com.example.binance_backend.repository.UserCredentialsRepository;
+import com.example.binance_backend.service.exchange.ExchangeInfoCache;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.service.userdata.OrderUpdateEvent;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OcoExitManagerTest {
+
+    private static final String BTCUSDT = "{\"symbol\":\"BTCUSDT\",\"baseAsset\":\"BTC\",\"quoteAsset\":\"USDT\",\"filters\":["
+            + "{\"filterType\":\"PRICE_FILTER\",\"minPrice\":\"0.01000000\",\"maxPrice\":\"1000000.00000000\",\"tickSize\":\"0.01000000\"},"
+            + "{\"filterType\":\"LOT_SIZE\",\"minQty\":\"0.00001000\",\"maxQty\":\"9000.00000000\",\"stepSize\":\"0.00001000\"},"
+            + "{\"filterType\":\"NOTIONAL\",\"minNotional\":\"5.00000000\",\"applyMinToMarket\":true}"
+            + "]}";
+
+    private final FakeBinanceServer server = new FakeBinanceServer();
+    private final BotTradeService tradeService = mock(BotTradeService.class);
+    private final BotTradeRepository tradeRepo = mock(BotTradeRepository.class);
+    private final ActiveBotRegistry registry = mock(ActiveBotRegistry.class);
+    private final UserCredentialsRepository credentialsRepo = mock(UserCredentialsRepository.class);
+    private final OrderPipeline pipeline = new OrderPipeline(4, 1, 5_000, new SimpleMeterRegistry());
+    private final BotCycleExecutor cycleExecutor = new BotCycleExecutor(2, 5_000);
+
+    @BeforeEach
+    void setUp() {
+        when(tradeService.startProtecting(any())).thenReturn(true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        cycleExecutor.shutdown();
+        server.close();
+    }
+
+    @Test
+    void placesRoundedOcoAfterBuyAndLinksItToTheTrade() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        UUID tradeId = UUID.randomUUID();
+        when(tradeService.finishProtecting(tradeId, 1L)).thenReturn(true);
+        // A trade fica PROTECTING antes de o OCO sair (nenhuma SELL do bot entretanto)
+        List<Integer> ocosWhenMarked = new ArrayList<>();
+        doAnswer(inv -> {
+            ocosWhenMarked.add(server.ocoOrders().size());
+            return true;
+        }).when(tradeService).startProtecting(tradeId);
+
+        // Entrada a 60000.123, TP 2% e SL 1%: preços arredondados ao tickSize, quantidade ao stepSize
+        manager("oco", false).protect(bot(), tradeId, "9", new BigDecimal("0.000166669"), new BigDecimal("60000.123"),
+                List.of(fill("0.000166669", "0.00001", "BNB")));
+
+        verify(tradeService, timeout(2_000)).finishProtecting(tradeId, 1L);
+        assertThat(ocosWhenMarked).containsExactly(0);
+        assertThat(server.ocoOrders()).hasSize(1);
+        assertThat(server.ocoOrders().get(0))
+                .contains("symbol=BTCUSDT", "side=SELL", "listClientOrderId=" + OcoExitManager.listClientOrderId(tradeId),
+                        "quantity=0.00016",
+                        "aboveType=LIMIT_MAKER", "abovePrice=61200.12",
+                        "belowType=STOP_LOSS_LIMIT", "belowStopPrice=59400.12", "belowPrice=59103.12",
+                        "belowTimeInForce=GTC");
+    }
+
+    @Test
+    void leavesTradeMonitoredWhenLegsViolateFiltersOrModeIsMonitor() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+
+        // 0.00005 BTC a ~60000 = 3 USDT < minNotional
+        List<BinanceClient.Fill> fills = List.of(fill("0.001", "0.00001", "BNB"));
+        UUID tooSmall = UUID.randomUUID();
+        manager("oco", false).protect(bot(), tooSmall, "9", new BigDecimal("0.00005"), new BigDecimal("60000"), fills);
+        manager("monitor", false).protect(bot(), UUID.randomUUID(), "9", new BigDecimal("0.001"), new BigDecimal("60000"), fills);
+        manager("oco", true).protect(bot(), UUID.randomUUID(), "9", new BigDecimal("0.001"), new BigDecimal("60000"), fills);
+
+        assertThat(server.ocoOrders()).isEmpty();
+        // A trade marcada antes de validar os filtros volta a OPEN sem OCO
+        verify(tradeService).startProtecting(tooSmall);
+        verify(tradeService).finishProtecting(tooSmall, null);
+        verify(tradeService, never()).finishProtecting(any(), anyLong());
+    }
+
+    @Test
+    void ocoRejectedByBinanceGivesTheExitBackToTheBot() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        server.rejectOco("{\"code\":-2010,\"msg\":\"Account has insufficient balance for requested action.\"}");
+        UUID tradeId = UUID.randomUUID();
+
+        manager("oco", false).protect(bot(), tradeId, "9", new BigDecimal("0.001"), new BigDecimal("60000"),
+                List.of(fill("0.001", "0.00001", "BNB")));
+
+        verify(tradeService, timeout(2_000)).finishProtecting(tradeId, null);
+        verify(tradeService, never()).finishProtecting(any(), anyLong());
+        assertThat(server.ocoOrders()).hasSize(1);
+    }
+
+    @Test
+    void ocoWithoutResponseIsLookedUpByItsListClientOrderId() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        when(tradeService.finishProtecting(any(), any())).thenReturn(true);
+        when(credentialsRepo.findByUser(any())).thenReturn(Optional.of(credentials()));
+        OcoExitManager manager = manager("oco", false);
+
+        // OCO colocado na Binance (resposta perdida) e outro que nunca lá chegou
+        BotTrade placed = protecting();
+        BotTrade lost = protecting();
+        manager.protect(bot(), placed.getId(), "9", new BigDecimal("0.001"), new BigDecimal("60000"),
+                List.of(fill("0.001", "0.00001", "BNB")));
+        verify(tradeService, timeout(2_000)).finishProtecting(placed.getId(), 1L);
+        clearInvocations(tradeService);
+        when(tradeRepo.findProtectingTradesBefore(any())).thenReturn(List.of(placed, lost));
+        when(tradeRepo.findOpenTradesWithExchangeExit()).thenReturn(List.of());
+
+        manager.reconcile();
+
+        verify(tradeService).finishProtecting(placed.getId(), 1L);
+        verify(tradeService).finishProtecting(lost.getId(), null);
+        assertThat(server.ocoOrders()).hasSize(1);
+    }
+
+    @Test
+    void tradeWithOnlyTakeProfitOrOnlyStopLossIsLeftToTheBot() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        List<BinanceClient.Fill> fills = List.of(fill("0.001", "0.00001", "BNB"));
+        OcoExitManager manager = manager("oco", false);
+
+        manager.protect(bot(null, new BigDecimal("2")), UUID.randomUUID(), "9", new BigDecimal("0.001"),
+                new BigDecimal("60000"), fills);
+        manager.protect(bot(BigDecimal.ONE, null), UUID.randomUUID(), "9", new BigDecimal("0.001"),
+                new BigDecimal("60000"), fills);
+
+        assertThat(server.ocoOrders()).isEmpty();
+        verify(tradeService, never()).setExitOrders(any(), anyLong());
+    }
+
+    @Test
+    void ocoQuantityExcludesTheCommissionChargedInTheBaseAsset() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        UUID fromResponse = UUID.randomUUID();
+        UUID fromMyTrades = UUID.randomUUID();
+        when(tradeService.finishProtecting(any(), anyLong())).thenReturn(true);
+        OcoExitManager manager = manager("oco", false);
+
+        // Compra de 0.001 BTC em duas execuções, com 0.1% de comissão em BTC
+        manager.protect(bot(), fromResponse, "9", new BigDecimal("0.00100000"), new BigDecimal("60000"),
+                List.of(fill("0.00060000", "0.00000060", "BTC"), fill("0.00040000", "0.00000040", "BTC")));
+        verify(tradeService, timeout(2_000)).finishProtecting(fromResponse, 1L);
+        assertThat(server.ocoOrders().get(0)).contains("quantity=0.00099");
+
+        // Sem fills (execução vista pelo stream): comissão lida do myTrades da ordem
+        server.setMyTrades("10", "[{\"price\":\"60000\",\"qty\":\"0.00100000\","
+                + "\"commission\":\"0.00000100\",\"commissionAsset\":\"BTC\"}]");
+        manager.protect(bot(), fromMyTrades, "10", new BigDecimal("0.00100000"), new BigDecimal("60000"), null);
+        verify(tradeService, timeout(2_000)).finishProtecting(fromMyTrades, 2L);
+        assertThat(server.myTradesQueries()).containsExactly("10");
+        assertThat(server.ocoOrders().get(1)).contains("quantity=0.00099");
+    }
+
+    @Test
+    void filledLegFromUserDataStreamClosesTheTradeWithTheSoldQuantityNetOfCommission() throws InterruptedException {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        BotTrade trade = protecting();
+        when(tradeRepo.findByExitOrderListIdAndStatus(7L, "OPEN")).thenReturn(Optional.of(trade));
+        when(tradeRepo.findByExitOrderListIdAndStatus(8L, "OPEN")).thenReturn(Optional.of(trade));
+        when(tradeService.closeExchangeExit(any(), any(), any(), any(), any())).thenReturn(true);
+        when(credentialsRepo.findByUser(any())).thenReturn(Optional.of(credentials()));
+        // Execuções da perna de stop do OCO 8, lidas do myTrades
+        server.setMyTrades("72", "[{\"price\":\"59000\",\"qty\":\"0.00050000\",\"commission\":\"0.02950000\",\"commissionAsset\":\"USDT\"},"
+                + "{\"price\":\"59000\",\"qty\":\"0.00049000\",\"commission\":\"0.00001000\",\"commissionAsset\":\"BNB\"}]");
+        // refreshUser é synchronized: verify com timeout ficaria com o monitor do mock
+        CountDownLatch refreshed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            refreshed.countDown();
+            return null;
+        }).when(registry).refreshUser(any());
+        OcoExitManager manager = manager("oco", false);
+
+        // Perna de stop parcialmente executada: ainda não fecha
+        manager.onOrderUpdate(update(7, 71, "STOP_LOSS_LIMIT", "PARTIALLY_FILLED", "0.0005", "0.0005", "29.70", "0.0297"));
+        // Perna de take profit executada de uma vez: 0.00099 por 60.588 USDT, comissão no evento
+        manager.onOrderUpdate(update(7, 71, "LIMIT_MAKER", "FILLED", "0.00099", "0.00099", "60.588", "0.060588"));
+
+        verify(tradeService, timeout(2_000)).closeExchangeExit(trade.getId(), new BigDecimal("0.00099"),
+                new BigDecimal("60.588"), new BigDecimal("0.060588"), "TAKE_PROFIT");
+        verify(tradeService, never()).closeExchangeExit(any(), any(), any(), any(), eq("STOP_LOSS"));
+        assertThat(refreshed.await(2, TimeUnit.SECONDS)).isTrue();
+
+        // Perna de stop executada em duas partes: só a comissão em USDT é descontada
+        manager.onOrderUpdate(update(8, 72, "STOP_LOSS_LIMIT", "FILLED", "0.00049", "0.00099", "58.41", "0.00001"));
+        verify(tradeService, timeout(2_000)).closeExchangeExit(trade.getId(), new BigDecimal("0.00099"),
+                new BigDecimal("58.41"), new BigDecimal("0.02950000"), "STOP_LOSS");
+        assertThat(server.myTradesQueries()).containsExactly("72");
+    }
+
+    private OcoExitManager manager(String exitMode, boolean simulation) {
+        BinanceClient client = new BinanceClient(server.baseUrl());
+        ActiveBotRegistry symbols = mock(ActiveBotRegistry.class);
+        when(symbols.activeSymbols()).thenReturn(Set.of());
+        ExchangeInfoCache exchangeInfo = new ExchangeInfoCache(client, symbols, new SimpleMeterRegistry());
+        ShardCoordinator singleNode = new ShardCoordinator(null, null, mock(PlatformTransactionManager.class), false, 64, 20_000, "test");
+        return new OcoExitManager(client, exchangeInfo, tradeService, tradeRepo, credentialsRepo,
+                pipeline, cycleExecutor, registry, singleNode, new SimpleMeterRegistry(),
+                exitMode, simulation, new BigDecimal("0.5"));
+    }
+
+    private static ActiveBot bot() {
+        return bot(BigDecimal.ONE, new BigDecimal("2"));
+    }
+
+    private static ActiveBot bot(BigDecimal stopLossPerc, BigDecimal takeProfitPerc) {
+        return new ActiveBot(UUID.randomUUID(), "BTCUSDT", "MARKET", BigDecimal.TEN, null, null, null,
+                stopLossPerc, takeProfitPerc, true, 14, false, false, "key", "secret",
+                UUID.randomUUID(), "OPEN", new BigDecimal("60000"), new BigDecimal("0.001"), null);
+    }
+
+    private static BotTrade protecting() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        BotTrade trade = new BotTrade();
+        trade.setId(UUID.randomUUID());
+        trade.setUser(user);
+        trade.setSymbol("BTCUSDT");
+        trade.setStatus("PROTECTING");
+        return trade;
+    }
+
+    private static UserCredentials credentials() {
+        UserCredentials creds = new UserCredentials();
+        creds.setEncryptedApiKey("key");
+        creds.setEncryptedSecretKey("secret");
+        return creds;
+    }
+
+    private static BinanceClient.Fill fill(String qty, String commission, String asset) {
+        BinanceClient.Fill fill = new BinanceClient.Fill();
+        fill.price = new BigDecimal("60000");
+        fill.qty = new BigDecimal(qty);
+        fill.commission = new BigDecimal(commission);
+        fill.commissionAsset = asset;
+        return fill;
+    }
+
+    private static OrderUpdateEvent update(long orderListId, long orderId, String type, String status, String lastQty,
+                                           String qty, String quoteQty, String commission) {
+        return new OrderUpdateEvent(UUID.randomUUID(), "BTCUSDT", "c1", orderId, orderListId, "SELL", type, status, "TRADE",
+                new BigDecimal(lastQty), BigDecimal.ZERO, new BigDecimal(qty), new BigDecimal(quoteQty),
+                new BigDecimal(commission), "USDT", System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.binance_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderPipelineTest {
+
+    private OrderPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void burstOfOrdersIsSentConcurrentlyUpToTheInFlightLimit() throws InterruptedException {
+        pipeline = new OrderPipeline(10, 2, 5_000, new SimpleMeterRegistry());
+        int orders = 40;
+        CountDownLatch done = new CountDownLatch(orders);
+        AtomicInteger current = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        Set<Integer> filled = ConcurrentHashMap.newKeySet();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < orders; i++) {
+            int id = i;
+            Mono<Integer> order = Mono.defer(() -> {
+                        peak.accumulateAndGet(current.incrementAndGet(), Math::max);
+                        return Mono.delay(Duration.ofMillis(100)).thenReturn(id);
+                    })
+                    .doOnTerminate(current::decrementAndGet);
+            pipeline.submit("ordem " + i, order, filled::add, done::countDown);
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // 40 ordens de 100 ms, 10 de cada vez: ~400 ms (em série seriam 4 s)
+        assertThat(elapsedMs).isLessThan(2_000);
+        assertThat(peak.get()).isEqualTo(10);
+        assertThat(filled).hasSize(orders);
+        assertThat(pipeline.getInFlight()).isZero();
+        assertThat(pipeline.getQueued()).isZero();
+    }
+
+    @Test
+    void failedOrTimedOutOrdersStillCompleteWithoutBlockingOthers() throws InterruptedException {
+        pipeline = new OrderPipeline(4, 1, 200, new SimpleMeterRegistry());
+        CountDownLatch done = new CountDownLatch(3);
+        Set<String> filled = ConcurrentHashMap.newKeySet();
+
+        pipeline.submit("erro", Mono.<String>error(new IllegalStateException("HTTP 400")), filled::add, done::countDown);
+        pipeline.submit("timeout", Mono.<String>never(), filled::add, done::countDown);
+        pipeline.submit("ok", Mono.just("ok"), filled::add, done::countDown);
+
+        assertThat(done.await(2, TimeUnit.SECONDS)).isTrue();
+        assertThat(filled).containsExactly("ok");
+    }
+}
@@ -0,0 +1,220 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.model.BotTrade;
+import com.example.binance_backend.model.User;
+import com.example.binance_backend.model.UserCredentials;
+import com.example.binance_backend.repository.BotTradeRepository;
+import com.example.binance_backend.repository.UserCredentialsRepository;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.service.userdata.OrderUpdateEvent;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OrderReconcilerTest {
+
+    private final FakeBinanceServer server = new FakeBinanceServer();
+    private final BotTradeRepository tradeRepo = mock(BotTradeRepository.class);
+    private final BotTradeService tradeService = mock(BotTradeService.class);
+    private final UserCredentialsRepository credentialsRepo = mock(UserCredentialsRepository.class);
+    private final ActiveBotRegistry registry = mock(ActiveBotRegistry.class);
+    private final BotCycleExecutor cycleExecutor = new BotCycleExecutor(2, 5_000);
+
+    @AfterEach
+    void tearDown() {
+        cycleExecutor.shutdown();
+        server.close();
+    }
+
+    @Test
+    void clientOrderIdIsDeterministicPerUserSymbolCandleAndSide() {
+        UUID userId = UUID.randomUUID();
+        String id = ClientOrderIds.of(userId, "BTCUSDT", 1_700_000_000_000L, "BUY");
+
+        assertThat(ClientOrderIds.of(userId, "BTCUSDT", 1_700_000_000_000L, "BUY")).isEqualTo(id);
+        assertThat(ClientOrderIds.of(userId, "BTCUSDT", 1_700_000_300_000L, "BUY")).isNotEqualTo(id);
+        assertThat(ClientOrderIds.of(userId, "BTCUSDT", 1_700_000_000_000L, "SELL")).isNotEqualTo(id);
+        assertThat(id).hasSizeLessThanOrEqualTo(36).matches("^[.A-Z:/a-z0-9_-]+$");
+    }
+
+    @Test
+    void pollsOpenOrdersOncePerAccountAndResolvesFinishedOrdersPerSymbol() {
+        User user = userWithCredentials();
+        BotTrade filled = pending(user, "BTCUSDT", "bot-filled");
+        BotTrade canceled = pending(user, "BTCUSDT", "bot-canceled");
+        BotTrade working = pending(user, "BTCUSDT", "bot-working");
+        BotTrade missing = pending(user, "ETHUSDT", "bot-missing");
+        when(tradeRepo.findPendingTrades()).thenReturn(List.of(filled, canceled, working, missing));
+        when(tradeService.confirmTrade(anyString(), any(), any(), any())).thenReturn(filled);
+        when(tradeService.failPendingTrade(anyString(), any())).thenReturn(true);
+
+        server.setOpenOrders("[" + order("bot-working", "PARTIALLY_FILLED", "0.00050000", "32.50000000") + "]");
+        server.setOrders("BTCUSDT", "["
+                + order("bot-filled", "FILLED", "0.00100000", "65.00000000") + ","
+                + order("bot-canceled", "CANCELED", "0.00000000", "0.00000000") + ","
+                + order("web-order", "FILLED", "1.00000000", "65000.00000000") + "]");
+
+        reconciler().reconcile();
+
+        // Um openOrders por conta (vários pares: sem symbol) e um allOrders por par com ordens terminadas
+        assertThat(server.openOrdersQueries()).containsExactly("*");
+        assertThat(server.allOrdersQueries()).containsExactlyInAnyOrder("BTCUSDT", "ETHUSDT");
+        verify(tradeService).recordOrderStatus("bot-working", "1", "PARTIALLY_FILLED");
+        verify(tradeService).confirmTrade("bot-filled", "1", new BigDecimal("0.00100000"), new BigDecimal("65000.00000000"));
+        verify(tradeService).failPendingTrade("bot-canceled", "CANCELED");
+        verify(tradeService).failPendingTrade("bot-missing", null);
+        verify(tradeService, never()).confirmTrade(eq("bot-working"), any(), any(), any());
+        verify(registry).refreshUser(user.getId());
+    }
+
+    @Test
+    void tradesOlderThanTheAllOrdersWindowAreLookedUpOneByOne() {
+        User user = userWithCredentials();
+        BotTrade filled = createdHoursAgo(pending(user, "BTCUSDT", "bot-old-filled"), 30);
+        BotTrade unknown = createdHoursAgo(pending(user, "BTCUSDT", "bot-old-unknown"), 30);
+        when(tradeRepo.findPendingTrades()).thenReturn(List.of(filled, unknown));
+        when(tradeService.confirmTrade(anyString(), any(), any(), any())).thenReturn(filled);
+        when(tradeService.failPendingTrade(anyString(), any())).thenReturn(true);
+        server.setOrder("bot-old-filled", order("bot-old-filled", "FILLED", "0.00100000", "65.00000000"));
+
+        reconciler().reconcile();
+
+        // O allOrders não chega lá: a ausência nele não pode dar a trade como falhada
+        assertThat(server.allOrdersQueries()).isEmpty();
+        assertThat(server.orderQueries()).containsExactlyInAnyOrder("bot-old-filled", "bot-old-unknown");
+        verify(tradeService).confirmTrade("bot-old-filled", "1", new BigDecimal("0.00100000"), new BigDecimal("65000.00000000"));
+        // Só a resposta -2013 da Binance a dá como falhada
+        verify(tradeService).failPendingTrade("bot-old-unknown", null);
+        verify(tradeService, never()).failPendingTrade(eq("bot-old-filled"), any());
+    }
+
+    @Test
+    void sellWithoutResponseIsClosedOrReopenedFromTheExchangeState() {
+        User user = userWithCredentials();
+        BotTrade sold = closing(user, "bot-sold");
+        BotTrade lost = closing(user, "bot-lost");
+        when(tradeRepo.findPendingTrades()).thenReturn(List.of(sold, lost));
+        when(tradeService.closeSoldTrade(anyString(), any())).thenReturn(true);
+        when(tradeService.reopenClosingTrade(anyString())).thenReturn(true);
+        server.setOrders("BTCUSDT", "[" + order("bot-sold", "FILLED", "0.00100000", "66.00000000")
+                .replace("\"side\":\"BUY\"", "\"side\":\"SELL\"") + "]");
+
+        reconciler().reconcile();
+
+        // Procuradas pelo clientOrderId da SELL; nenhuma trade é dada como comprada ou falhada
+        verify(tradeService).closeSoldTrade("bot-sold", new BigDecimal("66000.00000000"));
+        verify(tradeService).reopenClosingTrade("bot-lost");
+        verify(tradeService, never()).failPendingTrade(anyString(), any());
+        verify(tradeService, never()).confirmTrade(anyString(), any(), any(), any());
+        verify(registry).refreshUser(user.getId());
+    }
+
+    @Test
+    void limitOrderStaysPendingUntilTheStreamReportsTheFill() throws InterruptedException {
+        User user = userWithCredentials();
+        BotTrade trade = pending(user, "BTCUSDT", ClientOrderIds.of(user.getId(), "BTCUSDT", 0, "BUY"));
+        when(tradeService.confirmTrade(anyString(), any(), any(), any())).thenReturn(trade);
+        // refreshUser é synchronized: verify com timeout ficaria com o monitor do mock
+        CountDownLatch refreshed = new CountDownLatch(1);
+        doAnswer(inv -> {
+            refreshed.countDown();
+            return null;
+        }).when(registry).refreshUser(user.getId());
+        OrderReconciler reconciler = reconciler();
+
+        // Resposta ao envio de uma LIMIT: aceite mas por executar
+        BinanceClient.BinanceOrderResponse accepted = new BinanceClient.BinanceOrderResponse();
+        accepted.orderId = "42";
+        accepted.status = "NEW";
+        accepted.executedQty = BigDecimal.ZERO;
+        accepted.cummulativeQuoteQty = BigDecimal.ZERO;
+        accepted.price = new BigDecimal("64000");
+        assertThat(reconciler.apply(trade.getClientOrderId(), accepted)).isFalse();
+        verify(tradeService).recordOrderStatus(trade.getClientOrderId(), "42", "NEW");
+
+        // Executada em duas partes: 0.0004 a 63990 + 0.0006 a 64000
+        reconciler.onOrderUpdate(update(user, trade.getClientOrderId(), "PARTIALLY_FILLED", "0.00040000", "25.59600000"));
+        reconciler.onOrderUpdate(update(user, trade.getClientOrderId(), "FILLED", "0.00100000", "63.99600000"));
+
+        verify(tradeService, timeout(2_000)).confirmTrade(trade.getClientOrderId(), "42",
+                new BigDecimal("0.00100000"), new BigDecimal("63996.00000000"));
+        assertThat(refreshed.await(2, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private User userWithCredentials() {
+        User user = new User();
+        user.setId(UUID.randomUUID());
+        UserCredentials creds = new UserCredentials();
+        creds.setEncryptedApiKey("key");
+        creds.setEncryptedSecretKey("secret");
+        when(credentialsRepo.findByUser(user)).thenReturn(Optional.of(creds));
+        return user;
+    }
+
+    private OrderReconciler reconciler() {
+        ShardCoordinator singleNode = new ShardCoordinator(null, null, mock(PlatformTransactionManager.class), false, 64, 20_000, "test");
+        OcoExitManager ocoExits = mock(OcoExitManager.class);
+        return new OrderReconciler(new BinanceClient(server.baseUrl()), tradeRepo, tradeService, credentialsRepo,
+                ocoExits, cycleExecutor, registry, singleNode, new SimpleMeterRegistry(), false, 60_000, 4);
+    }
+
+    private static BotTrade pending(User user, String symbol, String clientOrderId) {
+        BotTrade trade = new BotTrade();
+        trade.setId(UUID.randomUUID());
+        trade.setUser(user);
+        trade.setSymbol(symbol);
+        trade.setStatus("PENDING");
+        trade.setClientOrderId(clientOrderId);
+        trade.setAmount(new BigDecimal("0.001"));
+        trade.setPrice(new BigDecimal("65000"));
+        return trade;
+    }
+
+    // Trade aberta com uma SELL enviada há mais do que o período de graça
+    private static BotTrade closing(User user, String exitClientOrderId) {
+        BotTrade trade = pending(user, "BTCUSDT", "bot-buy-" + exitClientOrderId);
+        trade.setStatus("CLOSING");
+        trade.setExitClientOrderId(exitClientOrderId);
+        trade.setUpdatedAt(OffsetDateTime.now().minusMinutes(5));
+        return createdHoursAgo(trade, 3);
+    }
+
+    private static BotTrade createdHoursAgo(BotTrade trade, int hours) {
+        ReflectionTestUtils.setField(trade, "createdAt", OffsetDateTime.now().minusHours(hours));
+        return trade;
+    }
+
+    private static OrderUpdateEvent update(User user, String clientOrderId, String status, String qty, String quoteQty) {
+        return new OrderUpdateEvent(user.getId(), "BTCUSDT", clientOrderId, 42, -1, "BUY", "LIMIT", status, "TRADE",
+                BigDecimal.ZERO, BigDecimal.ZERO, new BigDecimal(qty), new BigDecimal(quoteQty),
+                BigDecimal.ZERO, "BNB", System.currentTimeMillis());
+    }
+
+    private static String order(String clientOrderId, String status, String executedQty, String quoteQty) {
+        return "{\"symbol\":\"BTCUSDT\",\"orderId\":1,\"clientOrderId\":\"" + clientOrderId + "\",\"status\":\"" + status
+                + "\",\"side\":\"BUY\",\"type\":\"MARKET\",\"executedQty\":\"" + executedQty
+                + "\",\"cummulativeQuoteQty\":\"" + quoteQty + "\",\"price\":\"0.00000000\"}";
+    }
+}
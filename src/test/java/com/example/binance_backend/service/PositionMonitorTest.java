@@ -0,0 +1,69 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.repository.BotSettingsRepository;
+import com.example.binance_backend.service.marketdata.MarketDataCache;
+import com.example.binance_backend.service.marketdata.PriceTickEvent;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PositionMonitorTest {
+
+    private final FakeBinanceServer server = new FakeBinanceServer();
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void fetchesAllOpenSymbolsWithoutStreamInOneRequest() {
+        BotSettingsRepository settingsRepo = mock(BotSettingsRepository.class);
+        List<ActiveBot> bots = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            bots.add(bot("BTCUSDT", true));
+            bots.add(bot("ETHUSDT", i % 2 == 0));
+        }
+        bots.add(bot("SOLUSDT", true));   // tem stream: já recebe ticks
+        bots.add(bot("XRPUSDT", false));  // sem trades abertas
+        when(settingsRepo.findActiveBots()).thenReturn(bots);
+        ActiveBotRegistry registry = new ActiveBotRegistry(settingsRepo, new SimpleMeterRegistry());
+        registry.reconcile();
+
+        BinanceClient client = new BinanceClient(server.baseUrl());
+        MarketDataCache cache = new MarketDataCache(client, new SimpleMeterRegistry());
+        cache.setLive("SOLUSDT", "5m", true);
+        server.setPrice("BTCUSDT", "65000.50");
+        server.setPrice("ETHUSDT", "3100.25");
+
+        List<Object> events = new ArrayList<>();
+        ShardCoordinator singleNode = new ShardCoordinator(null, null, mock(PlatformTransactionManager.class), false, 64, 20_000, "test");
+        PositionMonitor monitor = new PositionMonitor(registry, cache, client, events::add, singleNode, true, "5m");
+
+        monitor.watch();
+
+        assertThat(server.tickerQueries()).containsExactly("[\"BTCUSDT\",\"ETHUSDT\"]");
+        assertThat(events).hasSize(2);
+        assertThat(events).allMatch(e -> e instanceof PriceTickEvent);
+        assertThat(events).anyMatch(e -> ((PriceTickEvent) e).symbol.equals("BTCUSDT") && ((PriceTickEvent) e).price == 65000.50);
+    }
+
+    private static ActiveBot bot(String symbol, boolean openTrade) {
+        return new ActiveBot(UUID.randomUUID(), symbol, "MARKET", BigDecimal.TEN, null, null, null,
+                BigDecimal.ONE, BigDecimal.ONE, true, 14, false, false, "key", "secret",
+                openTrade ? UUID.randomUUID() : null, openTrade ? "OPEN" : null, openTrade ? BigDecimal.ONE : null, openTrade ? BigDecimal.ONE : null, null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.binance_backend.service;
+
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ServerTimeSyncTest {
+
+    private final FakeBinanceServer server = new FakeBinanceServer();
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void signedRequestsUseTheServerOffset() {
+        // Relógio local 8 s adiantado em relação à Binance
+        server.setServerTimeOffset(-8_000);
+        BinanceClient client = new BinanceClient(server.baseUrl());
+        new ServerTimeSync(client, new SimpleMeterRegistry(), true).sync();
+
+        assertThat(client.clock().getOffsetMs()).isBetween(-8_500L, -7_500L);
+        assertThat(client.fetchFreeBalance("key", "secret", "USDT")).isEqualTo("100.00000000");
+        assertThat(server.accountRequests()).isEqualTo(1);
+        assertThat(client.clock().getCorrected()).isEqualTo(1);
+    }
+
+    @Test
+    void timestampRejectionResyncsAndRetriesOnce() {
+        BinanceClient client = new BinanceClient(server.baseUrl());
+        ServerTimeSync sync = new ServerTimeSync(client, new SimpleMeterRegistry(), true);
+        sync.sync();
+
+        // O relógio local foi acertado depois da última amostra
+        server.setServerTimeOffset(-8_000);
+        assertThat(client.fetchFreeBalance("key", "secret", "USDT")).isEqualTo("100.00000000");
+
+        assertThat(server.accountRequests()).isEqualTo(2);
+        assertThat(server.timeRequests()).isEqualTo(2);
+        assertThat(client.clock().getResyncs()).isEqualTo(1);
+        assertThat(client.clock().getOffsetMs()).isBetween(-8_500L, -7_500L);
+    }
+
+    @Test
+    void offsetComesFromTheSampleWithTheLowestRoundTrip() {
+        ServerClock clock = new ServerClock();
+        clock.addSample(1_000, 1_600, 1_400);   // rtt 400 → offset 400
+        clock.addSample(2_000, 2_120, 2_040);   // rtt 40  → offset 100
+        clock.addSample(3_000, 3_900, 3_600);   // rtt 600 → offset 600
+
+        assertThat(clock.getOffsetMs()).isEqualTo(100);
+        assertThat(clock.getRttMs()).isEqualTo(40);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.binance_backend.service.exchange;
+
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.BinanceClient;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExchangeInfoCacheTest {
+
+    // Filtros reais de BTCUSDT (resumidos)
+    private static final String BTCUSDT = "{\"symbol\":\"BTCUSDT\",\"filters\":["
+            + "{\"filterType\":\"PRICE_FILTER\",\"minPrice\":\"0.01000000\",\"maxPrice\":\"1000000.00000000\",\"tickSize\":\"0.01000000\"},"
+            + "{\"filterType\":\"LOT_SIZE\",\"minQty\":\"0.00001000\",\"maxQty\":\"9000.00000000\",\"stepSize\":\"0.00001000\"},"
+            + "{\"filterType\":\"MARKET_LOT_SIZE\",\"minQty\":\"0.00000000\",\"maxQty\":\"120.00000000\",\"stepSize\":\"0.00000000\"},"
+            + "{\"filterType\":\"NOTIONAL\",\"minNotional\":\"5.00000000\",\"applyMinToMarket\":true,\"maxNotional\":\"9000000.00000000\",\"applyMaxToMarket\":false,\"avgPriceMins\":5}"
+            + "]}";
+    private static final String ETHUSDT = BTCUSDT.replace("BTCUSDT", "ETHUSDT");
+
+    private final FakeBinanceServer server = new FakeBinanceServer();
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void roundsAndValidatesOrdersAgainstTheSymbolFilters() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        SymbolFilters filters = cache(Set.of()).filters("BTCUSDT");
+
+        // 10 USDT a 65000.123 → 0.00015384... arredondado ao stepSize
+        BigDecimal quantity = filters.roundQuantity(new BigDecimal("0.00015384"), true);
+        assertThat(quantity).isEqualByComparingTo("0.00015");
+        assertThat(filters.roundPrice(new BigDecimal("65000.123"))).isEqualByComparingTo("65000.12");
+        assertThat(filters.violation(quantity, null, new BigDecimal("65000"), true)).isNull();
+
+        // 1 USDT fica abaixo do notional mínimo de 5
+        BigDecimal small = filters.roundQuantity(new BigDecimal("0.0000153"), true);
+        assertThat(filters.violation(small, null, new BigDecimal("65000"), true)).contains("NOTIONAL");
+        assertThat(filters.violation(BigDecimal.ZERO, null, new BigDecimal("65000"), true)).contains("stepSize");
+        assertThat(filters.violation(new BigDecimal("0.001"), new BigDecimal("0.001"), null, false)).contains("PRICE_FILTER");
+        assertThat(filters.violation(new BigDecimal("121"), null, new BigDecimal("65000"), true)).contains("LOT_SIZE");
+    }
+
+    @Test
+    void refreshLoadsEveryActiveSymbolInOneRequestAndServesFromMemory() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        server.setExchangeInfo("ETHUSDT", ETHUSDT);
+        ExchangeInfoCache cache = cache(Set.of("ETHUSDT", "BTCUSDT"));
+
+        cache.refresh();
+        assertThat(cache.filters("BTCUSDT")).isNotNull();
+        assertThat(cache.filters("ETHUSDT").tickSize).isEqualByComparingTo("0.01");
+
+        assertThat(server.exchangeInfoQueries()).containsExactly("[\"BTCUSDT\",\"ETHUSDT\"]");
+    }
+
+    @Test
+    void unknownSymbolIsLoadedOnFirstUse() {
+        server.setExchangeInfo("BTCUSDT", BTCUSDT);
+        ExchangeInfoCache cache = cache(Set.of());
+
+        assertThat(cache.filters("BTCUSDT")).isNotNull();
+        assertThat(cache.filters("BTCUSDT")).isNotNull();
+
+        assertThat(server.exchangeInfoQueries()).containsExactly("[\"BTCUSDT\"]");
+    }
+
+    private ExchangeInfoCache cache(Set<String> activeSymbols) {
+        ActiveBotRegistry registry = mock(ActiveBotRegistry.class);
+        when(registry.activeSymbols()).thenReturn(activeSymbols);
+        return new ExchangeInfoCache(new BinanceClient(server.baseUrl()), registry, new SimpleMeterRegistry());
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.binance_backend.service.indicator;
+
+import com.example.binance_backend.service.marketdata.DoubleSeries;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compara os indicadores em double com a implementação original em BigDecimal
+ * (LegacyIndicators), para várias escalas de preço.
+ *
+ * A implementação original arredonda resultados intermédios a 8 casas (k da EMA, médias,
+ * variância), pelo que o seu próprio erro cresce nos pares de preço baixo: a tolerância de
+ * cada cenário (em unidades de preço e em pontos de RSI) reflete esse arredondamento.
+ */
+class IndicatorsEquivalenceTest {
+
+    @ParameterizedTest
+    @CsvSource({"27000, 80, 1, 1e-4", "1.5, 0.004, 2, 1e-3", "0.05, 0.0002, 3, 1e-2"})
+    void rsiMatchesLegacy(double start, double step, long seed, double rsiTolerance) {
+        Window w = randomWalk(50, start, step, seed);
+        for (int period : new int[]{6, 14, 30, 49, 50}) {
+            assertClose("RSI(" + period + ")", Indicators.rsi(w.series, period), LegacyIndicators.rsi(w.decimals, period), rsiTolerance);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"27000, 80, 1, 1e-4", "1.5, 0.004, 2, 1e-6", "0.05, 0.0002, 3, 1e-4"})
+    void emaMatchesLegacy(double start, double step, long seed, double priceTolerance) {
+        Window w = randomWalk(50, start, step, seed);
+        for (int period : new int[]{9, 12, 26, 60}) {
+            assertClose("EMA(" + period + ")", Indicators.ema(w.series, period), LegacyIndicators.ema(w.decimals, period), priceTolerance);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({"27000, 80, 1, 1e-4", "1.5, 0.004, 2, 1e-6", "0.05, 0.0002, 3, 1e-4"})
+    void macdMatchesLegacy(double start, double step, long seed, double priceTolerance) {
+        Window w = randomWalk(50, start, step, seed);
+        MacdResult actual = Indicators.macd(w.series, 12, 26, 9);
+        BigDecimal[] expected = LegacyIndicators.macd(w.decimals, 12, 26, 9);
+        assertClose("MACD", actual.macdLine, expected[0], priceTolerance);
+        assertClose("sinal", actual.signalLine, expected[1], priceTolerance);
+        assertClose("histograma", actual.histogram, expected[2], priceTolerance);
+    }
+
+    @ParameterizedTest
+    @CsvSource({"27000, 80, 1, 1e-4", "1.5, 0.004, 2, 1e-6", "0.05, 0.0002, 3, 1e-4"})
+    void bollingerMatchesLegacy(double start, double step, long seed, double priceTolerance) {
+        Window w = randomWalk(50, start, step, seed);
+        BollingerResult actual = Indicators.bollinger(w.series, 20, 2.0);
+        BigDecimal[] expected = LegacyIndicators.bollinger(w.decimals, 20, 2.0);
+        assertClose("BB.middle", actual.middleBand, expected[0], priceTolerance);
+        assertClose("BB.upper", actual.upperBand, expected[1], priceTolerance);
+        assertClose("BB.lower", actual.lowerBand, expected[2], priceTolerance);
+    }
+
+    static void assertClose(String what, double actual, BigDecimal expected, double tolerance) {
+        assertThat(Math.abs(actual - expected.doubleValue()))
+                .as("%s: double=%s legacy=%s", what, actual, expected)
+                .isLessThanOrEqualTo(tolerance);
+    }
+
+    static Window randomWalk(int n, double start, double step, long seed) {
+        Random random = new Random(seed);
+        double[] values = new double[n];
+        List<BigDecimal> decimals = new ArrayList<>();
+        double price = start;
+        for (int i = 0; i < n; i++) {
+            price += (random.nextDouble() - 0.5) * 2 * step;
+            // Preços com 8 casas decimais, como a Binance os envia
+            BigDecimal close = BigDecimal.valueOf(Math.round(price * 1e8) / 1e8);
+            values[i] = close.doubleValue();
+            decimals.add(close);
+        }
+        return new Window(DoubleSeries.of(values), decimals);
+    }
+
+    static final class Window {
+        final DoubleSeries series;
+        final List<BigDecimal> decimals;
+
+        Window(DoubleSeries series, List<BigDecimal> decimals) {
+            this.series = series;
+            this.decimals = decimals;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.binance_backend.service.indicator;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Implementação original dos indicadores (BotService, BigDecimal com escala 8 e HALF_UP),
+ * mantida apenas como referência para os testes de equivalência.
+ */
+final class LegacyIndicators {
+
+    private LegacyIndicators() {
+    }
+
+    static BigDecimal rsi(List<BigDecimal> closes, int period) {
+        int n = closes.size();
+        if (n <= period) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal gainSum = BigDecimal.ZERO;
+        BigDecimal lossSum = BigDecimal.ZERO;
+        for (int i = n - period; i < n; i++) {
+            BigDecimal change = closes.get(i).subtract(closes.get(i - 1));
+            if (change.compareTo(BigDecimal.ZERO) > 0) {
+                gainSum = gainSum.add(change);
+            } else {
+                lossSum = lossSum.add(change.abs());
+            }
+        }
+        BigDecimal avgGain = gainSum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
+        BigDecimal avgLoss = lossSum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
+        if (avgLoss.compareTo(BigDecimal.ZERO) == 0) {
+            return BigDecimal.valueOf(100);
+        }
+        BigDecimal rs = avgGain.divide(avgLoss, 8, RoundingMode.HALF_UP);
+        return BigDecimal.valueOf(100)
+                .subtract(BigDecimal.valueOf(100).divide(BigDecimal.ONE.add(rs), 8, RoundingMode.HALF_UP));
+    }
+
+    static BigDecimal ema(List<BigDecimal> closes, int period) {
+        int n = closes.size();
+        if (n < period) {
+            return closes.get(n - 1);
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < period; i++) {
+            sum = sum.add(closes.get(i));
+        }
+        BigDecimal sma = sum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
+        BigDecimal ema = sma;
+        BigDecimal k = BigDecimal.valueOf(2).divide(BigDecimal.valueOf(period + 1), 8, RoundingMode.HALF_UP);
+        for (int i = period; i < n; i++) {
+            ema = closes.get(i).multiply(k).add(ema.multiply(BigDecimal.ONE.subtract(k)));
+        }
+        return ema;
+    }
+
+    /** @return {macdLine, signalLine, histogram} */
+    static BigDecimal[] macd(List<BigDecimal> closes, int fastPeriod, int slowPeriod, int signalPeriod) {
+        BigDecimal macdLine = ema(closes, fastPeriod).subtract(ema(closes, slowPeriod));
+        List<BigDecimal> diffList = new ArrayList<>();
+        for (int i = 0; i < closes.size(); i++) {
+            List<BigDecimal> sub = closes.subList(0, i + 1);
+            diffList.add(ema(sub, fastPeriod).subtract(ema(sub, slowPeriod)));
+        }
+        int sz = diffList.size();
+        BigDecimal signalLine = ema(diffList.subList(sz - signalPeriod, sz), signalPeriod);
+        return new BigDecimal[]{macdLine, signalLine, macdLine.subtract(signalLine)};
+    }
+
+    /** @return {middle, upper, lower} */
+    static BigDecimal[] bollinger(List<BigDecimal> closes, int period, double multiplier) {
+        int n = closes.size();
+        if (n < period) {
+            return new BigDecimal[]{BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO};
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = n - period; i < n; i++) {
+            sum = sum.add(closes.get(i));
+        }
+        BigDecimal sma = sum.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
+        BigDecimal variance = BigDecimal.ZERO;
+        for (int i = n - period; i < n; i++) {
+            BigDecimal diff = closes.get(i).subtract(sma);
+            variance = variance.add(diff.multiply(diff));
+        }
+        variance = variance.divide(BigDecimal.valueOf(period), 8, RoundingMode.HALF_UP);
+        BigDecimal stdDev = sqrt(variance, 8);
+        BigDecimal upper = sma.add(stdDev.multiply(BigDecimal.valueOf(multiplier)));
+        BigDecimal lower = sma.subtract(stdDev.multiply(BigDecimal.valueOf(multiplier)));
+        return new BigDecimal[]{sma, upper, lower};
+    }
+
+    private static BigDecimal sqrt(BigDecimal value, int scale) {
+        BigDecimal x0 = BigDecimal.ZERO;
+        BigDecimal x1 = new BigDecimal(Math.sqrt(value.doubleValue()));
+        while (!x0.equals(x1)) {
+            x0 = x1;
+            x1 = value.divide(x0, scale, RoundingMode.HALF_UP)
+                    .add(x0)
+                    .divide(BigDecimal.valueOf(2), scale, RoundingMode.HALF_UP);
+        }
+        return x1;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.binance_backend.service.indicator;
+
+import com.example.binance_backend.service.marketdata.CandleSeries;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.example.binance_backend.service.indicator.IndicatorsEquivalenceTest.assertClose;
+import static com.example.binance_backend.service.indicator.IndicatorsEquivalenceTest.randomWalk;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MacdEngineTest {
+
+    private static final long FIVE_MIN = 5 * 60_000L;
+    // Margem para o arredondamento a 8 casas do k na implementação original
+    private static final double TOLERANCE = 1e-4;
+    // Tamanho da janela que o BotService pede (CANDLE_LIMIT)
+    private static final int WINDOW = 50;
+
+    @Test
+    void incrementalStateMatchesOriginalCalculationForEveryPrefix() {
+        IndicatorsEquivalenceTest.Window w = randomWalk(200, 27_000, 40, 7);
+        MacdState state = new MacdState(12, 26, 9);
+
+        for (int n = 1; n <= w.decimals.size(); n++) {
+            double close = w.series.get(n - 1);
+            if (n >= 9) {
+                assertEquivalent(state.peek(close), LegacyIndicators.macd(w.decimals.subList(0, n), 12, 26, 9));
+            }
+            state.update(close);
+            if (n >= 9) {
+                assertEquivalent(state.current(), LegacyIndicators.macd(w.decimals.subList(0, n), 12, 26, 9));
+            }
+        }
+    }
+
+    @Test
+    void engineMatchesOriginalCalculationOnARolling50CandleWindow() {
+        IndicatorsEquivalenceTest.Window w = randomWalk(200, 27_000, 40, 11);
+        CandleSeries series = new CandleSeries(500);
+        long firstOpen = (System.currentTimeMillis() / FIVE_MIN - 199) * FIVE_MIN;
+        MacdEngine engine = new MacdEngine();
+
+        for (int n = 1; n <= w.decimals.size(); n++) {
+            long open = firstOpen + (n - 1) * FIVE_MIN;
+            double close = w.series.get(n - 1);
+            if (n >= WINDOW) {
+                // Candle em formação: primeiro um close provisório, depois o definitivo
+                double forming = close + 25;
+                series.upsert(open, forming, forming, forming, forming, 1, open + FIVE_MIN - 1, 1);
+                List<BigDecimal> provisional = new ArrayList<>(w.decimals.subList(n - WINDOW, n - 1));
+                provisional.add(BigDecimal.valueOf(forming));
+                assertEquivalent(engine.macd("BTCUSDT", "5m", series.tail(WINDOW)),
+                        LegacyIndicators.macd(provisional, 12, 26, 9));
+            }
+            series.upsert(open, close, close, close, close, 1, open + FIVE_MIN - 1, 1);
+            if (n >= WINDOW) {
+                // A mesma janela que o BotService passa (CANDLE_LIMIT), e não a série toda
+                assertEquivalent(engine.macd("BTCUSDT", "5m", series.tail(WINDOW)),
+                        LegacyIndicators.macd(w.decimals.subList(n - WINDOW, n), 12, 26, 9));
+            }
+        }
+    }
+
+    @Test
+    void resultDependsOnlyOnTheWindowAndNotOnPreviousCalls() {
+        IndicatorsEquivalenceTest.Window w = randomWalk(120, 27_000, 40, 13);
+        CandleSeries series = new CandleSeries(500);
+        long firstOpen = (System.currentTimeMillis() / FIVE_MIN - 119) * FIVE_MIN;
+        MacdEngine warm = new MacdEngine();
+
+        for (int n = 1; n <= w.decimals.size(); n++) {
+            long open = firstOpen + (n - 1) * FIVE_MIN;
+            double close = w.series.get(n - 1);
+            series.upsert(open, close, close, close, close, 1, open + FIVE_MIN - 1, 1);
+            if (n >= WINDOW) {
+                warm.macd("BTCUSDT", "5m", series.tail(WINDOW));
+            }
+        }
+
+        // Um engine a correr desde o início e um acabado de criar (outra réplica) dão o mesmo valor
+        MacdResult fromWarm = warm.macd("BTCUSDT", "5m", series.tail(WINDOW));
+        MacdResult fromCold = new MacdEngine().macd("BTCUSDT", "5m", series.tail(WINDOW));
+        assertThat(fromWarm.macdLine).isEqualTo(fromCold.macdLine);
+        assertThat(fromWarm.signalLine).isEqualTo(fromCold.signalLine);
+        assertThat(fromWarm.histogram).isEqualTo(fromCold.histogram);
+    }
+
+    private static void assertEquivalent(MacdResult actual, BigDecimal[] expected) {
+        assertClose("MACD", actual.macdLine, expected[0], TOLERANCE);
+        assertClose("sinal", actual.signalLine, expected[1], TOLERANCE);
+        assertClose("histograma", actual.histogram, expected[2], TOLERANCE);
+    }
+}
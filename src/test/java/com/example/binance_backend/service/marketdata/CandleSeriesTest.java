@@ -0,0 +1,56 @@
+package com.example.binance_backend.service.marketdata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CandleSeriesTest {
+
+    @Test
+    void appendsUpdatesLastAndWrapsAround() {
+        CandleSeries series = new CandleSeries(3);
+        for (int t = 1; t <= 4; t++) {
+            series.upsert(t, t, t, t, t, t, 0, 0);
+        }
+        series.upsert(4, 4, 4, 4, 40, 4, 0, 0); // candle em formação atualizado
+
+        CandleSeries.View view = series.tail(10);
+        assertThat(view.size()).isEqualTo(3);
+        assertThat(view.openTime(0)).isEqualTo(2);
+        assertThat(view.lastClose()).isEqualTo(40);
+        assertThat(view.closes().get(1)).isEqualTo(3);
+    }
+
+    @Test
+    void insertsOutOfOrderCandlesInPlace() {
+        CandleSeries series = new CandleSeries(4);
+        series.upsert(10, 1, 1, 1, 1, 1, 0, 0);
+        series.upsert(30, 3, 3, 3, 3, 3, 0, 0);
+        series.upsert(40, 4, 4, 4, 4, 4, 0, 0);
+        series.upsert(20, 2, 2, 2, 2, 2, 0, 0);   // buraco preenchido por backfill
+        series.upsert(50, 5, 5, 5, 5, 5, 0, 0);   // buffer cheio: sai o mais antigo
+        series.upsert(5, 0, 0, 0, 0, 0, 0, 0);    // mais antigo do que tudo: ignorado
+
+        CandleSeries.View view = series.tail(4);
+        assertThat(new long[]{view.openTime(0), view.openTime(1), view.openTime(2), view.openTime(3)})
+                .containsExactly(20, 30, 40, 50);
+        assertThat(view.close(0)).isEqualTo(2);
+    }
+
+    @Test
+    void viewIsNotChangedByLaterWrites() {
+        CandleSeries series = new CandleSeries(3);
+        series.upsert(10, 1, 1, 1, 1, 1, 0, 0);
+        series.upsert(30, 3, 3, 3, 3, 3, 0, 0);
+        CandleSeries.View view = series.tail(3);
+
+        series.upsert(30, 3, 3, 3, 35, 3, 0, 0);  // candle em formação atualizado no lugar
+        series.upsert(20, 2, 2, 2, 2, 2, 0, 0);   // backfill desloca o último candle
+        series.upsert(40, 4, 4, 4, 4, 4, 0, 0);   // buffer cheio: sai o mais antigo
+
+        assertThat(view.size()).isEqualTo(2);
+        assertThat(new long[]{view.openTime(0), view.openTime(1)}).containsExactly(10, 30);
+        assertThat(view.lastClose()).isEqualTo(3);
+        assertThat(series.tail(3).lastClose()).isEqualTo(4);
+    }
+}
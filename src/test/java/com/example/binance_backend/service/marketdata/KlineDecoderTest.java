@@ -0,0 +1,45 @@
+package com.example.binance_backend.service.marketdata;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class KlineDecoderTest {
+
+    @Test
+    void decodesAllKeptFieldsIntoSeries() throws Exception {
+        String json = "[[1499040000000,\"0.01634790\",\"0.80000000\",\"0.01575800\",\"0.01577100\","
+                + "\"148976.11427815\",1499644799999,\"2434.19055334\",308,\"1756.87402397\","
+                + "\"28.46694368\",\"0\"],"
+                + "[1499644800000,\"27123.45000000\",\"27200.00000000\",\"27000.10000000\","
+                + "\"27150.99999999\",\"12.5\",1499644859999,\"1.0\",7,\"1.0\",\"1.0\",\"0\"]]";
+
+        CandleSeries series = new CandleSeries(10);
+        int count = KlineDecoder.decode(json.getBytes(StandardCharsets.UTF_8), series);
+
+        CandleSeries.View view = series.tail(10);
+        assertThat(count).isEqualTo(2);
+        assertThat(view.openTime(0)).isEqualTo(1499040000000L);
+        assertThat(view.open(0)).isEqualTo(0.0163479);
+        assertThat(view.volume(0)).isEqualTo(148976.11427815);
+        assertThat(view.closeTime(0)).isEqualTo(1499644799999L);
+        assertThat(view.trades(0)).isEqualTo(308);
+        assertThat(view.close(1)).isEqualTo(27150.99999999);
+        assertThat(view.trades(1)).isEqualTo(7);
+    }
+
+    @Test
+    void fastDecimalPathMatchesDoubleParse() {
+        String[] samples = {"0", "0.00000001", "27123.45000000", "-1.5", "123456789.12345678",
+                "9007199254.740993", "0.1", "65000.00000000"};
+        for (String sample : samples) {
+            char[] chars = sample.toCharArray();
+            double fast = KlineDecoder.parseDecimal(chars, 0, chars.length);
+            if (!Double.isNaN(fast)) {
+                assertThat(fast).as(sample).isEqualTo(Double.parseDouble(sample));
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.binance_backend.service.marketdata;
+
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.BinanceClient;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import reactor.core.publisher.Sinks;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class KlineStreamServiceTest {
+
+    private static final long FIVE_MIN = 5 * 60_000L;
+
+    private FakeBinanceServer server;
+    private MarketDataCache cache;
+    private KlineStreamService stream;
+    private long lastOpen;
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        server = new FakeBinanceServer();
+        lastOpen = System.currentTimeMillis() / FIVE_MIN * FIVE_MIN;
+        server.setKlines("BTCUSDT", klinesJson(30, lastOpen));
+
+        cache = new MarketDataCache(new BinanceClient(server.baseUrl()), new SimpleMeterRegistry());
+        ActiveBotRegistry registry = mock(ActiveBotRegistry.class);
+        MarketEventPublisher marketEvents = new MarketEventPublisher(events::add, cache, registry, "5m", 1000, 2000);
+        stream = new KlineStreamService(cache, marketEvents, registry, true, server.streamUrl(), "5m");
+    }
+
+    @AfterEach
+    void tearDown() {
+        stream.disconnect();
+        server.close();
+    }
+
+    @Test
+    void servesCandlesFromStreamWithoutPollingRest() {
+        stream.subscribe(Set.of("BTCUSDT"));
+        waitUntil(stream::isConnected);
+        assertThat(server.klinesRequests()).isEqualTo(1);
+
+        // Candle novo empurrado pelo stream
+        server.push(klineEvent(lastOpen + FIVE_MIN, "123.45"));
+        waitUntil(() -> cache.getCandles("BTCUSDT", "5m", 1).openTime(0) == lastOpen + FIVE_MIN);
+
+        CandleSeries.View candles = cache.getCandles("BTCUSDT", "5m", 30);
+        assertThat(candles.size()).isEqualTo(30);
+        assertThat(candles.lastClose()).isEqualTo(123.45);
+        assertThat(server.klinesRequests()).isEqualTo(1);
+    }
+
+    @Test
+    void reconnectsAndBackfillsAfterServerDropsConnection() {
+        stream.subscribe(Set.of("BTCUSDT"));
+        waitUntil(stream::isConnected);
+
+        server.dropStreamConnections();
+        waitUntil(() -> server.streamConnections() == 2 && stream.isConnected());
+
+        assertThat(server.klinesRequests()).isEqualTo(2);
+        server.push(klineEvent(lastOpen, "99.5"));
+        waitUntil(() -> cache.getCandles("BTCUSDT", "5m", 1).lastClose() == 99.5);
+        assertThat(cache.getCandles("BTCUSDT", "5m", 1).openTime(0)).isEqualTo(lastOpen);
+    }
+
+    @Test
+    void endOfAReplacedSessionDoesNotMarkTheCurrentOneDisconnected() {
+        Sinks.Many<WebSocketMessage> first = Sinks.many().unicast().onBackpressureBuffer();
+        Sinks.Many<WebSocketMessage> second = Sinks.many().unicast().onBackpressureBuffer();
+        stream.handle(session(first), Set.of("BTCUSDT")).subscribe();
+        waitUntil(stream::isConnected);
+
+        // Nova sessão (ex.: novo conjunto de pares) antes de a anterior terminar
+        stream.handle(session(second), Set.of("BTCUSDT")).subscribe();
+        waitUntil(() -> server.klinesRequests() == 2 && stream.isConnected());
+        first.tryEmitComplete();
+
+        assertThat(stream.isConnected()).isTrue();
+        assertThat(cache.isLive("BTCUSDT", "5m")).isTrue();
+
+        second.tryEmitComplete();
+        waitUntil(() -> !stream.isConnected());
+        assertThat(cache.isLive("BTCUSDT", "5m")).isFalse();
+    }
+
+    private static WebSocketSession session(Sinks.Many<WebSocketMessage> messages) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.receive()).thenReturn(messages.asFlux());
+        return session;
+    }
+
+    private static String klinesJson(int count, long lastOpenTime) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            long open = lastOpenTime - (long) (count - 1 - i) * FIVE_MIN;
+            String price = String.valueOf(100 + i);
+            if (i > 0) sb.append(',');
+            sb.append('[').append(open)
+                    .append(",\"").append(price).append("\",\"").append(price)
+                    .append("\",\"").append(price).append("\",\"").append(price)
+                    .append("\",\"1.0\",").append(open + FIVE_MIN - 1)
+                    .append(",\"100.0\",10,\"0.5\",\"50.0\",\"0\"]");
+        }
+        return sb.append(']').toString();
+    }
+
+    @Test
+    void publishesCandleCloseAndThrottledPriceTicks() {
+        stream.subscribe(Set.of("BTCUSDT"));
+        waitUntil(stream::isConnected);
+
+        server.push(klineEvent(lastOpen, "100.0"));
+        server.push(klineEvent(lastOpen, "101.0"));   // mesmo segundo: não gera tick
+        server.push(klineEvent(lastOpen, "102.0", true, lastOpen + FIVE_MIN));
+        waitUntil(() -> events.stream().anyMatch(e -> e instanceof CandleClosedEvent));
+
+        assertThat(events).hasSize(2);
+        PriceTickEvent tick = (PriceTickEvent) events.get(0);
+        assertThat(tick.price).isEqualTo(100.0);
+        CandleClosedEvent closed = (CandleClosedEvent) events.get(1);
+        assertThat(closed.symbol).isEqualTo("BTCUSDT");
+        assertThat(closed.openTime).isEqualTo(lastOpen);
+        assertThat(closed.eventTime).isEqualTo(lastOpen + FIVE_MIN);
+    }
+
+    private static String klineEvent(long openTime, String close) {
+        return klineEvent(openTime, close, false, openTime);
+    }
+
+    private static String klineEvent(long openTime, String close, boolean closed, long eventTime) {
+        return "{\"stream\":\"btcusdt@kline_5m\",\"data\":{\"e\":\"kline\",\"E\":" + eventTime
+                + ",\"s\":\"BTCUSDT\",\"k\":{\"t\":" + openTime + ",\"T\":" + (openTime + FIVE_MIN - 1)
+                + ",\"s\":\"BTCUSDT\",\"i\":\"5m\",\"o\":\"" + close + "\",\"c\":\"" + close
+                + "\",\"h\":\"" + close + "\",\"l\":\"" + close + "\",\"v\":\"1.0\",\"n\":3,\"x\":" + closed + "}}}";
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condicao nao satisfeita em 10s");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
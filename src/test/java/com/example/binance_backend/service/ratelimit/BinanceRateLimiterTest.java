@@ -0,0 +1,144 @@
+package com.example.binance_backend.service.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BinanceRateLimiterTest {
+
+    private final AtomicInteger sent = new AtomicInteger();
+    private final AtomicReference<ClientResponse> nextResponse = new AtomicReference<>();
+
+    // 60 de peso por minuto (1 por segundo), 20 reservados para ordens, 5 ordens por 10 s e 8 por
+    // dia, espera máxima de 100 ms
+    private final BinanceRateLimiter limiter = new BinanceRateLimiter(60, 20, 5, 8, 100, new SimpleMeterRegistry());
+
+    private final WebClient client = WebClient.builder()
+            .exchangeFunction(request -> {
+                sent.incrementAndGet();
+                ClientResponse response = nextResponse.getAndSet(null);
+                return Mono.just(response != null ? response : ClientResponse.create(HttpStatus.OK).build());
+            })
+            .filter(limiter)
+            .build();
+
+    @Test
+    void weightsFollowTheEndpointAndItsParameters() {
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/klines", "symbol=BTCUSDT&interval=5m&limit=50")).isEqualTo(1);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/klines", "symbol=BTCUSDT&interval=5m&limit=200")).isEqualTo(2);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/klines", "symbol=BTCUSDT&interval=5m")).isEqualTo(5);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/klines", "limit=1500")).isEqualTo(10);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/account", "timestamp=1")).isEqualTo(20);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.POST, "/api/v3/order", null)).isEqualTo(1);
+        assertThat(BinanceRateLimiter.weightOf(HttpMethod.GET, "/api/v3/ticker/price", "symbols=%5B%22BTCUSDT%22%5D")).isEqualTo(4);
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.POST, "/api/v3/order")).isTrue();
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.POST, "/api/v3/orderList/oco")).isTrue();
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.GET, "/api/v3/order")).isFalse();
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.DELETE, "/api/v3/order")).isFalse();
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.DELETE, "/api/v3/orderList")).isFalse();
+        assertThat(BinanceRateLimiter.isOrder(HttpMethod.POST, "/api/v3/order/test")).isFalse();
+    }
+
+    @Test
+    void marketDataLeavesTheReserveForOrders() {
+        // 2 x 20 de peso: fica só a reserva das ordens
+        client.get().uri("http://binance/api/v3/account").retrieve().toBodilessEntity().block();
+        client.get().uri("http://binance/api/v3/account").retrieve().toBodilessEntity().block();
+
+        assertThatThrownBy(() -> client.get().uri("http://binance/api/v3/klines?limit=50")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+
+        client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "key")
+                .retrieve().toBodilessEntity().block();
+        assertThat(sent.get()).isEqualTo(3);
+    }
+
+    @Test
+    void usedWeightHeaderCorrectsTheLocalBudget() {
+        nextResponse.set(ClientResponse.create(HttpStatus.OK)
+                .header(BinanceRateLimiter.USED_WEIGHT_HEADER, "55").build());
+        client.get().uri("http://binance/api/v3/klines?limit=50").retrieve().toBodilessEntity().block();
+
+        assertThat(limiter.getAvailableWeight()).isLessThan(6);
+        assertThatThrownBy(() -> client.get().uri("http://binance/api/v3/klines?limit=50")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+    }
+
+    @Test
+    void tooManyRequestsSuspendsEveryRequestUntilRetryAfter() {
+        nextResponse.set(ClientResponse.create(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "30").build());
+        assertThatThrownBy(() -> client.get().uri("http://binance/api/v3/klines?limit=50")
+                .retrieve().toBodilessEntity().block());
+
+        assertThatThrownBy(() -> client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "key")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(sent.get()).isEqualTo(1);
+    }
+
+    @Test
+    void ordersAreLimitedPerApiKey() {
+        for (int i = 0; i < 5; i++) {
+            client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                    .retrieve().toBodilessEntity().block();
+        }
+        assertThatThrownBy(() -> client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+        client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "b")
+                .retrieve().toBodilessEntity().block();
+        assertThat(sent.get()).isEqualTo(6);
+    }
+
+    @Test
+    void cancelsDoNotCountAsOrders() {
+        for (int i = 0; i < 10; i++) {
+            client.delete().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                    .retrieve().toBodilessEntity().block();
+        }
+        for (int i = 0; i < 5; i++) {
+            client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                    .retrieve().toBodilessEntity().block();
+        }
+        assertThat(sent.get()).isEqualTo(15);
+    }
+
+    @Test
+    void orderCountHeaderOfEachIntervalCorrectsItsOwnBucket() {
+        // A conta já fez 8 ordens hoje (noutra instância): o limite diário esgota-se, o de 10 s não
+        nextResponse.set(ClientResponse.create(HttpStatus.OK)
+                .header("X-MBX-ORDER-COUNT-10S", "1")
+                .header("X-MBX-ORDER-COUNT-1D", "8").build());
+        client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                .retrieve().toBodilessEntity().block();
+
+        assertThatThrownBy(() -> client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "a")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+
+        // Noutra conta, 5 ordens nos últimos 10 s esgotam só o limite de 10 s
+        nextResponse.set(ClientResponse.create(HttpStatus.OK)
+                .header("x-mbx-order-count-10s", "5")
+                .header("X-MBX-ORDER-COUNT-1D", "5").build());
+        client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "b")
+                .retrieve().toBodilessEntity().block();
+
+        assertThatThrownBy(() -> client.post().uri("http://binance/api/v3/order").header("X-MBX-APIKEY", "b")
+                .retrieve().toBodilessEntity().block())
+                .isInstanceOf(ResponseStatusException.class);
+        assertThat(sent.get()).isEqualTo(2);
+    }
+}
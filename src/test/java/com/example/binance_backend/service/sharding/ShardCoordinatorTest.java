@@ -0,0 +1,113 @@
+package com.example.binance_backend.service.sharding;
+
+import com.example.binance_backend.repository.BotNodeRepository;
+import com.example.binance_backend.repository.BotShardLeaseRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.*;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Vários nós na mesma JVM contra uma BD H2 (em modo PostgreSQL), cada um com o seu
+ * ShardCoordinator, como se fossem réplicas do backend.
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:shards;MODE=PostgreSQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.show-sql=false"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class ShardCoordinatorTest {
+
+    private static final int SHARDS = 12;
+    private static final long LEASE_MS = 1_000;
+
+    @Autowired
+    private BotShardLeaseRepository leaseRepo;
+    @Autowired
+    private BotNodeRepository nodeRepo;
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void cleanCluster() {
+        leaseRepo.deleteAll();
+        nodeRepo.deleteAll();
+    }
+
+    @Test
+    void nodesSplitShardsFairlyAndRebalanceWhenJoiningOrLeaving() {
+        ShardCoordinator a = node("a");
+        ShardCoordinator b = node("b");
+        rounds(a, b);
+        assertPartition(List.of(a, b), 6);
+
+        ShardCoordinator c = node("c");
+        rounds(a, b, c);
+        assertPartition(List.of(a, b, c), 4);
+
+        c.leave();
+        rounds(a, b);
+        assertPartition(List.of(a, b), 6);
+    }
+
+    @Test
+    void expiredLeasesOfACrashedNodeAreTakenOver() throws InterruptedException {
+        ShardCoordinator a = node("x");
+        ShardCoordinator crashed = node("y");
+        rounds(a, crashed);
+        assertPartition(List.of(a, crashed), 6);
+
+        // "y" deixa de fazer heartbeat: perde os shards localmente e, depois do lease, na BD
+        Thread.sleep(LEASE_MS + 200);
+        assertThat(crashed.owns(userInShard(crashed, crashed.getOwnedShards().iterator().next()))).isFalse();
+        rounds(a);
+        assertThat(a.getOwnedShards()).hasSize(SHARDS);
+    }
+
+    private ShardCoordinator node(String id) {
+        return new ShardCoordinator(leaseRepo, nodeRepo, transactionManager, true, SHARDS, LEASE_MS, id);
+    }
+
+    // Alguns heartbeats de cada nó, intercalados, até estabilizar
+    private static void rounds(ShardCoordinator... nodes) {
+        for (int i = 0; i < 3; i++) {
+            for (ShardCoordinator node : nodes) {
+                node.heartbeat();
+            }
+        }
+    }
+
+    private static void assertPartition(List<ShardCoordinator> nodes, int expectedEach) {
+        Set<Integer> all = new HashSet<>();
+        for (ShardCoordinator node : nodes) {
+            assertThat(node.getOwnedShards()).as("shards de %s", node.getNodeId()).hasSize(expectedEach);
+            for (int shard : node.getOwnedShards()) {
+                assertThat(all.add(shard)).as("shard %s com dois donos", shard).isTrue();
+            }
+        }
+        assertThat(all).hasSize(SHARDS);
+
+        // Cada user é processado por exatamente um nó
+        for (int i = 0; i < 200; i++) {
+            UUID user = UUID.randomUUID();
+            assertThat(nodes.stream().filter(n -> n.owns(user)).count()).isEqualTo(1);
+        }
+    }
+
+    private static UUID userInShard(ShardCoordinator node, int shard) {
+        while (true) {
+            UUID user = UUID.randomUUID();
+            if (node.shardOf(user) == shard) {
+                return user;
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.binance_backend.service.userdata;
+
+import com.example.binance_backend.dto.ActiveBot;
+import com.example.binance_backend.service.ActiveBotRegistry;
+import com.example.binance_backend.service.BinanceClient;
+import com.example.binance_backend.service.sharding.ShardCoordinator;
+import com.example.binance_backend.support.FakeBinanceServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UserDataStreamManagerTest {
+
+    private final UUID userId = UUID.randomUUID();
+    private final List<Object> events = new CopyOnWriteArrayList<>();
+
+    private FakeBinanceServer server;
+    private ActiveBotRegistry registry;
+    private UserDataStreamManager manager;
+
+    @BeforeEach
+    void setUp() {
+        server = new FakeBinanceServer();
+        registry = mock(ActiveBotRegistry.class);
+        when(registry.activeSymbols()).thenReturn(Set.of());
+        ShardCoordinator singleNode = new ShardCoordinator(null, null, mock(PlatformTransactionManager.class), false, 64, 20_000, "test");
+        manager = new UserDataStreamManager(new BinanceClient(server.baseUrl()), registry, singleNode, events::add,
+                new SimpleMeterRegistry(), true, false, server.streamUrl(), 600_000);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.shutdown();
+        server.close();
+    }
+
+    @Test
+    void balanceIsServedFromMemoryOnceTheStreamIsSynced() {
+        // Primeira consulta: responde por REST e liga o stream (que semeia os saldos)
+        assertThat(manager.freeBalance(userId, "key", "secret", "USDT")).isEqualTo("100.00000000");
+        waitUntil(() -> manager.isReady(userId) && server.userDataConnected("listen-key-1"));
+        assertThat(server.accountRequests()).isEqualTo(2);
+
+        server.pushUserData("listen-key-1", "{\"e\":\"outboundAccountPosition\",\"E\":1,\"u\":" + (System.currentTimeMillis() + 1_000)
+                + ",\"B\":[{\"a\":\"USDT\",\"f\":\"250.50000000\",\"l\":\"10.00000000\"}]}");
+        waitUntil(() -> manager.freeBalance(userId, "key", "secret", "USDT").equals("250.50000000"));
+
+        for (int i = 0; i < 100; i++) {
+            manager.freeBalance(userId, "key", "secret", "USDT");
+        }
+        assertThat(manager.freeBalance(userId, "key", "secret", "BTC")).isEqualTo("0");
+        assertThat(server.accountRequests()).isEqualTo(2);
+    }
+
+    @Test
+    void executionReportsUpdateTheOrderCacheAndArePublished() {
+        manager.freeBalance(userId, "key", "secret", "USDT");
+        waitUntil(() -> manager.isReady(userId) && server.userDataConnected("listen-key-1"));
+
+        server.pushUserData("listen-key-1", executionReport("NEW", "NEW", "0", "0", "0"));
+        server.pushUserData("listen-key-1", executionReport("TRADE", "FILLED", "0.00150000", "65000.10", "97.50015000"));
+        waitUntil(() -> events.size() == 2);
+
+        OrderUpdateEvent filled = (OrderUpdateEvent) events.get(1);
+        assertThat(filled.userId).isEqualTo(userId);
+        assertThat(filled.status).isEqualTo("FILLED");
+        assertThat(filled.clientOrderId).isEqualTo("bot-abc");
+        assertThat(filled.isFinal()).isTrue();
+        assertThat(manager.order(userId, 4242L)).hasValueSatisfying(o -> {
+            assertThat(o.cumulativeQty).isEqualByComparingTo("0.0015");
+            assertThat(o.cumulativeQuoteQty).isEqualByComparingTo("97.50015");
+        });
+    }
+
+    @Test
+    void expiredListenKeyReconnectsWithANewOne() {
+        manager.freeBalance(userId, "key", "secret", "USDT");
+        waitUntil(() -> server.userDataConnected("listen-key-1"));
+
+        server.pushUserData("listen-key-1", "{\"e\":\"listenKeyExpired\",\"E\":1,\"listenKey\":\"listen-key-1\"}");
+
+        waitUntil(() -> server.userDataConnected("listen-key-2") && manager.isReady(userId));
+        assertThat(server.listenKeys()).containsExactly("listen-key-1", "listen-key-2");
+    }
+
+    @Test
+    void activeBotsGetAStreamAndTheirListenKeysAreKeptAlive() {
+        ActiveBot bot = new ActiveBot(userId, "BTCUSDT", "MARKET", new BigDecimal("10"), null, null, null,
+                new BigDecimal("2"), new BigDecimal("3"), true, null, false, false, "key", "secret", null, null, null, null, null);
+        when(registry.activeSymbols()).thenReturn(Set.of("BTCUSDT"));
+        when(registry.bySymbol("BTCUSDT")).thenReturn(List.of(bot));
+
+        manager.refreshStreams();
+        waitUntil(() -> manager.isReady(userId) && server.userDataConnected("listen-key-1"));
+
+        manager.keepAlive();
+        waitUntil(() -> server.keepAlives().contains("listen-key-1"));
+    }
+
+    private static String executionReport(String executionType, String status, String cumQty, String lastPrice, String cumQuote) {
+        return "{\"e\":\"executionReport\",\"E\":1,\"s\":\"BTCUSDT\",\"c\":\"bot-abc\",\"S\":\"BUY\",\"o\":\"MARKET\","
+                + "\"q\":\"0.00150000\",\"p\":\"0.00000000\",\"x\":\"" + executionType + "\",\"X\":\"" + status + "\","
+                + "\"i\":4242,\"l\":\"" + cumQty + "\",\"z\":\"" + cumQty + "\",\"L\":\"" + lastPrice + "\","
+                + "\"n\":\"0\",\"N\":null,\"T\":1700000000000,\"Z\":\"" + cumQuote + "\",\"C\":\"\"}";
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condicao nao satisfeita em 5 s");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
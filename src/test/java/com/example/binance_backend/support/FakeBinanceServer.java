@@ -0,0 +1,372 @@
+package com.example.binance_backend.support;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor local que imita a Binance nos testes: responde a /api/v3/klines,
+ * /api/v3/ticker/price, /api/v3/exchangeInfo, /api/v3/time, /api/v3/account,
+ * /api/v3/orderList/oco, /api/v3/orderList (consulta), /api/v3/order (consulta), /api/v3/myTrades, /api/v3/openOrders, /api/v3/allOrders e /api/v3/userDataStream (listenKeys) por REST. Expõe também o
+ * user data stream em /ws/{listenKey}, onde o teste injeta eventos de conta e de ordens, e
+ * um combined stream WebSocket em /stream, onde o teste injeta mensagens.
+ */
+public class FakeBinanceServer implements AutoCloseable {
+
+    private final Map<String, String> klinesBySymbol = new ConcurrentHashMap<>();
+    private final AtomicInteger klinesRequests = new AtomicInteger();
+    private final Map<String, String> pricesBySymbol = new ConcurrentHashMap<>();
+    private final List<String> tickerQueries = new CopyOnWriteArrayList<>();
+    private final Map<String, String> exchangeInfoBySymbol = new ConcurrentHashMap<>();
+    private final List<String> exchangeInfoQueries = new CopyOnWriteArrayList<>();
+    private volatile long serverTimeOffsetMs;
+    private final AtomicInteger timeRequests = new AtomicInteger();
+    private final AtomicInteger accountRequests = new AtomicInteger();
+    private volatile String accountBalances = "{\"asset\":\"USDT\",\"free\":\"100.00000000\",\"locked\":\"0.00000000\"}";
+    private final List<String> ocoOrders = new CopyOnWriteArrayList<>();
+    private final Map<String, String> ordersBySymbol = new ConcurrentHashMap<>();
+    private final List<String> allOrdersQueries = new CopyOnWriteArrayList<>();
+    private final Map<String, String> ordersByClientOrderId = new ConcurrentHashMap<>();
+    private final Map<String, String> orderListsByClientId = new ConcurrentHashMap<>();
+    private volatile String ocoRejection;
+    private final List<String> orderQueries = new CopyOnWriteArrayList<>();
+    private final Map<String, String> tradesByOrderId = new ConcurrentHashMap<>();
+    private final List<String> myTradesQueries = new CopyOnWriteArrayList<>();
+    private volatile String openOrders = "[]";
+    private final List<String> openOrdersQueries = new CopyOnWriteArrayList<>();
+    private final List<String> listenKeys = new CopyOnWriteArrayList<>();
+    private final List<String> keepAlives = new CopyOnWriteArrayList<>();
+    private final Map<String, Sinks.Many<String>> userDataSessions = new ConcurrentHashMap<>();
+    private final List<Sinks.Many<String>> streamSessions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger streamConnections = new AtomicInteger();
+    private final DisposableServer server;
+
+    public FakeBinanceServer() {
+        this.server = HttpServer.create()
+                .host("127.0.0.1")
+                .port(0)
+                .route(routes -> routes
+                        .get("/api/v3/klines", (req, res) -> {
+                            klinesRequests.incrementAndGet();
+                            String body = klinesBySymbol.getOrDefault(queryParam(req, "symbol"), "[]");
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(body));
+                        })
+                        .get("/api/v3/ticker/price", (req, res) -> {
+                            String symbols = URLDecoder.decode(queryParam(req, "symbols"), StandardCharsets.UTF_8);
+                            tickerQueries.add(symbols);
+                            StringJoiner body = new StringJoiner(",", "[", "]");
+                            pricesBySymbol.forEach((symbol, price) -> {
+                                if (symbols.contains("\"" + symbol + "\"")) {
+                                    body.add("{\"symbol\":\"" + symbol + "\",\"price\":\"" + price + "\"}");
+                                }
+                            });
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(body.toString()));
+                        })
+                        .get("/api/v3/exchangeInfo", (req, res) -> {
+                            String symbols = URLDecoder.decode(queryParam(req, "symbols"), StandardCharsets.UTF_8);
+                            exchangeInfoQueries.add(symbols);
+                            StringJoiner body = new StringJoiner(",", "{\"symbols\":[", "]}");
+                            exchangeInfoBySymbol.forEach((symbol, json) -> {
+                                if (symbols.contains("\"" + symbol + "\"")) {
+                                    body.add(json);
+                                }
+                            });
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(body.toString()));
+                        })
+                        .get("/api/v3/time", (req, res) -> {
+                            timeRequests.incrementAndGet();
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just("{\"serverTime\":" + serverTime() + "}"));
+                        })
+                        .get("/api/v3/account", (req, res) -> {
+                            accountRequests.incrementAndGet();
+                            // Mesmas regras de timestamp da Binance (-1021)
+                            long timestamp = Long.parseLong(queryParam(req, "timestamp"));
+                            String recvWindow = queryParam(req, "recvWindow");
+                            long window = recvWindow != null ? Long.parseLong(recvWindow) : 5000;
+                            long now = serverTime();
+                            if (timestamp >= now + 1000 || now - timestamp > window) {
+                                return res.status(400).header("Content-Type", "application/json")
+                                        .sendString(Mono.just("{\"code\":-1021,\"msg\":\"Timestamp for this request is outside of the recvWindow.\"}"));
+                            }
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just("{\"updateTime\":" + now + ",\"balances\":[" + accountBalances + "]}"));
+                        })
+                        .post("/api/v3/orderList/oco", (req, res) -> {
+                            ocoOrders.add(req.uri().substring(req.uri().indexOf('?') + 1));
+                            if (ocoRejection != null) {
+                                return res.status(400).header("Content-Type", "application/json")
+                                        .sendString(Mono.just(ocoRejection));
+                            }
+                            long orderListId = ocoOrders.size();
+                            String symbol = queryParam(req, "symbol");
+                            String listClientOrderId = queryParam(req, "listClientOrderId");
+                            String list = "{\"orderListId\":" + orderListId
+                                    + ",\"listClientOrderId\":\"" + (listClientOrderId != null ? listClientOrderId : "oco-" + orderListId) + "\""
+                                    + ",\"listOrderStatus\":\"EXECUTING\",\"orders\":["
+                                    + "{\"symbol\":\"" + symbol + "\",\"orderId\":" + (orderListId * 10 + 1) + "},"
+                                    + "{\"symbol\":\"" + symbol + "\",\"orderId\":" + (orderListId * 10 + 2) + "}]}";
+                            if (listClientOrderId != null) {
+                                orderListsByClientId.put(listClientOrderId, list);
+                            }
+                            return res.header("Content-Type", "application/json").sendString(Mono.just(list));
+                        })
+                        .get("/api/v3/orderList", (req, res) -> {
+                            String listClientOrderId = queryParam(req, "origClientOrderId");
+                            String list = listClientOrderId != null ? orderListsByClientId.get(listClientOrderId) : null;
+                            if (list == null) {
+                                return res.status(400).header("Content-Type", "application/json")
+                                        .sendString(Mono.just("{\"code\":-2011,\"msg\":\"Order list does not exist.\"}"));
+                            }
+                            return res.header("Content-Type", "application/json").sendString(Mono.just(list));
+                        })
+                        .get("/api/v3/openOrders", (req, res) -> {
+                            String symbol = queryParam(req, "symbol");
+                            openOrdersQueries.add(symbol != null ? symbol : "*");
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(openOrders));
+                        })
+                        .get("/api/v3/order", (req, res) -> {
+                            String clientOrderId = queryParam(req, "origClientOrderId");
+                            orderQueries.add(clientOrderId);
+                            String order = clientOrderId != null ? ordersByClientOrderId.get(clientOrderId) : null;
+                            if (order == null) {
+                                return res.status(400).header("Content-Type", "application/json")
+                                        .sendString(Mono.just("{\"code\":-2013,\"msg\":\"Order does not exist.\"}"));
+                            }
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(order));
+                        })
+                        .get("/api/v3/myTrades", (req, res) -> {
+                            String orderId = queryParam(req, "orderId");
+                            myTradesQueries.add(orderId);
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(tradesByOrderId.getOrDefault(orderId, "[]")));
+                        })
+                        .get("/api/v3/allOrders", (req, res) -> {
+                            String symbol = queryParam(req, "symbol");
+                            allOrdersQueries.add(symbol);
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just(ordersBySymbol.getOrDefault(symbol, "[]")));
+                        })
+                        .post("/api/v3/userDataStream", (req, res) -> {
+                            String listenKey = "listen-key-" + (listenKeys.size() + 1);
+                            listenKeys.add(listenKey);
+                            return res.header("Content-Type", "application/json")
+                                    .sendString(Mono.just("{\"listenKey\":\"" + listenKey + "\"}"));
+                        })
+                        .put("/api/v3/userDataStream", (req, res) -> {
+                            keepAlives.add(queryParam(req, "listenKey"));
+                            return res.header("Content-Type", "application/json").sendString(Mono.just("{}"));
+                        })
+                        .delete("/api/v3/userDataStream", (req, res) ->
+                                res.header("Content-Type", "application/json").sendString(Mono.just("{}")))
+                        .get("/ws/{listenKey}", (req, res) -> {
+                            String listenKey = req.param("listenKey");
+                            return res.sendWebsocket((in, out) -> {
+                                Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+                                userDataSessions.put(listenKey, sink);
+                                return out.sendString(sink.asFlux())
+                                        .then()
+                                        .doFinally(sig -> userDataSessions.remove(listenKey, sink));
+                            });
+                        })
+                        .ws("/stream", (in, out) -> {
+                            Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+                            streamSessions.add(sink);
+                            streamConnections.incrementAndGet();
+                            return out.sendString(sink.asFlux())
+                                    .then()
+                                    .doFinally(s -> streamSessions.remove(sink));
+                        }))
+                .bindNow();
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.port();
+    }
+
+    public String streamUrl() {
+        return "ws://127.0.0.1:" + server.port();
+    }
+
+    /** Define a resposta de /api/v3/klines para um símbolo (array JSON no formato da Binance). */
+    public void setKlines(String symbol, String json) {
+        klinesBySymbol.put(symbol, json);
+    }
+
+    /** Define o último preço devolvido por /api/v3/ticker/price para um símbolo. */
+    public void setPrice(String symbol, String price) {
+        pricesBySymbol.put(symbol, price);
+    }
+
+    /** Valores do parâmetro {@code symbols} recebidos em /api/v3/ticker/price, por ordem. */
+    public List<String> tickerQueries() {
+        return tickerQueries;
+    }
+
+    /** Define o elemento de {@code symbols[]} devolvido por /api/v3/exchangeInfo para um símbolo. */
+    public void setExchangeInfo(String symbol, String symbolJson) {
+        exchangeInfoBySymbol.put(symbol, symbolJson);
+    }
+
+    /** Valores do parâmetro {@code symbols} recebidos em /api/v3/exchangeInfo, por ordem. */
+    public List<String> exchangeInfoQueries() {
+        return exchangeInfoQueries;
+    }
+
+    /** Desfasamento da hora do servidor em relação ao relógio local (ms). */
+    public void setServerTimeOffset(long offsetMs) {
+        this.serverTimeOffsetMs = offsetMs;
+    }
+
+    /** Saldos devolvidos por /api/v3/account (elementos JSON de {@code balances[]}, separados por vírgula). */
+    public void setAccountBalances(String balancesJson) {
+        this.accountBalances = balancesJson;
+    }
+
+    /** Query strings dos OCO recebidos em /api/v3/orderList/oco, por ordem (orderListId = posição + 1). */
+    public List<String> ocoOrders() {
+        return ocoOrders;
+    }
+
+    /** Faz /api/v3/orderList/oco responder 400 com este corpo (null volta a aceitar os OCO). */
+    public void rejectOco(String errorJson) {
+        this.ocoRejection = errorJson;
+    }
+
+    /** Define a resposta de /api/v3/openOrders (array JSON de ordens). */
+    public void setOpenOrders(String json) {
+        this.openOrders = json;
+    }
+
+    /** Símbolos consultados em /api/v3/openOrders, por ordem ("*" sem symbol: todos os pares). */
+    public List<String> openOrdersQueries() {
+        return openOrdersQueries;
+    }
+
+    /** Define a resposta de /api/v3/allOrders para um símbolo (array JSON de ordens). */
+    public void setOrders(String symbol, String json) {
+        ordersBySymbol.put(symbol, json);
+    }
+
+    /** Símbolos consultados em /api/v3/allOrders, por ordem. */
+    public List<String> allOrdersQueries() {
+        return allOrdersQueries;
+    }
+
+    /** Define a resposta de /api/v3/order para um origClientOrderId (sem resposta: erro -2013). */
+    public void setOrder(String clientOrderId, String json) {
+        ordersByClientOrderId.put(clientOrderId, json);
+    }
+
+    /** origClientOrderId consultados em /api/v3/order, por ordem. */
+    public List<String> orderQueries() {
+        return orderQueries;
+    }
+
+    /** Define a resposta de /api/v3/myTrades para um orderId (array JSON de execuções). */
+    public void setMyTrades(String orderId, String json) {
+        tradesByOrderId.put(orderId, json);
+    }
+
+    /** orderIds consultados em /api/v3/myTrades, por ordem. */
+    public List<String> myTradesQueries() {
+        return myTradesQueries;
+    }
+
+    /** listenKeys criadas, por ordem. */
+    public List<String> listenKeys() {
+        return listenKeys;
+    }
+
+    /** listenKeys renovadas (PUT), por ordem. */
+    public List<String> keepAlives() {
+        return keepAlives;
+    }
+
+    /** Indica se há um user data stream ligado para a listenKey. */
+    public boolean userDataConnected(String listenKey) {
+        return userDataSessions.containsKey(listenKey);
+    }
+
+    /** Envia um evento ao user data stream ligado com a listenKey. */
+    public void pushUserData(String listenKey, String event) {
+        Sinks.Many<String> sink = userDataSessions.get(listenKey);
+        if (sink != null) {
+            sink.tryEmitNext(event);
+        }
+    }
+
+    public int timeRequests() {
+        return timeRequests.get();
+    }
+
+    public int accountRequests() {
+        return accountRequests.get();
+    }
+
+    /** Envia uma mensagem a todas as ligações WebSocket abertas. */
+    public void push(String message) {
+        for (Sinks.Many<String> sink : streamSessions) {
+            sink.tryEmitNext(message);
+        }
+    }
+
+    /** Fecha do lado do servidor todas as ligações WebSocket abertas. */
+    public void dropStreamConnections() {
+        for (Sinks.Many<String> sink : streamSessions) {
+            sink.tryEmitComplete();
+        }
+    }
+
+    public int klinesRequests() {
+        return klinesRequests.get();
+    }
+
+    public int streamConnections() {
+        return streamConnections.get();
+    }
+
+    public int openStreamSessions() {
+        return streamSessions.size();
+    }
+
+    @Override
+    public void close() {
+        server.disposeNow();
+    }
+
+    private long serverTime() {
+        return System.currentTimeMillis() + serverTimeOffsetMs;
+    }
+
+    private static String queryParam(HttpServerRequest req, String name) {
+        String uri = req.uri();
+        int q = uri.indexOf('?');
+        if (q < 0) {
+            return null;
+        }
+        for (String pair : uri.substring(q + 1).split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+}